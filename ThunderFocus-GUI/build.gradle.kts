@@ -1,6 +1,7 @@
 plugins {
     id("java")
     id("idea")
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "io.github.marcocipriani01.thunderfocus"
@@ -27,4 +28,107 @@ dependencies {
     implementation("io.github.java-native:jssc:2.9.6")
     implementation("org.jfree:jfreechart:1.5.4")
     implementation("com.github.Dansoftowner:jSystemThemeDetector:3.8")
+    testImplementation(platform("org.junit:junit-bom:5.10.2"))
+    testImplementation("org.junit.jupiter:junit-jupiter")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+}
+
+tasks.withType<Test>().configureEach {
+    systemProperty("java.awt.headless", "true")
+    // Main loads and saves the settings as soon as the board is used: keep them away from the real ones
+    systemProperty("user.home", temporaryDir.absolutePath)
+}
+
+tasks.test {
+    useJUnitPlatform {
+        excludeTags("load")
+    }
+}
+
+// Load tests, tagged "load", take minutes and print their results: gradlew loadTest
+val loadTest by tasks.registering(Test::class) {
+    group = "verification"
+    testClassesDirs = sourceSets.test.get().output.classesDirs
+    classpath = sourceSets.test.get().runtimeClasspath
+    useJUnitPlatform {
+        includeTags("load")
+    }
+    testLogging.showStandardStreams = true
+}
+
+// Benchmarks in src/jmh: gradlew jmh [-PjmhIncludes=<regex>]. Results are saved in a JSON file named after the
+// version, so that they can be compared between releases.
+jmh {
+    jmhVersion.set("1.37")
+    fork.set(1)
+    warmupIterations.set(3)
+    warmup.set("1s")
+    iterations.set(5)
+    timeOnIteration.set("1s")
+    (findProperty("jmhIncludes") as String?)?.let { includes.add(it) }
+    resultFormat.set("JSON")
+    resultsFile.set(layout.buildDirectory.file("results/jmh/ThunderFocus-$version.json"))
+}
+
+val fatJar by tasks.registering(Jar::class) {
+    group = "distribution"
+    description = "Builds ThunderFocus.jar with all the dependencies included."
+    archiveFileName.set("ThunderFocus.jar")
+    destinationDirectory.set(layout.buildDirectory.dir("dist"))
+    manifest.from("src/main/java/META-INF/MANIFEST.MF")
+    duplicatesStrategy = DuplicatesStrategy.EXCLUDE
+    from(sourceSets.main.get().output)
+    dependsOn(configurations.runtimeClasspath)
+    from({ configurations.runtimeClasspath.get().filter { it.name.endsWith(".jar") }.map { zipTree(it) } }) {
+        exclude("META-INF/*.SF", "META-INF/*.DSA", "META-INF/*.RSA", "META-INF/MANIFEST.MF")
+    }
+}
+
+// The CDS archive only works with the exact JVM build that created it: pass -PcdsJava=<path to bin/java>
+// of the JRE that will be bundled with the installer. The training run exits as soon as the main window is shown.
+val cdsJava = (findProperty("cdsJava") as String?)
+    ?: rootDir.resolve("../JRE-bundle/bin/java").takeIf { it.exists() }?.path
+    ?: "${System.getProperty("java.home")}/bin/java"
+
+val cdsArchive by tasks.registering(Exec::class) {
+    group = "distribution"
+    description = "Generates the AppCDS archive of ThunderFocus with a training run."
+    val jar = fatJar.flatMap { it.archiveFile }
+    val archive = layout.buildDirectory.file("dist/ThunderFocus.jsa")
+    inputs.file(jar)
+    outputs.file(archive)
+    executable = cdsJava
+    argumentProviders.add(CommandLineArgumentProvider {
+        listOf("-XX:ArchiveClassesAtExit=${archive.get().asFile}", "-Dthunderfocus.startupBenchmark=true",
+            "-jar", jar.get().asFile.path)
+    })
+}
+
+val jreBundle by tasks.registering(Copy::class) {
+    group = "distribution"
+    description = "Copies ThunderFocus.jar and its CDS archive into the JRE bundle used by the Windows installer."
+    from(fatJar, cdsArchive)
+    into(rootDir.resolve("../JRE-bundle"))
+}
+
+tasks.register("startupBenchmark") {
+    group = "verification"
+    description = "Measures the time to the first window with and without the CDS archive (-Pruns=N, default 5)."
+    dependsOn(fatJar, cdsArchive)
+    doLast {
+        val runs = (findProperty("runs") as String?)?.toInt() ?: 5
+        val jar = fatJar.get().archiveFile.get().asFile.path
+        val archive = cdsArchive.get().outputs.files.singleFile.path
+        val regex = Regex("Time to first window: (\\d+) ms")
+        fun measure(vararg jvmArgs: String): List<Long> = (1..runs).map {
+            val process = ProcessBuilder(listOf(cdsJava, *jvmArgs, "-Dthunderfocus.startupBenchmark=true", "-jar", jar))
+                .redirectErrorStream(true).start()
+            val output = process.inputStream.bufferedReader().readText()
+            process.waitFor()
+            regex.find(output)?.groupValues?.get(1)?.toLong() ?: throw GradleException("Startup failed:\n$output")
+        }.sorted()
+        for ((name, times) in listOf("Default CDS" to measure(), "AppCDS" to measure("-XX:SharedArchiveFile=$archive"))) {
+            println("$name: median ${times[times.size / 2]} ms, min ${times.first()} ms, max ${times.last()} ms")
+        }
+    }
 }
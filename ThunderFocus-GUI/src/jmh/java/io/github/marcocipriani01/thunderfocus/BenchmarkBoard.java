@@ -0,0 +1,39 @@
+package io.github.marcocipriani01.thunderfocus;
+
+import io.github.marcocipriani01.thunderfocus.board.Board;
+
+/**
+ * Connects {@link Main#board} to a simulated board for the benchmarks that need one.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+public final class BenchmarkBoard {
+
+    /**
+     * No ambient or sun elevation frames during the measurements.
+     */
+    public static final String ADDRESS = "sim:ambient=86400000,sun=86400000,seed=1";
+    private static final long TIMEOUT_MS = 10000L;
+
+    private BenchmarkBoard() {
+    }
+
+    /**
+     * @return {@link Main#board}, connected and ready.
+     */
+    public static Board connect() throws Exception {
+        Board board = Main.board;
+        if (!board.isConnected()) board.connect(ADDRESS);
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!board.isReady()) {
+            if (System.currentTimeMillis() > deadline) throw new IllegalStateException("Simulated board not ready!");
+            Thread.sleep(10L);
+        }
+        return board;
+    }
+
+    public static void disconnect() {
+        Main.board.disconnect(false);
+    }
+}
@@ -0,0 +1,48 @@
+package io.github.marcocipriani01.thunderfocus.ascom;
+
+import io.github.marcocipriani01.thunderfocus.BenchmarkBoard;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Handling of the ASCOM driver commands against a simulated board. The sender isn't a connected client, so replies
+ * are built but not written to a socket. Commands that move the focuser or the cover are left out.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ASCOMBridgeBenchmark {
+
+    @Param({"Connected", "HasFocuser", "Position", "IsMoving", "MaxStep", "HasPowerBox", "HasAmbientSensors",
+            "MaxSwitch", "GetSwitchNames", "GetSwitchDescriptions", "CanWrite", "GetSwitches", "GetSwitch=2",
+            "MaxSwitchValues", "SetSwitch=2,100", "GetTemperature", "GetHumidity", "DewPoint", "HasFlat",
+            "HasServo", "CoverState", "CalibratorState", "Brightness"})
+    public String command;
+    private ASCOMBridge bridge;
+    private Socket from;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkBoard.connect();
+        bridge = new ASCOMBridge(0, () -> {
+        });
+        bridge.start();
+        from = new Socket();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        bridge.stop();
+        BenchmarkBoard.disconnect();
+    }
+
+    @Benchmark
+    public void onMessage() {
+        bridge.onMessage(from, command);
+    }
+}
@@ -0,0 +1,102 @@
+package io.github.marcocipriani01.thunderfocus.ascom;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round-trip latency of a line sent by one of many loopback clients to an echo server, for every server mode.
+ * Clients take turns, so all of them stay active, but only one request is in flight at a time: see
+ * {@code ASCOMBridgeLoadTest} for concurrent clients.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SimpleServerBenchmark {
+
+    private static final byte[] REQUEST = "Position\n".getBytes(StandardCharsets.US_ASCII);
+    @Param({"SELECTOR", "THREADS", "VIRTUAL_THREADS"})
+    public SimpleServer.ServerMode mode;
+    @Param({"500"})
+    public int clients;
+    private EchoServer server;
+    private Socket[] sockets;
+    private OutputStream[] outputs;
+    private BufferedReader[] inputs;
+    private int next = 0;
+
+    @Setup
+    public void setup() throws Exception {
+        int port;
+        try (ServerSocket s = new ServerSocket(0)) {
+            port = s.getLocalPort();
+        }
+        server = new EchoServer(port, mode);
+        server.start();
+        sockets = new Socket[clients];
+        outputs = new OutputStream[clients];
+        inputs = new BufferedReader[clients];
+        for (int i = 0; i < clients; i++) {
+            sockets[i] = new Socket(InetAddress.getLoopbackAddress(), port);
+            sockets[i].setTcpNoDelay(true);
+            outputs[i] = sockets[i].getOutputStream();
+            inputs[i] = new BufferedReader(new InputStreamReader(sockets[i].getInputStream(), StandardCharsets.US_ASCII));
+        }
+        while (server.getClientsCount() < clients) {
+            Thread.sleep(10L);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        for (Socket s : sockets) {
+            s.close();
+        }
+        server.stop();
+    }
+
+    @Benchmark
+    public String roundTrip() throws IOException {
+        int i = next;
+        next = (i + 1) % clients;
+        outputs[i].write(REQUEST);
+        outputs[i].flush();
+        return inputs[i].readLine();
+    }
+
+    private static final class EchoServer extends SimpleServer {
+
+        private EchoServer(int port, ServerMode mode) {
+            super(port, mode);
+        }
+
+        @Override
+        protected void onMessage(Socket from, String msg) {
+            println(from, msg);
+        }
+
+        @Override
+        protected boolean acceptClient(InetAddress address) {
+            return address.isLoopbackAddress();
+        }
+
+        @Override
+        protected void onNewClient(Socket client) {
+        }
+
+        @Override
+        protected void onClientLost(Socket client) {
+        }
+    }
+}
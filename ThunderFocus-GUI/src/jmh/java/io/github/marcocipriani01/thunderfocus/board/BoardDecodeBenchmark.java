@@ -0,0 +1,66 @@
+package io.github.marcocipriani01.thunderfocus.board;
+
+import io.github.marcocipriani01.thunderfocus.BenchmarkBoard;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of the frames sent by the board, including the listener notifications and the state snapshot update.
+ * Two frames with different values are alternated so that every call changes the state, except for
+ * {@code Y-same}, which repeats the same pin values and so notifies nothing.
+ * The focuser state frames ({@code M}, {@code H}, {@code P}) and the log frames are left out because they
+ * print a line each, and the config frame is only parsed once per connection. Running it with and without
+ * {@link LinkMetrics} shows the cost of the instrumentation.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BoardDecodeBenchmark {
+
+    @Param({"S", "A", "J", "Y", "Y-same", "T", "E"})
+    public String frame;
+    @Param({"false", "true"})
+    public boolean metrics;
+    private Board board;
+    private String[] frames;
+    private int i = 0;
+
+    @Setup
+    public void setup() throws Exception {
+        board = BenchmarkBoard.connect();
+        board.metrics().setEnabled(metrics);
+        frames = switch (frame) {
+            case "S" -> new String[]{"S1200", "S1201"};
+            case "A" -> new String[]{"A", "A"};
+            case "J" -> new String[]{"J12.3,78.4,8.6", "J12.4,78.2,8.6"};
+            case "Y" -> new String[]{pins(0), pins(128)};
+            case "Y-same" -> new String[]{pins(0), pins(0)};
+            case "T" -> new String[]{"T-12.34", "T-12.36"};
+            case "E" -> new String[]{"E1", "E2"};
+            default -> throw new IllegalArgumentException(frame);
+        };
+    }
+
+    private String pins(int value) {
+        StringBuilder sb = new StringBuilder("Y12,");
+        for (ArduinoPin pin : board.powerBox().asList()) {
+            sb.append('(').append(pin.getNumber()).append('%').append(value).append(')');
+        }
+        return sb.toString();
+    }
+
+    @TearDown
+    public void tearDown() {
+        board.metrics().setEnabled(false);
+        BenchmarkBoard.disconnect();
+    }
+
+    @Benchmark
+    public void onSerialMessage() {
+        board.onSerialMessage(frames[(i++) & 1]);
+    }
+}
@@ -0,0 +1,44 @@
+package io.github.marcocipriani01.thunderfocus.board;
+
+import io.github.marcocipriani01.thunderfocus.BenchmarkBoard;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Board#run(Board.Commands, Board.Listener, int...)}: validation, encoding, queueing and local state update.
+ * Only commands that coalesce in the write queue are measured, so the simulated board never falls behind.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CommandsBenchmark {
+
+    @Param({"FLAT_SET_BRIGHTNESS", "POWER_BOX_SET_PIN"})
+    public Board.Commands command;
+    private Board board;
+    private int pin;
+    private int i = 0;
+
+    @Setup
+    public void setup() throws Exception {
+        board = BenchmarkBoard.connect();
+        pin = board.powerBox().getIndex(0).getNumber();
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkBoard.disconnect();
+    }
+
+    @Benchmark
+    public CompletableFuture<Void> run() throws Exception {
+        int value = (i++) & 0xFF;
+        return (command == Board.Commands.POWER_BOX_SET_PIN) ?
+                board.run(command, null, pin, value) : board.run(command, null, value);
+    }
+}
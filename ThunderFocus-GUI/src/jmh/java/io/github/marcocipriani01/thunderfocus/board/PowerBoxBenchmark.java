@@ -0,0 +1,52 @@
+package io.github.marcocipriani01.thunderfocus.board;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pin lookups by number on boards with few and many pins.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PowerBoxBenchmark {
+
+    @Param({"4", "16", "54"})
+    public int pins;
+    private PowerBox powerBox;
+    private int[] numbers;
+    private int i = 0;
+
+    @Setup
+    public void setup() {
+        powerBox = new PowerBox(false, PowerBox.AutoModes.UNAVAILABLE);
+        for (int n = 0; n < pins; n++) {
+            powerBox.add(new ArduinoPin(n, "Pin " + n, 0, true, false, false));
+        }
+        Random random = new Random(1);
+        numbers = new int[1024];
+        for (int n = 0; n < numbers.length; n++) {
+            numbers[n] = random.nextInt(pins);
+        }
+    }
+
+    @Benchmark
+    public ArduinoPin get() {
+        return powerBox.get(numbers[(i++) & 1023]);
+    }
+
+    @Benchmark
+    public boolean contains() {
+        return powerBox.contains(numbers[(i++) & 1023]);
+    }
+
+    @Benchmark
+    public ArduinoPin miss() {
+        return powerBox.get(pins + 1);
+    }
+}
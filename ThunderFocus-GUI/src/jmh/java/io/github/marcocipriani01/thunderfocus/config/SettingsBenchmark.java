@@ -0,0 +1,64 @@
+package io.github.marcocipriani01.thunderfocus.config;
+
+import io.github.marcocipriani01.thunderfocus.board.ArduinoPin;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of the settings to JSON and saving them to a temporary file, with few and many pins: {@code save}
+ * is the synced, atomic write done by the writer thread, {@code saveInBackground} the cost of {@link Settings#save()}
+ * for the UI and INDI threads.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SettingsBenchmark {
+
+    @Param({"4", "54"})
+    public int pins;
+    private Settings settings;
+    private Path file;
+
+    @Setup
+    public void setup() throws IOException {
+        settings = new Settings();
+        for (int i = 0; i < pins; i++) {
+            settings.powerBoxPins.add(new ArduinoPin(i, "Pin " + i, 0, true, false, false));
+        }
+        for (int i = 0; i < 10; i++) {
+            settings.presets.put(i * 1000, "Preset " + i);
+        }
+        file = Files.createTempFile("ThunderFocus", ".json");
+        Settings.filePath = file;
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        settings.flush();
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(SettingsWriter.backupOf(file));
+    }
+
+    @Benchmark
+    public String toJson() {
+        return Settings.serializer.toJson(settings);
+    }
+
+    @Benchmark
+    public void save() throws IOException {
+        settings.save(file);
+    }
+
+    @Benchmark
+    public void saveInBackground() throws IOException {
+        settings.relativeStepSize++;
+        settings.save();
+    }
+}
@@ -0,0 +1,65 @@
+package io.github.marcocipriani01.thunderfocus.serial;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splitting of the serial stream into lines, as done by {@link SerialPortImpl}, with the received bytes delivered
+ * one at a time, in small USB packets or all together. Scores are per line. {@link #baseline(Blackhole)} is the
+ * string-based splitting used before {@link LineFramer}.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class LineFramerBenchmark {
+
+    private static final String[] FRAMES = {"M", "S1200", "S1450", "S1700", "A", "H",
+            "J12.3,78.4,8.6", "Y3,(2%128)(3%0)(4%255)(5%0)", "T-12.34", "E1"};
+    private static final int LINES = 100;
+    @Param({"1", "16", "4096"})
+    public int chunk;
+    private byte[] stream;
+    private LineFramer framer;
+    private String buf;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < LINES; i++) {
+            sb.append(FRAMES[i % FRAMES.length]).append("\r\n");
+        }
+        stream = sb.toString().getBytes(StandardCharsets.US_ASCII);
+        framer = new LineFramer(blackhole::consume);
+        buf = "";
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void feed() {
+        for (int i = 0; i < stream.length; i += chunk) {
+            framer.feed(stream, i, Math.min(chunk, stream.length - i));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void baseline(Blackhole blackhole) {
+        for (int i = 0; i < stream.length; i += chunk) {
+            // SerialPort.readString() decodes every chunk into a new String
+            String in = new String(stream, i, Math.min(chunk, stream.length - i));
+            String[] split = (buf + in.replace("\r", "")).split("\n", 0);
+            boolean b = in.endsWith("\n");
+            for (int j = 0; j < (b ? split.length : (split.length - 1)); j++) {
+                split[j] = split[j].trim();
+                if (!split[j].isEmpty()) blackhole.consume(split[j]);
+            }
+            buf = b ? "" : split[split.length - 1];
+        }
+    }
+}
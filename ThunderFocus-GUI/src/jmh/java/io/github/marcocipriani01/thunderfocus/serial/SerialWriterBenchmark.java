@@ -0,0 +1,78 @@
+package io.github.marcocipriani01.thunderfocus.serial;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the {@link SerialWriter} queue with a link that never blocks: plain frames, coalesced frames
+ * and the full round trip to the writer thread.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SerialWriterBenchmark {
+
+    private static final byte[] FRAME = "$A12345%\n".getBytes(StandardCharsets.US_ASCII);
+    private SerialWriter writer;
+
+    @Setup
+    public void setup() {
+        writer = new SerialWriter(new NullTransport(), Throwable::printStackTrace);
+        writer.start();
+    }
+
+    @TearDown
+    public void tearDown() {
+        writer.close();
+    }
+
+    @Benchmark
+    public CompletableFuture<Void> enqueue() throws IOException {
+        return writer.enqueue(SerialWriter.NO_COALESCING, FRAME);
+    }
+
+    @Benchmark
+    public CompletableFuture<Void> enqueueCoalescing() throws IOException {
+        return writer.enqueue(1L, FRAME);
+    }
+
+    @Benchmark
+    public void roundTrip() throws IOException {
+        writer.enqueue(SerialWriter.NO_COALESCING, FRAME).join();
+    }
+
+    private static final class NullTransport implements Transport {
+
+        @Override
+        public void connect(String address) {
+        }
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public void write(byte[] data) {
+        }
+
+        @Override
+        public void addListener(SerialMessageListener listener) {
+        }
+
+        @Override
+        public void removeListener(SerialMessageListener listener) {
+        }
+    }
+}
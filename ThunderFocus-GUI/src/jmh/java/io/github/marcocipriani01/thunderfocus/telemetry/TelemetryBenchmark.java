@@ -0,0 +1,90 @@
+package io.github.marcocipriani01.thunderfocus.telemetry;
+
+import io.github.marcocipriani01.thunderfocus.board.Board;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Appending records to the memory-mapped segments, and reading one minute out of an hour recorded at 100 Hz.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TelemetryBenchmark {
+
+    private static final long HOUR = 3600_000L;
+    private static final long START = 1_700_000_000_000L - (1_700_000_000_000L % HOUR);
+
+    private static void delete(Path folder) throws IOException {
+        try (Stream<Path> files = Files.walk(folder)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    @Benchmark
+    public void record(RecordState s) {
+        s.recorder.record(s.time++, TelemetryChannel.TEMPERATURE, 0, 12.5);
+    }
+
+    @Benchmark
+    public void readMinute(ReadState s, Blackhole blackhole) throws IOException {
+        long from = START + (((s.i++) % 59) * 60_000L);
+        s.reader.read(from, from + 60_000L, (time, channel, id, value) -> blackhole.consume(value));
+    }
+
+    @State(Scope.Thread)
+    public static class RecordState {
+
+        private Path folder;
+        private TelemetryRecorder recorder;
+        private long time;
+
+        @Setup(Level.Iteration)
+        public void setup() throws IOException {
+            folder = Files.createTempDirectory("telemetry");
+            recorder = new TelemetryRecorder(folder, new Board());
+            time = START;
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() throws IOException {
+            recorder.close();
+            delete(folder);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ReadState {
+
+        private Path folder;
+        private TelemetryReader reader;
+        private int i = 0;
+
+        @Setup
+        public void setup() throws IOException {
+            folder = Files.createTempDirectory("telemetry");
+            TelemetryRecorder recorder = new TelemetryRecorder(folder, new Board());
+            for (long t = START; t < (START + HOUR); t += 10L) {
+                recorder.record(t, TelemetryChannel.TEMPERATURE, 0, (t % 1000) / 10.0);
+            }
+            recorder.close();
+            reader = new TelemetryReader(folder);
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            delete(folder);
+        }
+    }
+}
@@ -8,8 +8,10 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.KeyEvent;
 import java.io.IOException;
+import java.util.EnumSet;
 
 import static io.github.marcocipriani01.thunderfocus.Main.*;
+import static io.github.marcocipriani01.thunderfocus.MainWindow.APP_LOGO;
 
 public class BacklashCalibrationWindow extends JDialog implements Board.Listener {
 
@@ -69,7 +71,7 @@ public class BacklashCalibrationWindow extends JDialog implements Board.Listener
             }
         });
 
-        board.addListener(this);
+        board.addListener(this, EnumSet.noneOf(Board.Parameters.class));
         Focuser focuser = board.focuser();
         focuser.clearRequestedPositions();
         try {
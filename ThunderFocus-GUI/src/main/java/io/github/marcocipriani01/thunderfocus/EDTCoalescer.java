@@ -0,0 +1,82 @@
+package io.github.marcocipriani01.thunderfocus;
+
+import javax.swing.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Coalesces UI updates coming from other threads. Every update only sets a dirty bit; the first one after a flush
+ * schedules the next flush on the Event Dispatch Thread, at most once per frame interval. The flush then applies
+ * each dirty key once, reading the latest state.
+ *
+ * @param <E> the type of the keys, an enum with at most 32 constants.
+ * @author marcocipriani01
+ * @version 1.0
+ */
+public class EDTCoalescer<E extends Enum<E>> {
+
+    /**
+     * Default frame interval, about 30 Hz.
+     */
+    public static final int DEFAULT_INTERVAL_MS = 33;
+    private final AtomicInteger dirty = new AtomicInteger(0);
+    private final E[] keys;
+    private final Consumer<E> apply;
+    private final Timer timer;
+
+    /**
+     * Class constructor.
+     *
+     * @param keyType the enum of the keys.
+     * @param apply   the update to run on the EDT for every dirty key.
+     */
+    public EDTCoalescer(Class<E> keyType, Consumer<E> apply) {
+        this(keyType, DEFAULT_INTERVAL_MS, apply);
+    }
+
+    /**
+     * Class constructor.
+     *
+     * @param keyType    the enum of the keys.
+     * @param intervalMs the minimum interval between two flushes.
+     * @param apply      the update to run on the EDT for every dirty key.
+     */
+    public EDTCoalescer(Class<E> keyType, int intervalMs, Consumer<E> apply) {
+        this.keys = keyType.getEnumConstants();
+        if (keys.length > Integer.SIZE) throw new IllegalArgumentException("Too many keys!");
+        this.apply = apply;
+        this.timer = new Timer(intervalMs, e -> flush());
+        this.timer.setRepeats(false);
+    }
+
+    /**
+     * Marks a key as dirty. Can be called from any thread.
+     *
+     * @param key the key to update.
+     */
+    public void post(E key) {
+        final int bit = 1 << key.ordinal();
+        int old = dirty.getAndUpdate(d -> d | bit);
+        if (old == 0) timer.start();
+    }
+
+    /**
+     * Discards the pending updates.
+     */
+    public void clear() {
+        dirty.set(0);
+    }
+
+    private void flush() {
+        int bits = dirty.getAndSet(0);
+        while (bits != 0) {
+            int i = Integer.numberOfTrailingZeros(bits);
+            bits &= bits - 1;
+            try {
+                apply.accept(keys[i]);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
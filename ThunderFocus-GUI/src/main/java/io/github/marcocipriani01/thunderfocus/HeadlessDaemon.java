@@ -0,0 +1,79 @@
+package io.github.marcocipriani01.thunderfocus;
+
+import io.github.marcocipriani01.thunderfocus.ascom.ASCOMBridge;
+import io.github.marcocipriani01.thunderfocus.board.Board;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.CountDownLatch;
+
+import static io.github.marcocipriani01.thunderfocus.Main.*;
+
+/**
+ * Runs ThunderFocus without any window ({@code --headless}), only serving the board over INDI and ASCOM.
+ * No AWT or Swing class is loaded. Events are logged to the standard output, and SIGTERM disconnects the board
+ * through the shutdown hook installed by {@link Main}.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+final class HeadlessDaemon implements Board.Listener {
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private HeadlessDaemon() {
+    }
+
+    static void run() {
+        log(APP_NAME + " started in headless mode");
+        board.addListener(new HeadlessDaemon());
+        String port = settings.getSerialPort();
+        if (port.isEmpty()) {
+            log("No serial port configured");
+        } else {
+            try {
+                log("Connecting to " + port);
+                board.connect(port);
+            } catch (IOException e) {
+                log("Unable to connect: " + e.getMessage());
+            }
+        }
+        if (settings.indiServer) {
+            indiServerCreator.start(settings.indiServerPort, false);
+            log("INDI server listening on port " + settings.indiServerPort);
+        }
+        if (settings.ascomBridge) {
+            try {
+                ascomBridge = new ASCOMBridge(settings.ascomBridgePort, settings.ascomServerMode,
+                        () -> log("ASCOM clients: " + ascomBridge.getClientsCount()));
+                ascomBridge.start();
+                log("ASCOM bridge listening on port " + settings.ascomBridgePort);
+            } catch (IOException e) {
+                log("Unable to start the ASCOM bridge: " + e.getMessage());
+            }
+        }
+        try {
+            new CountDownLatch(1).await();
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    private static void log(String msg) {
+        System.out.println("[" + TIME_FORMAT.format(LocalDateTime.now()) + "] " + msg);
+    }
+
+    @Override
+    public void updateConnectionState(Board.ConnectionState connectionState) {
+        switch (connectionState) {
+            case CONNECTED_READY, RECONNECTED -> log("Board: " + String.format(connectionState.getLabel(), board.getBoardVersion()));
+            default -> log("Board: " + connectionState.getLabel());
+        }
+    }
+
+    @Override
+    public void onCriticalError(Exception e) {
+        log("Error: " + e.getMessage());
+        e.printStackTrace();
+    }
+}
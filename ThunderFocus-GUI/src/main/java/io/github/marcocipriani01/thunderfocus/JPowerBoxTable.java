@@ -64,6 +64,19 @@ public class JPowerBoxTable extends JTable {
         scaleRows();
     }
 
+    /**
+     * Repaints the values of some pins, leaving the other rows alone.
+     *
+     * @param pins the pin numbers.
+     */
+    public void refreshPins(int... pins) {
+        if (powerBox == null) return;
+        for (int pin : pins) {
+            int row = powerBox.indexOf(pin);
+            if (row != -1) ((PowerBoxTableModel) dataModel).fireTableCellUpdated(row, 2);
+        }
+    }
+
     public void scaleColumns() {
         if (powerBox == null) return;
         int tW = getWidth(), count = dataModel.getColumnCount(), weightsSum = 0;
@@ -219,6 +232,7 @@ public class JPowerBoxTable extends JTable {
             switch (columnIndex) {
                 case 0 -> {
                     pin.setName(((String) val).trim().replaceAll("[^A-Za-z0-9 ]", ""));
+                    board.notifyListeners(mainWindow, Board.Parameters.POWERBOX_PINS);
                     PowerBox.clonePins(powerBox, settings.powerBoxPins);
                     try {
                         Main.settings.save();
@@ -1,24 +1,24 @@
 package io.github.marcocipriani01.thunderfocus;
 
-import com.formdev.flatlaf.FlatDarkLaf;
-import com.formdev.flatlaf.FlatIntelliJLaf;
-import com.formdev.flatlaf.IntelliJTheme;
-import com.jthemedetecor.OsThemeDetector;
 import io.github.marcocipriani01.thunderfocus.ascom.ASCOMBridge;
 import io.github.marcocipriani01.thunderfocus.board.Board;
 import io.github.marcocipriani01.thunderfocus.config.Settings;
 import io.github.marcocipriani01.thunderfocus.indi.INDIServerCreator;
+import io.github.marcocipriani01.thunderfocus.serial.PortDiscovery;
+import io.github.marcocipriani01.thunderfocus.telemetry.AmbientRollups;
+import io.github.marcocipriani01.thunderfocus.telemetry.TelemetryRecorder;
 
 import javax.swing.*;
-import javax.swing.event.HyperlinkEvent;
-import java.awt.*;
 import java.io.File;
 import java.io.IOException;
 import java.net.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
 
@@ -28,86 +28,77 @@ public class Main {
     public static final String APP_NAME;
     public static final OperatingSystem OPERATING_SYSTEM;
     public static final Settings settings;
-    public static final Image APP_LOGO = Toolkit.getDefaultToolkit().getImage(
-            Main.class.getResource("/io/github/marcocipriani01/thunderfocus/res/ThunderFocus.png"));
     public static final Board board;
     public static final INDIServerCreator indiServerCreator = new INDIServerCreator();
-    public static final OsThemeDetector themeDetector;
+    public static final PortDiscovery portDiscovery = new PortDiscovery();
+    /**
+     * Prints the time to the first window and exits, for the CDS training run and the startup benchmark. The real
+     * settings aren't used, and nothing is connected or recorded.
+     */
+    public static final boolean STARTUP_BENCHMARK = Boolean.getBoolean("thunderfocus.startupBenchmark");
+    private static final String ROLLUPS_FILE = "rollups.bin";
+    private static final AtomicBoolean shutDown = new AtomicBoolean(false);
     public static ASCOMBridge ascomBridge;
+    public static TelemetryRecorder telemetry;
+    public static AmbientRollups rollups;
     private static Path pidLock;
 
     static {
         RES_BUNDLE = ResourceBundle.getBundle("io.github.marcocipriani01.thunderfocus.lang");
         APP_NAME = i18n("app.name");
         OPERATING_SYSTEM = getOperatingSystem();
+        if (STARTUP_BENCHMARK) {
+            try {
+                Settings.useTemporaryFolder();
+            } catch (IOException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
         settings = Settings.load();
         board = new Board();
-        themeDetector = OsThemeDetector.getDetector();
     }
 
     public static void main(String[] args) {
-        try {
-            switch (settings.theme) {
-                case SYSTEM -> {
-                    if (themeDetector.isDark()) FlatDarkLaf.setup();
-                    else FlatIntelliJLaf.setup();
-                }
-                case LIGHT -> FlatIntelliJLaf.setup();
-                case DARK -> FlatDarkLaf.setup();
-                default -> IntelliJTheme.setup(Main.class.getResourceAsStream(
-                        "/io/github/marcocipriani01/thunderfocus/themes/" + Objects.requireNonNull(settings.theme.getFileName())));
+        boolean headless = false;
+        String config = null;
+        for (String arg : args) {
+            if (arg.equals("--headless")) headless = true;
+            else config = arg;
+        }
+        if (headless) {
+            System.setProperty("java.awt.headless", "true");
+            ProcessHandle running = findRunningInstance();
+            if (running != null) {
+                System.err.println(APP_NAME + " is already running, PID " + running.pid());
+                System.exit(1);
             }
-            UIManager.put("TabbedPane.showTabSeparators", true);
-            UIManager.put("Button.arc", 12);
-            UIManager.put("Component.arc", 12);
-            UIManager.put("ProgressBar.arc", 12);
-            UIManager.put("TextComponent.arc", 12);
-            UIManager.put("ScrollBar.trackArc", 999);
-            UIManager.put("ScrollBar.thumbArc", 999);
-            UIManager.put("ScrollBar.trackInsets", new Insets(2, 4, 2, 4));
-            UIManager.put("ScrollBar.thumbInsets", new Insets(2, 2, 2, 2));
-            UIManager.put("ScrollBar.track", new Color(0xe0e0e0));
-            UIManager.put("TitlePane.showIcon", false);
-            UIManager.put("TitlePane.centerTitle", true);
-            UIManager.put("TitlePane.iconSize", new Dimension(16, 16));
-        } catch (Exception e) {
-            e.printStackTrace();
+            writePidLock();
+            Runtime.getRuntime().addShutdownHook(new Thread(Main::shutdown, "Shutdown hook"));
+            startBackgroundServices();
+            HeadlessDaemon.run();
+            return;
         }
-        try {
-            pidLock = Paths.get(Settings.getSettingsFolder() + "PID.lock");
-            String pid = String.valueOf(ProcessHandle.current().pid());
-            if (pidLock.toFile().exists()) {
+        MainWindow.setupTheme();
+        if (!STARTUP_BENCHMARK) {
+            ProcessHandle running = findRunningInstance();
+            if ((running != null) && (JOptionPane.showConfirmDialog(null, APP_NAME + i18n("is.already.running"),
+                    APP_NAME, JOptionPane.OK_CANCEL_OPTION, JOptionPane.ERROR_MESSAGE) == JOptionPane.CANCEL_OPTION)) {
                 try {
-                    Optional<ProcessHandle> processHandle = ProcessHandle.of(Long.parseLong(Files.readString(pidLock).replace("\n", "").trim()));
-                    if (processHandle.isPresent()) {
-                        ProcessHandle presentHandle = processHandle.get();
-                        if (presentHandle.isAlive()) {
-                            Optional<String> command = presentHandle.info().command();
-                            if (command.isPresent() && command.get().contains("java") &&
-                                    (JOptionPane.showConfirmDialog(null, APP_NAME + i18n("is.already.running"),
-                                            APP_NAME, JOptionPane.OK_CANCEL_OPTION, JOptionPane.ERROR_MESSAGE) == JOptionPane.CANCEL_OPTION)) {
-                                try {
-                                    Thread.sleep(100);
-                                } catch (InterruptedException ignored) {
-                                }
-                                return;
-                            }
-                        }
-                    }
-                } catch (Exception e) {
-                    e.printStackTrace();
+                    Thread.sleep(100);
+                } catch (InterruptedException ignored) {
                 }
+                return;
             }
-            Files.write(pidLock, pid.getBytes());
-        } catch (IOException e) {
-            e.printStackTrace();
+            writePidLock();
         }
-        if (args.length > 0) {
-            File config = new File(args[0]);
-            if (config.exists() && config.isFile()) {
-                System.err.println("Invalid argument: " + args[0]);
-                SwingUtilities.invokeLater(() -> new MainWindow(config));
+        Runtime.getRuntime().addShutdownHook(new Thread(Main::shutdown, "Shutdown hook"));
+        startBackgroundServices();
+        if (config != null) {
+            File configFile = new File(config);
+            if (configFile.exists() && configFile.isFile()) {
+                SwingUtilities.invokeLater(() -> new MainWindow(configFile));
             } else {
+                System.err.println("Invalid argument: " + config);
                 SwingUtilities.invokeLater(MainWindow::new);
             }
         } else {
@@ -115,6 +106,47 @@ public class Main {
         }
     }
 
+    /**
+     * @return the process of another instance of the app that is still running, or {@code null}.
+     */
+    private static ProcessHandle findRunningInstance() {
+        try {
+            Path lock = Paths.get(Settings.getSettingsFolder() + "PID.lock");
+            if (!lock.toFile().exists()) return null;
+            Optional<ProcessHandle> processHandle = ProcessHandle.of(Long.parseLong(Files.readString(lock).replace("\n", "").trim()));
+            if (processHandle.isPresent()) {
+                ProcessHandle presentHandle = processHandle.get();
+                if (presentHandle.isAlive() && (presentHandle.pid() != ProcessHandle.current().pid())) {
+                    Optional<String> command = presentHandle.info().command();
+                    if (command.isPresent() && command.get().contains("java")) return presentHandle;
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    private static void writePidLock() {
+        try {
+            Path lock = Paths.get(Settings.getSettingsFolder() + "PID.lock");
+            Files.write(lock, String.valueOf(ProcessHandle.current().pid()).getBytes());
+            pidLock = lock;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void startBackgroundServices() {
+        // Starting the platform MBean server takes a while, don't delay the first window
+        Thread jmx = new Thread(board.metrics()::register, "JMX registration");
+        jmx.setDaemon(true);
+        jmx.start();
+        if (STARTUP_BENCHMARK) return;
+        if (settings.telemetryRecording) startTelemetry();
+        startRollups();
+    }
+
     public static String i18n(String id) {
         return RES_BUNDLE.getString(id);
     }
@@ -131,13 +163,70 @@ public class Main {
         return OperatingSystem.OTHER;
     }
 
+    private static Path getTelemetryFolder() throws IOException {
+        return Paths.get(Settings.getSettingsFolder() + "telemetry");
+    }
+
+    private static void startTelemetry() {
+        try {
+            Path folder = getTelemetryFolder();
+            TelemetryRecorder.deleteOlderThan(folder,
+                    System.currentTimeMillis() - (settings.telemetryRetentionDays * 86400000L));
+            telemetry = new TelemetryRecorder(folder, board);
+            telemetry.start();
+        } catch (IOException e) {
+            e.printStackTrace();
+            telemetry = null;
+        }
+    }
+
+    private static void startRollups() {
+        rollups = new AmbientRollups(board);
+        try {
+            Path folder = getTelemetryFolder();
+            Files.createDirectories(folder);
+            Path file = folder.resolve(ROLLUPS_FILE);
+            rollups.load(file);
+            rollups.setAutoSave(file);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        rollups.start();
+    }
+
+    private static void saveRollups() {
+        try {
+            Path folder = getTelemetryFolder();
+            Files.createDirectories(folder);
+            rollups.save(folder.resolve(ROLLUPS_FILE));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    static void onStartupCompleted() {
+        ProcessHandle.current().info().startInstant().ifPresent(start ->
+                System.out.println("Time to first window: " + Duration.between(start, Instant.now()).toMillis() + " ms"));
+        SwingUtilities.invokeLater(() -> exit(0));
+    }
+
     public static boolean isAscomRunning() {
         return (ascomBridge != null) && (ascomBridge.isConnected());
     }
 
     public static void exit(int code) {
+        shutdown();
+        System.exit(code);
+    }
+
+    /**
+     * Stops the servers, disconnects the board and saves the telemetry and the settings. Runs only once, either
+     * from {@link #exit(int)} or from the shutdown hook (e.g. on SIGTERM).
+     */
+    private static void shutdown() {
+        if (shutDown.getAndSet(true)) return;
         try {
-            Files.deleteIfExists(pidLock);
+            if (pidLock != null) Files.deleteIfExists(pidLock);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -149,8 +238,19 @@ public class Main {
             }
         }
         //indiServerCreator.stop();
-        if (board.isConnected()) board.disconnect();
-        System.exit(code);
+        if (board.metrics().isEnabled()) System.out.print(board.metrics().dump());
+        if (board.isConnected() || board.isReconnecting()) board.disconnect();
+        if (telemetry != null) telemetry.close();
+        if (rollups != null) {
+            rollups.stop();
+            rollups.setAutoSave(null);
+            saveRollups();
+        }
+        try {
+            settings.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
     public static String getIP(boolean localhost) throws SocketException, IllegalStateException {
@@ -169,27 +269,6 @@ public class Main {
         throw new IllegalStateException("No network interface found.");
     }
 
-    public static void openBrowser(String url, JFrame frame) {
-        try {
-            Desktop desktop;
-            if (Desktop.isDesktopSupported() && (desktop = Desktop.getDesktop()).isSupported(Desktop.Action.BROWSE)) {
-                desktop.browse(new URI(url));
-            } else if (Main.OPERATING_SYSTEM == OperatingSystem.LINUX) {
-                Runtime.getRuntime().exec(new String[]{"xdg-open ", url});
-            } else {
-                throw new UnsupportedOperationException("Browser support not found.");
-            }
-        } catch (Exception ex) {
-            ex.printStackTrace();
-            JOptionPane.showMessageDialog(frame,
-                    i18n("browser.error"), APP_NAME, JOptionPane.ERROR_MESSAGE);
-        }
-    }
-
-    public static void openBrowser(HyperlinkEvent uri, JFrame frame) {
-        openBrowser(uri.getDescription().replace("\\", ""), frame);
-    }
-
     public static String getAppVersion() {
         try {
             Enumeration<URL> resources = Main.class.getClassLoader().getResources("META-INF/MANIFEST.MF");
@@ -3,17 +3,23 @@ package io.github.marcocipriani01.thunderfocus;
 import com.formdev.flatlaf.FlatDarkLaf;
 import com.formdev.flatlaf.FlatIntelliJLaf;
 import com.formdev.flatlaf.IntelliJTheme;
+import com.jthemedetecor.OsThemeDetector;
 import io.github.marcocipriani01.thunderfocus.ascom.ASCOMBridge;
 import io.github.marcocipriani01.thunderfocus.board.*;
 import io.github.marcocipriani01.thunderfocus.config.ExportableSettings;
 import io.github.marcocipriani01.thunderfocus.config.Settings;
 import io.github.marcocipriani01.thunderfocus.indi.INDIThunderFocusDriver;
+import io.github.marcocipriani01.thunderfocus.serial.PortDiscovery;
 import io.github.marcocipriani01.thunderfocus.serial.SerialPortImpl;
+import io.github.marcocipriani01.thunderfocus.serial.Transport;
+import io.github.marcocipriani01.thunderfocus.telemetry.AmbientRollups;
+import io.github.marcocipriani01.thunderfocus.telemetry.TelemetryChannel;
 import jssc.SerialPortException;
 import org.jfree.chart.ChartPanel;
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.axis.DateAxis;
 import org.jfree.chart.axis.NumberAxis;
+import org.jfree.chart.axis.ValueAxis;
 import org.jfree.chart.plot.XYPlot;
 import org.jfree.chart.plot.dial.*;
 import org.jfree.chart.renderer.xy.XYSplineRenderer;
@@ -21,15 +27,14 @@ import org.jfree.chart.ui.GradientPaintTransformType;
 import org.jfree.chart.ui.StandardGradientPaintTransformer;
 import org.jfree.data.general.DefaultValueDataset;
 import org.jfree.data.general.ValueDataset;
-import org.jfree.data.time.Second;
-import org.jfree.data.time.TimeSeries;
-import org.jfree.data.time.TimeSeriesCollection;
+import org.jfree.data.xy.DefaultXYDataset;
 
 import javax.swing.*;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 import javax.swing.event.HyperlinkEvent;
 import javax.swing.filechooser.FileNameExtensionFilter;
+import javax.swing.plaf.basic.ComboPopup;
 import javax.swing.table.AbstractTableModel;
 import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.JTableHeader;
@@ -38,8 +43,12 @@ import java.awt.datatransfer.StringSelection;
 import java.awt.event.*;
 import java.io.File;
 import java.io.IOException;
-import java.util.Date;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.IntStream;
 
 import static io.github.marcocipriani01.thunderfocus.Main.*;
@@ -48,6 +57,9 @@ public class MainWindow extends JFrame implements
         ChangeListener, ActionListener, KeyListener, FocusListener,
         Board.Listener, Settings.SettingsListener, ItemListener {
 
+    public static final Image APP_LOGO = Toolkit.getDefaultToolkit().getImage(
+            MainWindow.class.getResource("/io/github/marcocipriani01/thunderfocus/res/ThunderFocus.png"));
+    public static final OsThemeDetector themeDetector = OsThemeDetector.getDetector();
     private static final ImageIcon POWERBOX_TAB =
             new ImageIcon(Objects.requireNonNull(MainWindow.class.getResource("/io/github/marcocipriani01/thunderfocus/res/power_box_tab.png")));
     private static final ImageIcon AMBIENT_TAB =
@@ -55,6 +67,17 @@ public class MainWindow extends JFrame implements
     private static final ImageIcon FLAT_PANEL_TAB =
             new ImageIcon(Objects.requireNonNull(MainWindow.class.getResource("/io/github/marcocipriani01/thunderfocus/res/flat_tab.png")));
     private final MiniWindow miniWindow = new MiniWindow();
+    private final ExecutorService backgroundTasks = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "MainWindow background tasks");
+        t.setDaemon(true);
+        return t;
+    });
+    private final EDTCoalescer<Board.Parameters> paramUpdates = new EDTCoalescer<>(Board.Parameters.class, this::applyParam);
+    /**
+     * Pins whose value changed since the last update of the table. Guarded by itself, like {@link #allPinsChanged}.
+     */
+    private final BitSet changedPins = new BitSet();
+    private boolean allPinsChanged = false;
     private final PresetsTableModel presetsTableModel;
     private JPanel parent;
     private JComboBox<String> serialPortComboBox;
@@ -144,9 +167,14 @@ public class MainWindow extends JFrame implements
     private DefaultValueDataset tempDataset;
     private DefaultValueDataset humidityDataset;
     private DefaultValueDataset dewPointDataset;
-    private TimeSeries tempSeries;
-    private TimeSeries dewPointSeries;
-    private TimeSeries humiditySeries;
+    private RingBufferXYDataset tempGraphDataset;
+    private RingBufferXYDataset humGraphDataset;
+    /**
+     * Resolution and time range of the rollups shown while the chart is zoomed out, or {@code null}.
+     */
+    private AmbientRollups.Resolution historyResolution = null;
+    private long historyFrom;
+    private long historyTo;
 
     public MainWindow(File config) {
         this();
@@ -157,7 +185,7 @@ public class MainWindow extends JFrame implements
 
     public MainWindow() {
         super(APP_NAME);
-        setIconImage(Main.APP_LOGO);
+        setIconImage(APP_LOGO);
         setContentPane(parent);
         setDefaultCloseOperation(DO_NOTHING_ON_CLOSE);
         addWindowListener(new WindowAdapter() {
@@ -166,6 +194,11 @@ public class MainWindow extends JFrame implements
                 super.windowClosing(e);
                 askClose();
             }
+
+            @Override
+            public void windowOpened(WindowEvent e) {
+                if (Main.STARTUP_BENCHMARK) Main.onStartupCompleted();
+            }
         });
         parent.registerKeyboardAction(e -> askClose(), KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0),
                 JComponent.WHEN_ANCESTOR_OF_FOCUSED_COMPONENT);
@@ -185,7 +218,7 @@ public class MainWindow extends JFrame implements
         aboutLabel.addMouseListener(new MouseAdapter() {
             @Override
             public void mouseClicked(MouseEvent e) {
-                Main.openBrowser("https://marcocipriani01.github.io", MainWindow.this);
+                openBrowser("https://marcocipriani01.github.io", MainWindow.this);
             }
         });
         infoPane.setCaretPosition(0);
@@ -219,7 +252,7 @@ public class MainWindow extends JFrame implements
             }
         });
         infoPane.addHyperlinkListener(e -> {
-            if (e.getEventType() == HyperlinkEvent.EventType.ACTIVATED) Main.openBrowser(e, this);
+            if (e.getEventType() == HyperlinkEvent.EventType.ACTIVATED) openBrowser(e, this);
         });
 
         JTableHeader tableHeader = presetsTable.getTableHeader();
@@ -236,29 +269,55 @@ public class MainWindow extends JFrame implements
 
         boolean autoConnect = settings.autoConnect;
         autoConnectBox.setSelected(autoConnect);
-        String serialPort = settings.getSerialPort();
-        if (!serialPort.isEmpty()) {
-            for (String p : SerialPortImpl.scanSerialPorts()) {
-                serialPortComboBox.addItem(p);
-                if (p.equals(serialPort)) {
-                    serialPortComboBox.setSelectedItem(serialPort);
-                    if (autoConnect && (!board.isConnected())) {
-                        try {
-                            board.connect(serialPort);
-                        } catch (SerialPortException ex) {
-                            ex.printStackTrace();
-                        }
-                    }
-                    break;
-                }
-            }
-        }
-
         if (settings.theme == Settings.Theme.SYSTEM)
             themeDetector.registerListener(this::updateDarkMode);
         board.addListener(this);
         settings.addListener(this);
-        startOrStopINDI(false);
+        serialPortComboBox.setRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+                String version = portDiscovery.getBoardVersion((String) value);
+                if (version != null) value = String.format(i18n("port.board"), value, version);
+                return super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+            }
+        });
+        // Loading the serial and INDI libraries takes a while, don't block the first window
+        String serialPort = settings.getSerialPort();
+        if (Main.STARTUP_BENCHMARK) {
+            // Don't open any port nor start any server
+        } else if (serialPort.isEmpty()) {
+            // First run, look for the boards
+            refreshPorts(false);
+        } else {
+            backgroundTasks.execute(() -> {
+                String[] ports = SerialPortImpl.scanSerialPorts();
+                // Network, pipe and simulator addresses can't be scanned
+                boolean found = !Transport.isSerialPort(serialPort);
+                for (String p : ports) {
+                    if (p.equals(serialPort)) {
+                        found = true;
+                        break;
+                    }
+                }
+                final boolean connect = found && autoConnect;
+                SwingUtilities.invokeLater(() -> {
+                    if (serialPortComboBox.getItemCount() > 0) return;
+                    for (String p : ports) {
+                        serialPortComboBox.addItem(p);
+                    }
+                    if (connect || (!Transport.isSerialPort(serialPort)))
+                        serialPortComboBox.setSelectedItem(serialPort);
+                });
+                if (connect && (!board.isConnected())) {
+                    try {
+                        board.connect(serialPort);
+                    } catch (IOException | IllegalStateException ex) {
+                        ex.printStackTrace();
+                    }
+                }
+            });
+        }
+        if (!Main.STARTUP_BENCHMARK) startOrStopINDI(false);
 
         setResizable(true);
         setBounds(350, 150, 790, 800);
@@ -266,6 +325,126 @@ public class MainWindow extends JFrame implements
         setVisible(true);
     }
 
+    /**
+     * Sets up the look and feel. Must be called before any window is created.
+     */
+    static void setupTheme() {
+        try {
+            switch (settings.theme) {
+                case SYSTEM -> {
+                    if (themeDetector.isDark()) FlatDarkLaf.setup();
+                    else FlatIntelliJLaf.setup();
+                }
+                case LIGHT -> FlatIntelliJLaf.setup();
+                case DARK -> FlatDarkLaf.setup();
+                default -> IntelliJTheme.setup(Main.class.getResourceAsStream(
+                        "/io/github/marcocipriani01/thunderfocus/themes/" + Objects.requireNonNull(settings.theme.getFileName())));
+            }
+            UIManager.put("TabbedPane.showTabSeparators", true);
+            UIManager.put("Button.arc", 12);
+            UIManager.put("Component.arc", 12);
+            UIManager.put("ProgressBar.arc", 12);
+            UIManager.put("TextComponent.arc", 12);
+            UIManager.put("ScrollBar.trackArc", 999);
+            UIManager.put("ScrollBar.thumbArc", 999);
+            UIManager.put("ScrollBar.trackInsets", new Insets(2, 4, 2, 4));
+            UIManager.put("ScrollBar.thumbInsets", new Insets(2, 2, 2, 2));
+            UIManager.put("ScrollBar.track", new Color(0xe0e0e0));
+            UIManager.put("TitlePane.showIcon", false);
+            UIManager.put("TitlePane.centerTitle", true);
+            UIManager.put("TitlePane.iconSize", new Dimension(16, 16));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    public static void openBrowser(String url, JFrame frame) {
+        try {
+            Desktop desktop;
+            if (Desktop.isDesktopSupported() && (desktop = Desktop.getDesktop()).isSupported(Desktop.Action.BROWSE)) {
+                desktop.browse(new URI(url));
+            } else if (OPERATING_SYSTEM == OperatingSystem.LINUX) {
+                Runtime.getRuntime().exec(new String[]{"xdg-open ", url});
+            } else {
+                throw new UnsupportedOperationException("Browser support not found.");
+            }
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            JOptionPane.showMessageDialog(frame,
+                    i18n("browser.error"), APP_NAME, JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    public static void openBrowser(HyperlinkEvent uri, JFrame frame) {
+        openBrowser(uri.getDescription().replace("\\", ""), frame);
+    }
+
+    /**
+     * Fills the live datasets with the rollups of the retention window. The bucket still open is placed at the
+     * current time instead of its middle, so that the samples added afterwards stay in order.
+     */
+    private void loadGraphHistory(long retention) {
+        if (Main.rollups == null) return;
+        long now = System.currentTimeMillis(), from = now - retention;
+        int points = 1000;
+        Main.rollups.query(TelemetryChannel.TEMPERATURE, from, now, points, (start, width, min, max, mean, last) ->
+                tempGraphDataset.add(0, Math.min(start + width / 2, now), mean));
+        Main.rollups.query(TelemetryChannel.DEW_POINT, from, now, points, (start, width, min, max, mean, last) ->
+                tempGraphDataset.add(1, Math.min(start + width / 2, now), mean));
+        Main.rollups.query(TelemetryChannel.HUMIDITY, from, now, points, (start, width, min, max, mean, last) ->
+                humGraphDataset.add(0, Math.min(start + width / 2, now), mean));
+    }
+
+    /**
+     * Called when the time axis of the sensors chart changes. Zoomed out past the retention window, the chart shows
+     * the rollups at the resolution that suits the visible time span, queried again when the span changes tier or
+     * leaves the loaded range. Otherwise, it shows the live samples.
+     */
+    private void updateChartHistory() {
+        XYPlot plot = timeSensorsChart.getChart().getXYPlot();
+        ValueAxis axis = plot.getDomainAxis();
+        long from = (long) axis.getLowerBound(), to = (long) axis.getUpperBound();
+        if ((Main.rollups == null) || axis.isAutoRange() ||
+                ((to - from) <= (settings.chartRetentionMinutes * 60_000L))) {
+            if (historyResolution != null) {
+                historyResolution = null;
+                plot.setDataset(0, tempGraphDataset);
+                plot.setDataset(1, humGraphDataset);
+            }
+            return;
+        }
+        AmbientRollups.Resolution resolution =
+                AmbientRollups.resolutionFor(from, to, Math.max(timeSensorsChart.getWidth(), 16));
+        if ((resolution == historyResolution) && (from >= historyFrom) && (to <= historyTo)) return;
+        // Half a screen more on both sides, so that small pans don't query again
+        long margin = (to - from) / 2L, now = System.currentTimeMillis();
+        historyResolution = resolution;
+        historyFrom = from - margin;
+        historyTo = to + margin;
+        DefaultXYDataset temp = new DefaultXYDataset();
+        temp.addSeries(i18n("temperature"), queryRollups(TelemetryChannel.TEMPERATURE, now));
+        temp.addSeries(i18n("dew.point"), queryRollups(TelemetryChannel.DEW_POINT, now));
+        DefaultXYDataset hum = new DefaultXYDataset();
+        hum.addSeries(i18n("humidity"), queryRollups(TelemetryChannel.HUMIDITY, now));
+        plot.setDataset(0, temp);
+        plot.setDataset(1, hum);
+    }
+
+    /**
+     * @return the means of the rollup buckets in the loaded range, as {@code {times, values}}.
+     */
+    private double[][] queryRollups(TelemetryChannel channel, long now) {
+        int max = (int) ((historyTo - historyFrom) / historyResolution.getWidth()) + 2;
+        double[] x = new double[max], y = new double[max];
+        int[] count = {0};
+        Main.rollups.query(channel, historyResolution, historyFrom, historyTo, (start, width, min, mx, mean, last) -> {
+            if (count[0] == max) return;
+            x[count[0]] = Math.min(start + width / 2, now);
+            y[count[0]++] = mean;
+        });
+        return new double[][]{Arrays.copyOf(x, count[0]), Arrays.copyOf(y, count[0])};
+    }
+
     public JFreeChart createStandardDialChart(
             String title, ValueDataset dataset, double lowerBound, double upperBound) {
         DialPlot dialplot = new DialPlot();
@@ -365,27 +544,43 @@ public class MainWindow extends JFrame implements
         powerBoxLatSpinner = new JSpinner(new SpinnerNumberModel(0.0, -180.0, 180.0, 0.001));
         powerBoxLongSpinner = new JSpinner(new SpinnerNumberModel(0.0, -180.0, 180.0, 0.001));
 
+        // The charts are only created when the sensors tab is first shown, see createAmbientCharts()
         tempDataset = new DefaultValueDataset(-20D);
-        tempChartPanel = new ChartPanel(createTemperatureDialChart(i18n("temperature"), tempDataset,
-                new Color(255, 82, 82), new Color(41, 182, 246)));
+        tempChartPanel = new ChartPanel(null);
         tempChartPanel.setPreferredSize(new Dimension(240, 220));
         humidityDataset = new DefaultValueDataset(0D);
-        humChartPanel = new ChartPanel(createHumidityDialChart(i18n("humidity"), humidityDataset,
-                new Color(38, 166, 154), new Color(255, 145, 0)));
+        humChartPanel = new ChartPanel(null);
         humChartPanel.setPreferredSize(new Dimension(240, 220));
         dewPointDataset = new DefaultValueDataset(-20D);
-        dewPointChartPanel = new ChartPanel(createTemperatureDialChart(i18n("dew.point"),
-                dewPointDataset, new Color(68, 138, 255), new Color(244, 67, 54)));
+        dewPointChartPanel = new ChartPanel(null);
         dewPointChartPanel.setPreferredSize(new Dimension(240, 220));
 
-        TimeSeriesCollection tempGraphDataset = new TimeSeriesCollection();
-        tempSeries = new TimeSeries(i18n("temperature"));
-        tempGraphDataset.addSeries(tempSeries);
-        dewPointSeries = new TimeSeries(i18n("dew.point"));
-        tempGraphDataset.addSeries(dewPointSeries);
-        TimeSeriesCollection humGraphDataset = new TimeSeriesCollection();
-        humiditySeries = new TimeSeries(i18n("humidity"));
-        humGraphDataset.addSeries(humiditySeries);
+        long retention = settings.chartRetentionMinutes * 60_000L;
+        tempGraphDataset = new RingBufferXYDataset(retention, i18n("temperature"), i18n("dew.point"));
+        humGraphDataset = new RingBufferXYDataset(retention, i18n("humidity"));
+        loadGraphHistory(retention);
+        timeSensorsChart = new ChartPanel(null);
+        timeSensorsChart.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                int width = timeSensorsChart.getWidth();
+                tempGraphDataset.setBuckets(width);
+                humGraphDataset.setBuckets(width);
+            }
+        });
+
+        openAngleSpinner = new JSpinner(new SpinnerNumberModel(250, 170, 290, 1));
+        closedAngleSpinner = new JSpinner(new SpinnerNumberModel(0, -15, 15, 1));
+    }
+
+    private void createAmbientCharts() {
+        if (timeSensorsChart.getChart() != null) return;
+        tempChartPanel.setChart(createTemperatureDialChart(i18n("temperature"), tempDataset,
+                new Color(255, 82, 82), new Color(41, 182, 246)));
+        humChartPanel.setChart(createHumidityDialChart(i18n("humidity"), humidityDataset,
+                new Color(38, 166, 154), new Color(255, 145, 0)));
+        dewPointChartPanel.setChart(createTemperatureDialChart(i18n("dew.point"),
+                dewPointDataset, new Color(68, 138, 255), new Color(244, 67, 54)));
         XYPlot plot = new XYPlot();
         plot.setDataset(0, tempGraphDataset);
         plot.setDataset(1, humGraphDataset);
@@ -400,13 +595,13 @@ public class MainWindow extends JFrame implements
         NumberAxis humAxis = new NumberAxis(i18n("humidity.percentage"));
         humAxis.setRange(0.0, 100.0);
         plot.setRangeAxis(1, humAxis);
-        plot.setDomainAxis(new DateAxis());
+        DateAxis timeAxis = new DateAxis();
+        // Out of the listener, which runs while the plot is being changed
+        timeAxis.addChangeListener(e -> SwingUtilities.invokeLater(this::updateChartHistory));
+        plot.setDomainAxis(timeAxis);
         plot.mapDatasetToRangeAxis(0, 0);
         plot.mapDatasetToRangeAxis(1, 1);
-        timeSensorsChart = new ChartPanel(new JFreeChart(plot));
-
-        openAngleSpinner = new JSpinner(new SpinnerNumberModel(250, 170, 290, 1));
-        closedAngleSpinner = new JSpinner(new SpinnerNumberModel(0, -15, 15, 1));
+        timeSensorsChart.setChart(new JFreeChart(plot));
     }
 
     private void refreshDriverName() {
@@ -425,7 +620,7 @@ public class MainWindow extends JFrame implements
             try {
                 setVisible(false);
                 SystemTray tray = SystemTray.getSystemTray();
-                TrayIcon trayIcon = new TrayIcon(Main.APP_LOGO, APP_NAME);
+                TrayIcon trayIcon = new TrayIcon(APP_LOGO, APP_NAME);
                 trayIcon.setImageAutoSize(true);
                 trayIcon.setToolTip(APP_NAME);
                 trayIcon.addMouseListener(new MouseListener() {
@@ -513,27 +708,54 @@ public class MainWindow extends JFrame implements
         }
     }
 
+    /**
+     * Lists the serial ports in the combo box, then probes them in the background to find the boards.
+     *
+     * @param showPopup whether to open the list once it has been filled.
+     */
+    private void refreshPorts(boolean showPopup) {
+        backgroundTasks.execute(() -> {
+            String[] ports = SerialPortImpl.scanSerialPorts();
+            SwingUtilities.invokeLater(() -> {
+                String selectedItem = (String) serialPortComboBox.getSelectedItem();
+                serialPortComboBox.removeAllItems();
+                for (String p : ports) {
+                    serialPortComboBox.addItem(p);
+                }
+                serialPortComboBox.setSelectedItem(selectedItem);
+                if (showPopup) serialPortComboBox.showPopup();
+            });
+            portDiscovery.discover(board.getAddress(), port -> SwingUtilities.invokeLater(() -> onPortProbed(port)));
+        });
+    }
+
+    private void onPortProbed(PortDiscovery.Port port) {
+        String selectedItem = (String) serialPortComboBox.getSelectedItem();
+        // Select the first board found, unless another one is already selected or connected
+        if (port.isBoard() && (!board.isConnected()) && (!board.isReconnecting()) &&
+                ((selectedItem == null) || (Transport.isSerialPort(selectedItem) && (portDiscovery.getBoardVersion(selectedItem) == null))))
+            serialPortComboBox.setSelectedItem(port.name());
+        serialPortComboBox.repaint();
+        if (serialPortComboBox.getAccessibleContext().getAccessibleChild(0) instanceof ComboPopup popup)
+            popup.getList().repaint();
+    }
+
     @Override
     public void actionPerformed(ActionEvent e) {
         Object source = e.getSource();
         if (source == refreshButton) {
-            String selectedItem = (String) serialPortComboBox.getSelectedItem();
-            serialPortComboBox.removeAllItems();
-            for (String p : SerialPortImpl.scanSerialPorts()) {
-                serialPortComboBox.addItem(p);
-            }
-            serialPortComboBox.setSelectedItem(selectedItem);
-            serialPortComboBox.showPopup();
+            refreshPorts(true);
 
         } else if (source == connectButton) {
-            if (board.isConnected()) {
+            if (board.isConnected() || board.isReconnecting()) {
                 board.disconnect();
             } else if (serialPortComboBox.getSelectedItem() != null) {
                 String port = (String) serialPortComboBox.getSelectedItem();
                 settings.setSerialPort(port, this);
                 try {
+                    portDiscovery.release(port);
                     board.connect(port);
-                } catch (SerialPortException ex) {
+                } catch (IOException ex) {
                     connectionErr(ex);
                 }
                 try {
@@ -668,9 +890,8 @@ public class MainWindow extends JFrame implements
             }
 
         } else if (source == cleanGraphButton) {
-            tempSeries.clear();
-            dewPointSeries.clear();
-            humiditySeries.clear();
+            tempGraphDataset.clear();
+            humGraphDataset.clear();
 
         } else if (source == addPresetButton) {
             int pos = board.focuser().getPos();
@@ -781,8 +1002,15 @@ public class MainWindow extends JFrame implements
         try {
             int oldIndiPort = settings.indiServerPort;
             int oldAscomPort = settings.ascomBridgePort;
+            int oldChartRetention = settings.chartRetentionMinutes;
             ExportableSettings es = ExportableSettings.load(file.toPath());
             es.applyTo(settings, board);
+            // The datasets don't exist yet if the charts haven't been created
+            if ((tempGraphDataset != null) && (settings.chartRetentionMinutes != oldChartRetention)) {
+                long retention = settings.chartRetentionMinutes * 60_000L;
+                tempGraphDataset.setRetention(retention);
+                humGraphDataset.setRetention(retention);
+            }
             setTheme(es.theme);
             appThemeCombo.setSelectedItem(es.theme);
             localOrRemoteCombo.setSelectedItem(i18n(es.showIpIndiDriver ? "remote" : "local"));
@@ -934,13 +1162,13 @@ public class MainWindow extends JFrame implements
     }
 
     private void startOrStopINDI(boolean forceRestart) {
-        if (settings.indiServer) {
-            Main.indiServerCreator.start(settings.indiServerPort, forceRestart);
-            indiStatusLabel.setText(i18n("server.active"));
-        } else {
-            Main.indiServerCreator.stop();
-            indiStatusLabel.setText(i18n("server.inactive"));
-        }
+        final boolean start = settings.indiServer;
+        final int port = settings.indiServerPort;
+        backgroundTasks.execute(() -> {
+            if (start) Main.indiServerCreator.start(port, forceRestart);
+            else Main.indiServerCreator.stop();
+            SwingUtilities.invokeLater(() -> indiStatusLabel.setText(i18n(start ? "server.active" : "server.inactive")));
+        });
     }
 
     private void startOrStopASCOM(boolean forceRestart) {
@@ -949,11 +1177,11 @@ public class MainWindow extends JFrame implements
                 if (Main.isAscomRunning()) {
                     if (forceRestart) {
                         Main.ascomBridge.stop();
-                        Main.ascomBridge = new ASCOMBridge(settings.ascomBridgePort, this::onASCOMClientListChange);
+                        Main.ascomBridge = new ASCOMBridge(settings.ascomBridgePort, settings.ascomServerMode, this::onASCOMClientListChange);
                         Main.ascomBridge.start();
                     }
                 } else {
-                    Main.ascomBridge = new ASCOMBridge(settings.ascomBridgePort, this::onASCOMClientListChange);
+                    Main.ascomBridge = new ASCOMBridge(settings.ascomBridgePort, settings.ascomServerMode, this::onASCOMClientListChange);
                     Main.ascomBridge.start();
                 }
                 ascomStatusLabel.setText(i18n("bridge.active"));
@@ -1056,71 +1284,106 @@ public class MainWindow extends JFrame implements
 
     @Override
     public void updateParam(Board.Parameters p) {
-        SwingUtilities.invokeLater(() -> {
-            switch (p) {
-                case REQUESTED_POS -> requestedPosField.setText(String.valueOf(board.focuser().getTargetPos()));
-                case CURRENT_POS -> {
-                    currentPosField.setText(String.valueOf(board.focuser().getPos()));
-                    if (!posSlider.hasFocus()) updatePosSlider();
-                    if (!ticksPosSlider.hasFocus()) updateTicksPosSlider();
+        if (p == Board.Parameters.POWERBOX_PINS) {
+            synchronized (changedPins) {
+                allPinsChanged = true;
+            }
+        }
+        paramUpdates.post(p);
+    }
+
+    @Override
+    public void onPinsChanged(int[] pins) {
+        synchronized (changedPins) {
+            for (int pin : pins) {
+                changedPins.set(pin);
+            }
+        }
+        paramUpdates.post(Board.Parameters.POWERBOX_PINS);
+    }
+
+    /**
+     * Applies the latest value of a parameter to the UI. Called on the EDT by {@link #paramUpdates}.
+     */
+    private void applyParam(Board.Parameters p) {
+        if (!board.isReady()) return;
+        switch (p) {
+            case REQUESTED_POS -> requestedPosField.setText(String.valueOf(board.focuser().getTargetPos()));
+            case CURRENT_POS -> {
+                currentPosField.setText(String.valueOf(board.focuser().getPos()));
+                if (!posSlider.hasFocus()) updatePosSlider();
+                if (!ticksPosSlider.hasFocus()) updateTicksPosSlider();
+            }
+            case SPEED -> {
+                if (!fokSpeedSlider.hasFocus()) {
+                    fokSpeedSlider.setValue(board.focuser().getSpeed());
                 }
-                case SPEED -> {
-                    if (!fokSpeedSlider.hasFocus()) {
-                        fokSpeedSlider.setValue(board.focuser().getSpeed());
-                    }
+            }
+            case BACKLASH -> fokBacklashSpinner.setValue(board.focuser().getBacklash());
+            case REVERSE_DIR -> fokReverseDirBox.setSelected(board.focuser().isDirInverted());
+            case ENABLE_POWER_SAVE -> fokPowerSaverBox.setSelected(board.focuser().isPowerSaverEnabled());
+            case POWERBOX_PINS -> {
+                boolean all;
+                int[] pins;
+                synchronized (changedPins) {
+                    all = allPinsChanged;
+                    allPinsChanged = false;
+                    pins = changedPins.stream().toArray();
+                    changedPins.clear();
                 }
-                case BACKLASH -> fokBacklashSpinner.setValue(board.focuser().getBacklash());
-                case REVERSE_DIR -> fokReverseDirBox.setSelected(board.focuser().isDirInverted());
-                case ENABLE_POWER_SAVE -> fokPowerSaverBox.setSelected(board.focuser().isPowerSaverEnabled());
-                case POWERBOX_PINS -> powerBoxTable.refresh();
-                case POWERBOX_AUTO_MODE -> {
-                    powerBoxAutoModeBox.removeItemListener(this);
-                    powerBoxAutoModeBox.setSelectedItem(board.powerBox().getAutoMode());
-                    powerBoxAutoModeBox.addItemListener(this);
+                if (all) {
+                    powerBoxTable.refresh();
+                } else {
+                    powerBoxTable.refreshPins(pins);
                 }
-                case POWERBOX_AMBIENT_DATA -> {
-                    PowerBox powerBox = board.powerBox();
-                    double temperature = powerBox.getTemperature();
-                    Second instant = new Second(new Date());
-                    if (temperature == PowerBox.ABSOLUTE_ZERO) {
-                        tempDataset.setValue(-20D);
-                    } else {
-                        tempDataset.setValue(temperature);
-                        tempSeries.addOrUpdate(instant, temperature);
-                    }
-                    double humidity = powerBox.getHumidity();
-                    if (humidity == PowerBox.INVALID_HUMIDITY) {
-                        humidityDataset.setValue(0D);
-                    } else {
-                        humidityDataset.setValue(humidity);
-                        humiditySeries.addOrUpdate(instant, humidity);
-                    }
-                    double dewPoint = powerBox.getDewPoint();
-                    if (dewPoint == PowerBox.ABSOLUTE_ZERO) {
-                        dewPointDataset.setValue(-20D);
-                    } else {
-                        dewPointDataset.setValue(dewPoint);
-                        dewPointSeries.addOrUpdate(instant, dewPoint);
-                    }
+            }
+            case POWERBOX_AUTO_MODE -> {
+                powerBoxAutoModeBox.removeItemListener(this);
+                powerBoxAutoModeBox.setSelectedItem(board.powerBox().getAutoMode());
+                powerBoxAutoModeBox.addItemListener(this);
+            }
+            case POWERBOX_AMBIENT_DATA -> {
+                PowerBox powerBox = board.powerBox();
+                double temperature = powerBox.getTemperature();
+                long now = System.currentTimeMillis();
+                if (temperature == PowerBox.ABSOLUTE_ZERO) {
+                    tempDataset.setValue(-20D);
+                } else {
+                    tempDataset.setValue(temperature);
+                    tempGraphDataset.add(0, now, temperature);
                 }
-                case POWERBOX_SUN_ELEV -> sunElevationField.setText(board.powerBox().getSunElev() + "°");
-                case FLAT_COVER_STATUS -> updateFlatPanelComponents(board.flat());
-                case FLAT_LIGHT_STATUS -> {
-                    lightOnRadio.removeActionListener(this);
-                    lightOffRadio.removeActionListener(this);
-                    boolean lightStatus = board.flat().getLightStatus();
-                    lightOnRadio.setSelected(lightStatus);
-                    lightOffRadio.setSelected(!lightStatus);
-                    lightOnRadio.addActionListener(this);
-                    lightOffRadio.addActionListener(this);
+                double humidity = powerBox.getHumidity();
+                if (humidity == PowerBox.INVALID_HUMIDITY) {
+                    humidityDataset.setValue(0D);
+                } else {
+                    humidityDataset.setValue(humidity);
+                    humGraphDataset.add(0, now, humidity);
                 }
-                case FLAT_BRIGHTNESS -> {
-                    brightnessSlider.removeChangeListener(this);
-                    brightnessSlider.setValue(board.flat().getBrightness());
-                    brightnessSlider.addChangeListener(this);
+                double dewPoint = powerBox.getDewPoint();
+                if (dewPoint == PowerBox.ABSOLUTE_ZERO) {
+                    dewPointDataset.setValue(-20D);
+                } else {
+                    dewPointDataset.setValue(dewPoint);
+                    tempGraphDataset.add(1, now, dewPoint);
                 }
             }
-        });
+            case POWERBOX_SUN_ELEV -> sunElevationField.setText(board.powerBox().getSunElev() + "°");
+            case FLAT_COVER_STATUS -> updateFlatPanelComponents(board.flat());
+            case FLAT_LIGHT_STATUS -> {
+                lightOnRadio.removeActionListener(this);
+                lightOffRadio.removeActionListener(this);
+                boolean lightStatus = board.flat().getLightStatus();
+                lightOnRadio.setSelected(lightStatus);
+                lightOffRadio.setSelected(!lightStatus);
+                lightOnRadio.addActionListener(this);
+                lightOffRadio.addActionListener(this);
+            }
+            case FLAT_BRIGHTNESS -> {
+                brightnessSlider.removeChangeListener(this);
+                brightnessSlider.setValue(board.flat().getBrightness());
+                brightnessSlider.addChangeListener(this);
+            }
+        }
     }
 
     private void updateFlatPanelComponents(FlatPanel flat) {
@@ -1185,6 +1448,7 @@ public class MainWindow extends JFrame implements
                             powerBoxAutoModeBox.addItemListener(this);
                         }
                         if (powerBox.hasAmbientSensors()) {
+                            createAmbientCharts();
                             tabPane.insertTab(i18n("sensors.tab"), AMBIENT_TAB, ambientTab, "", tabInsertIndex);
                             tabInsertIndex++;
                         }
@@ -1260,13 +1524,21 @@ public class MainWindow extends JFrame implements
                     err.setVisible(true);
                     break;
                 }
-                case TIMEOUT: {
+                case TIMEOUT:
+                case RECONNECTING: {
                     connStatusLabel.setText(connectionState.getLabel());
                     ok.setVisible(false);
                     timeout.setVisible(true);
                     err.setVisible(false);
                     break;
                 }
+                case RECONNECTED: {
+                    connStatusLabel.setText(String.format(connectionState.getLabel(), board.getBoardVersion()));
+                    ok.setVisible(true);
+                    timeout.setVisible(false);
+                    err.setVisible(false);
+                    break;
+                }
             }
         });
     }
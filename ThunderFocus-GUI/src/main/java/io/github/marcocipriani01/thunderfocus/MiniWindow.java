@@ -12,6 +12,7 @@ import java.awt.event.WindowEvent;
 import java.io.IOException;
 
 import static io.github.marcocipriani01.thunderfocus.Main.*;
+import static io.github.marcocipriani01.thunderfocus.MainWindow.APP_LOGO;
 
 public class MiniWindow extends JFrame implements KeyListener {
 
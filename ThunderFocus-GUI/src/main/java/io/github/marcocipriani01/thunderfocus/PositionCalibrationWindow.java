@@ -10,8 +10,8 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.IOException;
 
-import static io.github.marcocipriani01.thunderfocus.Main.APP_LOGO;
 import static io.github.marcocipriani01.thunderfocus.Main.i18n;
+import static io.github.marcocipriani01.thunderfocus.MainWindow.APP_LOGO;
 
 public class PositionCalibrationWindow extends JDialog implements ActionListener {
 
@@ -0,0 +1,255 @@
+package io.github.marcocipriani01.thunderfocus;
+
+import org.jfree.data.DomainOrder;
+import org.jfree.data.xy.AbstractXYDataset;
+
+/**
+ * Time series dataset for long sessions. Every series is stored in fixed-capacity {@code long[]}/{@code double[]}
+ * ring buffers that only keep the samples of the retention window (at most one per second, like
+ * {@link org.jfree.data.time.TimeSeries#addOrUpdate}). When a series has more samples than the chart has pixels,
+ * it is exposed decimated: for every pixel-wide bucket only the minimum and the maximum are returned, so peaks are
+ * preserved while memory and repaint cost stay flat.
+ * Not thread-safe: use it from the Event Dispatch Thread only.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+public class RingBufferXYDataset extends AbstractXYDataset {
+
+    private static final int MAX_CAPACITY = 7 * 24 * 3600 + 1;
+    private final Series[] series;
+    private long retentionMs;
+    private int buckets = 1000;
+
+    /**
+     * Class constructor.
+     *
+     * @param retentionMs how long samples are kept, in milliseconds.
+     * @param keys        the names of the series.
+     */
+    public RingBufferXYDataset(long retentionMs, String... keys) {
+        if (retentionMs <= 0L) throw new IllegalArgumentException("Invalid retention!");
+        this.retentionMs = retentionMs;
+        int capacity = capacityFor(retentionMs);
+        this.series = new Series[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            series[i] = new Series(keys[i], capacity);
+        }
+    }
+
+    private static int capacityFor(long retentionMs) {
+        return (int) Math.min((retentionMs / 1000L) + 1L, MAX_CAPACITY);
+    }
+
+    /**
+     * Adds a sample, or replaces the last one if it falls in the same second.
+     *
+     * @param s     the index of the series.
+     * @param time  the time of the sample, in milliseconds.
+     * @param value the value.
+     */
+    public void add(int s, long time, double value) {
+        series[s].add(time, value, retentionMs);
+        fireDatasetChanged();
+    }
+
+    /**
+     * Removes all the samples.
+     */
+    public void clear() {
+        for (Series s : series) {
+            s.head = s.size = 0;
+            s.viewDirty = true;
+        }
+        fireDatasetChanged();
+    }
+
+    /**
+     * Changes the retention window. Samples that no longer fit are discarded.
+     *
+     * @param retentionMs the new retention window, in milliseconds.
+     */
+    public void setRetention(long retentionMs) {
+        if (retentionMs <= 0L) throw new IllegalArgumentException("Invalid retention!");
+        this.retentionMs = retentionMs;
+        int capacity = capacityFor(retentionMs);
+        for (Series s : series) {
+            s.resize(capacity);
+            if (s.size > 0) s.evictOlderThan(s.timeAt(s.size - 1) - retentionMs);
+        }
+        fireDatasetChanged();
+    }
+
+    /**
+     * Sets the number of buckets used for decimation, usually the width of the chart in pixels.
+     *
+     * @param buckets the number of buckets.
+     */
+    public void setBuckets(int buckets) {
+        buckets = Math.max(buckets, 16);
+        if (buckets == this.buckets) return;
+        this.buckets = buckets;
+        for (Series s : series) {
+            s.viewDirty = true;
+        }
+        fireDatasetChanged();
+    }
+
+    @Override
+    public int getSeriesCount() {
+        return series.length;
+    }
+
+    @Override
+    public Comparable<?> getSeriesKey(int s) {
+        return series[s].key;
+    }
+
+    @Override
+    public DomainOrder getDomainOrder() {
+        return DomainOrder.ASCENDING;
+    }
+
+    @Override
+    public int getItemCount(int s) {
+        return series[s].view(buckets);
+    }
+
+    @Override
+    public double getXValue(int s, int item) {
+        Series ser = series[s];
+        ser.view(buckets);
+        return ser.decimated ? ser.viewTime[item] : ser.timeAt(item);
+    }
+
+    @Override
+    public double getYValue(int s, int item) {
+        Series ser = series[s];
+        ser.view(buckets);
+        return ser.decimated ? ser.viewValue[item] : ser.valueAt(item);
+    }
+
+    @Override
+    public Number getX(int s, int item) {
+        return getXValue(s, item);
+    }
+
+    @Override
+    public Number getY(int s, int item) {
+        return getYValue(s, item);
+    }
+
+    private static final class Series {
+
+        private final String key;
+        private long[] time;
+        private double[] value;
+        private int head = 0;
+        private int size = 0;
+        private long[] viewTime = new long[0];
+        private double[] viewValue = new double[0];
+        private int viewCount = 0;
+        private boolean decimated = false;
+        private boolean viewDirty = true;
+
+        private Series(String key, int capacity) {
+            this.key = key;
+            this.time = new long[capacity];
+            this.value = new double[capacity];
+        }
+
+        private long timeAt(int i) {
+            return time[(head + i) % time.length];
+        }
+
+        private double valueAt(int i) {
+            return value[(head + i) % time.length];
+        }
+
+        private void add(long t, double v, long retentionMs) {
+            if ((size > 0) && ((t / 1000L) == (timeAt(size - 1) / 1000L))) {
+                value[(head + size - 1) % time.length] = v;
+            } else {
+                if (size == time.length) {
+                    head = (head + 1) % time.length;
+                    size--;
+                }
+                int i = (head + size) % time.length;
+                time[i] = t;
+                value[i] = v;
+                size++;
+            }
+            evictOlderThan(t - retentionMs);
+            viewDirty = true;
+        }
+
+        private void evictOlderThan(long limit) {
+            while ((size > 0) && (time[head] < limit)) {
+                head = (head + 1) % time.length;
+                size--;
+            }
+        }
+
+        private void resize(int capacity) {
+            if (capacity == time.length) return;
+            int keep = Math.min(size, capacity);
+            long[] newTime = new long[capacity];
+            double[] newValue = new double[capacity];
+            for (int i = 0; i < keep; i++) {
+                newTime[i] = timeAt(size - keep + i);
+                newValue[i] = valueAt(size - keep + i);
+            }
+            time = newTime;
+            value = newValue;
+            head = 0;
+            size = keep;
+            viewDirty = true;
+        }
+
+        /**
+         * Rebuilds the decimated view if needed.
+         *
+         * @return the number of items exposed to the chart.
+         */
+        private int view(int buckets) {
+            if (!viewDirty) return decimated ? viewCount : size;
+            viewDirty = false;
+            decimated = size > (2 * buckets);
+            if (!decimated) return size;
+            if (viewTime.length < (2 * buckets)) {
+                viewTime = new long[2 * buckets];
+                viewValue = new double[2 * buckets];
+            }
+            long t0 = timeAt(0);
+            double span = (timeAt(size - 1) - t0) + 1.0;
+            int out = 0, i = 0;
+            for (int b = 0; (b < buckets) && (i < size); b++) {
+                long end = (b == (buckets - 1)) ? Long.MAX_VALUE : (t0 + (long) ((span * (b + 1)) / buckets));
+                int minI = -1, maxI = -1;
+                double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+                while ((i < size) && (timeAt(i) < end)) {
+                    double v = valueAt(i);
+                    if (v < min) {
+                        min = v;
+                        minI = i;
+                    }
+                    if (v > max) {
+                        max = v;
+                        maxI = i;
+                    }
+                    i++;
+                }
+                if (minI < 0) continue;
+                int first = Math.min(minI, maxI), second = Math.max(minI, maxI);
+                viewTime[out] = timeAt(first);
+                viewValue[out++] = valueAt(first);
+                if (second != first) {
+                    viewTime[out] = timeAt(second);
+                    viewValue[out++] = valueAt(second);
+                }
+            }
+            viewCount = out;
+            return out;
+        }
+    }
+}
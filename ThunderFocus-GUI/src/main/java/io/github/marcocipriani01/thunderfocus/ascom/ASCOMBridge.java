@@ -12,14 +12,24 @@ import static io.github.marcocipriani01.thunderfocus.Main.settings;
 public final class ASCOMBridge extends SimpleServer {
 
     private final Runnable onClientListChange;
+    private final SwitchResponseCache switchCache = new SwitchResponseCache();
 
     public ASCOMBridge(int port, Runnable onClientListChang) {
-        super(port);
+        this(port, ServerMode.THREADS, onClientListChang);
+    }
+
+    public ASCOMBridge(int port, ServerMode mode, Runnable onClientListChang) {
+        super(port, mode);
         this.onClientListChange = onClientListChang;
     }
 
+    /**
+     * Handles a command from an ASCOM driver. Queries are answered from the latest {@link BoardState} snapshot
+     * without locking, so clients polling at the same time never wait for each other. Only the commands that
+     * change something go to the board.
+     */
     @Override
-    protected synchronized void onMessage(Socket from, String msg) {
+    protected void onMessage(Socket from, String msg) {
         try {
             String cmd;
             String[] params = {};
@@ -29,16 +39,17 @@ public final class ASCOMBridge extends SimpleServer {
             } else {
                 cmd = msg;
             }
+            final BoardState state = board.state();
             if (cmd.equals("Connected")) {
-                println(from, String.valueOf(board.isReady()));
+                println(from, String.valueOf(state.ready()));
                 return;
             }
-            if (!board.isReady()) {
+            if (!state.ready()) {
                 println(from, "Disconnected");
                 return;
             }
             boolean exit = true;
-            final Focuser focuser = board.focuser();
+            final BoardState.FocuserSnapshot focuser = state.focuser();
             if (focuser == null) {
                 if (cmd.equals("HasFocuser")) println(from, "false");
                 else exit = false;
@@ -46,23 +57,23 @@ public final class ASCOMBridge extends SimpleServer {
                 switch (cmd) {
                     case "HasFocuser" -> println(from, "true");
 
-                    case "Position" -> println(from, String.valueOf(focuser.getPos()));
+                    case "Position" -> println(from, String.valueOf(focuser.pos()));
 
-                    case "IsMoving" -> println(from,
-                            String.valueOf(focuser.getState() == Focuser.FocuserState.MOVING));
+                    case "IsMoving" -> println(from, String.valueOf(focuser.isMoving()));
 
                     case "Halt" -> board.run(Board.Commands.FOCUSER_STOP, null);
 
                     case "Move" -> board.run(Board.Commands.FOCUSER_ABS_MOVE, null, Integer.parseInt(params[0]));
 
-                    case "MaxStep" -> println(String.valueOf(settings.getFocuserMaxTravel()));
+                    case "MaxStep" -> println(from, String.valueOf(settings.getFocuserMaxTravel()));
 
                     default -> exit = false;
                 }
             }
             if (exit) return;
             exit = true;
-            PowerBox powerBox = board.powerBox();
+            final BoardState.PowerBoxSnapshot powerBox = state.powerBox();
+            final BoardState.PinsSnapshot pins = state.pins();
             if (powerBox == null) {
                 if (cmd.equals("HasPowerBox") || cmd.equals("HasAmbientSensors")) println(from, "false");
                 else exit = false;
@@ -70,110 +81,58 @@ public final class ASCOMBridge extends SimpleServer {
                 switch (cmd) {
                     case "HasPowerBox" -> println(from, "true");
 
-                    case "HasAmbientSensors" -> println(from, String.valueOf(powerBox.hasAmbientSensors()));
+                    case "HasAmbientSensors" -> println(from, String.valueOf(powerBox.ambientSensors()));
 
-                    case "MaxSwitch" -> println(from, String.valueOf(powerBox.maxPinNumber() + 1));
+                    case "MaxSwitch" -> write(from, switchCache.get(pins).maxSwitch);
 
-                    case "GetSwitchNames" -> {
-                        int max = powerBox.maxPinNumber();
-                        StringBuilder sb = new StringBuilder();
-                        for (int i = 0; i <= max; i++) {
-                            ArduinoPin pin = powerBox.get(i);
-                            sb.append((pin == null) ? "Unavailable" : pin.getName());
-                            if (i < max) sb.append(";");
-                        }
-                        println(from, sb.toString());
-                    }
+                    case "GetSwitchNames" -> write(from, switchCache.get(pins).names);
 
-                    case "GetSwitchDescriptions" -> {
-                        int max = powerBox.maxPinNumber();
-                        StringBuilder sb = new StringBuilder();
-                        for (int i = 0; i <= max; i++) {
-                            ArduinoPin pin = powerBox.get(i);
-                            if (pin == null) {
-                                sb.append("This switch doesn't exist on the powerbox.");
-                            } else {
-                                sb.append(pin.getName());
-                                if (pin.isPWMEnabled()) sb.append(" (PWM)");
-                                if (pin.isAutoModeEn() || pin.isOnWhenAppOpen()) sb.append(", automatic mode enabled.");
-                            }
-                            if (i < max) sb.append(";");
-                        }
-                        println(from, sb.toString());
-                    }
+                    case "GetSwitchDescriptions" -> write(from, switchCache.get(pins).descriptions);
 
-                    case "CanWrite" -> {
-                        int max = powerBox.maxPinNumber();
-                        StringBuilder sb = new StringBuilder();
-                        for (int i = 0; i <= max; i++) {
-                            ArduinoPin pin = powerBox.get(i);
-                            sb.append((pin != null) && pin.canWrite());
-                            if (i < max) sb.append(";");
-                        }
-                        println(from, sb.toString());
-                    }
+                    case "CanWrite" -> write(from, switchCache.get(pins).canWrite);
 
-                    case "GetSwitches" -> {
-                        int max = powerBox.maxPinNumber();
-                        StringBuilder sb = new StringBuilder();
-                        for (int i = 0; i <= max; i++) {
-                            ArduinoPin pin = powerBox.get(i);
-                            sb.append((pin == null) ? 0 : (pin.isPWMEnabled() ? pin.getValuePWM() :
-                                    (pin.getValueBoolean() ? 1 : 0)));
-                            if (i < max) sb.append(";");
-                        }
-                        println(from, sb.toString());
-                    }
+                    case "GetSwitches" -> write(from, switchCache.get(pins).switches);
 
                     case "GetSwitch" -> {
-                        ArduinoPin pin = powerBox.get(Integer.parseInt(params[0]));
+                        BoardState.PinSnapshot pin = pins.get(Integer.parseInt(params[0]));
                         if (pin == null) {
                             println(from, "0");
                         } else {
-                            int value = pin.getValuePWM();
-                            println(from, pin.isPWMEnabled() ? String.valueOf(value) : ((value > 100) ? "1" : "0"));
+                            int value = pin.value();
+                            println(from, pin.pwmEnabled() ? String.valueOf(value) : ((value > 100) ? "1" : "0"));
                         }
                     }
 
-                    case "MaxSwitchValues" -> {
-                        int max = powerBox.maxPinNumber();
-                        StringBuilder sb = new StringBuilder();
-                        for (int i = 0; i <= max; i++) {
-                            ArduinoPin pin = powerBox.get(i);
-                            sb.append((pin == null) ? 1 : (pin.isPWMEnabled() ? 255 : 1));
-                            if (i < max) sb.append(";");
-                        }
-                        println(from, sb.toString());
-                    }
+                    case "MaxSwitchValues" -> write(from, switchCache.get(pins).maxValues);
 
                     case "SetSwitch" -> {
                         int pinNumber = Integer.parseInt(params[0]);
-                        ArduinoPin pin = powerBox.get(pinNumber);
+                        BoardState.PinSnapshot pin = pins.get(pinNumber);
                         if (pin == null) {
                             println(from, "Unavailable");
                         } else {
-                            if (pin.isAutoModeEn() || pin.isOnWhenAppOpen()) {
+                            if (pin.autoModeEn() || pin.onWhenAppOpen()) {
                                 println(from, "ReadOnly");
                             } else {
                                 int val = Integer.parseInt(params[1]);
-                                if (pin.isDigitalPin() && (val == 1)) val = 255;
+                                if ((!pin.pwmEnabled()) && (val == 1)) val = 255;
                                 Main.board.run(Board.Commands.POWER_BOX_SET_PIN, null, pinNumber, val);
                                 println(from, "OK");
                             }
                         }
                     }
 
-                    case "GetTemperature" -> println(from, String.valueOf(powerBox.getTemperature()));
+                    case "GetTemperature" -> println(from, String.valueOf(powerBox.temperature()));
 
-                    case "GetHumidity" -> println(from, String.valueOf(powerBox.getHumidity()));
+                    case "GetHumidity" -> println(from, String.valueOf(powerBox.humidity()));
 
-                    case "DewPoint" -> println(from, String.valueOf(powerBox.getDewPoint()));
+                    case "DewPoint" -> println(from, String.valueOf(powerBox.dewPoint()));
 
                     default -> exit = false;
                 }
             }
             if (exit) return;
-            final FlatPanel flat = board.flat();
+            final BoardState.FlatSnapshot flat = state.flat();
             if (flat == null) {
                 if (cmd.equals("HasFlat")) println(from, "false");
             } else {
@@ -185,7 +144,7 @@ public final class ASCOMBridge extends SimpleServer {
                     case "CoverState" -> {
                         if (!flat.hasServo())
                             println(from, "NotPresent");
-                        switch (flat.getCoverStatus()) {
+                        switch (flat.coverStatus()) {
                             case CLOSED -> println(from, "Closed");
                             case OPEN -> println(from, "Open");
                             case NEITHER_OPEN_NOR_CLOSED -> println(from, "Moving");
@@ -220,9 +179,9 @@ public final class ASCOMBridge extends SimpleServer {
                         }
                     }
 
-                    case "CalibratorState" -> println(from, flat.getLightStatus() ? "Ready" : "Off");
+                    case "CalibratorState" -> println(from, flat.lightStatus() ? "Ready" : "Off");
 
-                    case "Brightness" -> println(from, String.valueOf(flat.getBrightness()));
+                    case "Brightness" -> println(from, String.valueOf(flat.brightness()));
 
                     case "CalibratorOn" -> {
                         board.run(Board.Commands.FLAT_SET_BRIGHTNESS, null, Integer.parseInt(params[0]));
@@ -242,7 +201,7 @@ public final class ASCOMBridge extends SimpleServer {
 
     @Override
     protected boolean acceptClient(InetAddress address) {
-        return address.isLinkLocalAddress();
+        return address.isLinkLocalAddress() || address.isLoopbackAddress();
     }
 
     @Override
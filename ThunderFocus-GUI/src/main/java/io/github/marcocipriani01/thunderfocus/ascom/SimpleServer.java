@@ -1,43 +1,82 @@
 package io.github.marcocipriani01.thunderfocus.ascom;
 
+import io.github.marcocipriani01.thunderfocus.serial.LineFramer;
+
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.io.OutputStream;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.HashMap;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Server Socket for a local LAN server with event handling.
+ * Clients are either served by a single selector thread with non-blocking channels, or by one (platform or virtual)
+ * thread each.
  *
  * @author marcocipriani01
- * @version 1.1
+ * @version 1.2
  */
 public abstract class SimpleServer {
 
+    private static final int READ_BUFFER_SIZE = 4096;
+    /**
+     * Maximum number of bytes waiting to be sent to a client. A client that doesn't read its replies fast enough is
+     * disconnected instead of growing its queue forever.
+     */
+    private static final int MAX_QUEUED_BYTES = 256 * 1024;
+    private static final ByteBuffer[] NO_BUFFERS = new ByteBuffer[0];
     /**
      * List of client sockets.
      */
-    protected final HashMap<Socket, PrintWriter> clients = new HashMap<>();
+    protected final ConcurrentHashMap<Socket, Client> clients = new ConcurrentHashMap<>();
     /**
      * Port.
      */
     protected final int port;
+    /**
+     * How clients are served.
+     */
+    protected final ServerMode mode;
+    private final ConcurrentLinkedQueue<ChannelClient> pendingWrites = new ConcurrentLinkedQueue<>();
     protected volatile ServerSocket serverSocket;
     /**
      * Connection state.
      */
     protected volatile boolean connected = false;
+    private volatile Selector selector;
+    private volatile Thread selectorThread;
 
     /**
-     * Class constructor. Initializes the client without attempting a connection.
+     * Class constructor. Initializes the client without attempting a connection, with {@link ServerMode#THREADS}.
      *
      * @param port the port of the new server.
      */
     public SimpleServer(int port) {
+        this(port, ServerMode.THREADS);
+    }
+
+    /**
+     * Class constructor. Initializes the client without attempting a connection.
+     *
+     * @param port the port of the new server.
+     * @param mode how clients will be served.
+     */
+    public SimpleServer(int port, ServerMode mode) {
         this.port = port;
+        this.mode = mode;
     }
 
     /**
@@ -45,10 +84,18 @@ public abstract class SimpleServer {
      */
     public synchronized void start() throws IOException {
         if (connected) throw new IllegalStateException("Already connected.");
+        switch (mode) {
+            case SELECTOR -> startSelector();
+            case THREADS -> startThreads(Thread.ofPlatform());
+            case VIRTUAL_THREADS -> startThreads(Thread.ofVirtual());
+        }
+    }
+
+    private void startThreads(Thread.Builder threads) throws IOException {
         serverSocket = new ServerSocket(port);
         serverSocket.setSoTimeout(0);
         connected = true;
-        new Thread(() -> {
+        threads.name("Client listener thread").start(() -> {
             while (connected) {
                 try {
                     Socket socket = serverSocket.accept();
@@ -58,9 +105,8 @@ public abstract class SimpleServer {
                         socket.close();
                         continue;
                     }
-                    PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
-                    clients.put(socket, out);
-                    new Thread(() -> {
+                    clients.put(socket, new StreamClient(socket));
+                    threads.name("Reader thread for " + socket).start(() -> {
                         try {
                             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
                             String inputLine;
@@ -68,27 +114,109 @@ public abstract class SimpleServer {
                                 onMessage(socket, inputLine);
                             }
                         } catch (Exception e) {
-                            e.printStackTrace();
+                            if (connected) e.printStackTrace();
                         } finally {
                             closeClient(socket);
                         }
-                    }, "Reader thread for " + socket).start();
+                    });
                     onNewClient(socket);
                 } catch (Exception e) {
-                    e.printStackTrace();
+                    if (connected) e.printStackTrace();
                 }
             }
-        }, "Client listener thread").start();
+        });
     }
 
-    private synchronized void closeClient(Socket socket) {
+    private void startSelector() throws IOException {
+        Selector sel = Selector.open();
+        ServerSocketChannel server = ServerSocketChannel.open();
         try {
-            socket.close();
+            server.bind(new InetSocketAddress(port));
+            server.configureBlocking(false);
+            server.register(sel, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            server.close();
+            sel.close();
+            throw e;
+        }
+        serverSocket = server.socket();
+        selector = sel;
+        connected = true;
+        Thread t = new Thread(() -> selectorLoop(sel, server), "Client selector thread");
+        selectorThread = t;
+        t.start();
+    }
+
+    private void selectorLoop(Selector sel, ServerSocketChannel server) {
+        final byte[] scratch = new byte[READ_BUFFER_SIZE];
+        try {
+            while (connected) {
+                sel.select();
+                Iterator<SelectionKey> it = sel.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    try {
+                        if (!key.isValid()) continue;
+                        if (key.isAcceptable()) {
+                            accept(sel, server);
+                        } else {
+                            ChannelClient client = (ChannelClient) key.attachment();
+                            if (key.isReadable()) client.read(scratch);
+                            if (key.isValid() && key.isWritable()) client.flush();
+                        }
+                    } catch (CancelledKeyException ignored) {
+                    }
+                }
+                // Replies queued while handling the reads above go out with one gathered write per client
+                ChannelClient client;
+                while ((client = pendingWrites.poll()) != null) {
+                    client.flush();
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            connected = false;
+            for (Socket s : clients.keySet()) {
+                closeClient(s);
+            }
+            pendingWrites.clear();
+            try {
+                server.close();
+                sel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void accept(Selector sel, ServerSocketChannel server) throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) return;
+        Socket socket = channel.socket();
+        if (!acceptClient(socket.getInetAddress())) {
+            channel.close();
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        ChannelClient client = new ChannelClient(channel);
+        client.key = channel.register(sel, SelectionKey.OP_READ, client);
+        clients.put(socket, client);
+        onNewClient(socket);
+    }
+
+    private void closeClient(Socket socket) {
+        Client client = clients.remove(socket);
+        try {
+            if (client != null) client.close();
+            else socket.close();
         } catch (Exception ex) {
             ex.printStackTrace();
         }
-        clients.remove(socket);
-        onClientLost(socket);
+        if (client != null) onClientLost(socket);
     }
 
     /**
@@ -96,12 +224,28 @@ public abstract class SimpleServer {
      */
     public synchronized void stop() throws IOException {
         if (!connected) throw new IllegalStateException("Not connected!");
-        for (Socket s : clients.keySet()) {
-            s.close();
-        }
-        serverSocket.close();
-        clients.clear();
         connected = false;
+        switch (mode) {
+            case SELECTOR -> {
+                selector.wakeup();
+                Thread t = selectorThread;
+                if ((t != null) && (t != Thread.currentThread())) {
+                    try {
+                        t.join(1000);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                selectorThread = null;
+                selector = null;
+            }
+            case THREADS, VIRTUAL_THREADS -> {
+                for (Socket s : clients.keySet()) {
+                    closeClient(s);
+                }
+                serverSocket.close();
+            }
+        }
     }
 
     /**
@@ -109,14 +253,11 @@ public abstract class SimpleServer {
      *
      * @param msg the message to send.
      */
-    public synchronized void println(final String msg) {
+    public void println(final String msg) {
         if (!connected) throw new IllegalStateException("Not connected!");
+        byte[] data = (msg + "\n").getBytes(StandardCharsets.UTF_8);
         for (Socket s : clients.keySet()) {
-            try {
-                clients.get(s).println(msg);
-            } catch (Exception ex) {
-                closeClient(s);
-            }
+            write(s, data);
         }
     }
 
@@ -125,11 +266,24 @@ public abstract class SimpleServer {
      *
      * @param msg the message to send.
      */
-    public synchronized void println(final Socket client, final String msg) {
+    public void println(final Socket client, final String msg) {
+        write(client, (msg + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Sends some bytes to a client. The array must not be modified afterwards.
+     *
+     * @param client the client.
+     * @param data   the bytes to send.
+     */
+    public void write(final Socket client, final byte[] data) {
         if (!connected) throw new IllegalStateException("Not connected!");
+        Client c = clients.get(client);
+        if (c == null) return;
         try {
-            clients.get(client).println(msg);
+            c.send(data);
         } catch (Exception ex) {
+            System.err.println(ex.getMessage());
             closeClient(client);
         }
     }
@@ -164,4 +318,153 @@ public abstract class SimpleServer {
     protected abstract void onNewClient(Socket client);
 
     protected abstract void onClientLost(Socket client);
-}
\ No newline at end of file
+
+    /**
+     * How the server handles its clients.
+     */
+    public enum ServerMode {
+        /**
+         * A single thread multiplexes all the clients using non-blocking channels. {@link #onMessage(Socket, String)}
+         * runs on that thread too, so a handler that blocks stalls every client.
+         */
+        SELECTOR,
+        /**
+         * One thread for accepting connections and another one for every client, with blocking I/O.
+         */
+        THREADS,
+        /**
+         * Same as {@link #THREADS}, but using virtual threads: idle clients only cost a few kilobytes of heap.
+         */
+        VIRTUAL_THREADS
+    }
+
+    /**
+     * A connected client.
+     */
+    protected abstract static class Client {
+
+        protected abstract void send(byte[] data) throws IOException;
+
+        protected abstract void close() throws IOException;
+    }
+
+    private static final class StreamClient extends Client {
+
+        private final Socket socket;
+        private final OutputStream out;
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private StreamClient(Socket socket) throws IOException {
+            this.socket = socket;
+            this.out = socket.getOutputStream();
+        }
+
+        @Override
+        protected void send(byte[] data) throws IOException {
+            // A lock instead of synchronized, so that virtual threads blocked on the socket don't pin their carrier
+            lock.lock();
+            try {
+                out.write(data);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        protected void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    private final class ChannelClient extends Client {
+
+        private final SocketChannel channel;
+        private final Socket socket;
+        private final ByteBuffer in = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        private final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+        private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+        private final LineFramer framer;
+        private SelectionKey key;
+        /**
+         * Bytes in {@link #out}, guarded by it.
+         */
+        private int queued = 0;
+
+        private ChannelClient(SocketChannel channel) {
+            this.channel = channel;
+            this.socket = channel.socket();
+            // Same lines as BufferedReader.readLine() in the thread modes, up to the maximum length
+            this.framer = new LineFramer(LineFramer.DEFAULT_CAPACITY, false, line -> onMessage(socket, line.toString()));
+        }
+
+        /**
+         * Reads all the available bytes and dispatches the complete lines. Selector thread only.
+         */
+        private void read(byte[] scratch) {
+            try {
+                int n;
+                while ((n = channel.read(in)) > 0) {
+                    in.flip();
+                    in.get(scratch, 0, n);
+                    in.clear();
+                    framer.feed(scratch, 0, n);
+                }
+                if (n < 0) {
+                    framer.finish();
+                    closeClient(socket);
+                }
+            } catch (IOException e) {
+                closeClient(socket);
+            }
+        }
+
+        @Override
+        protected void send(byte[] data) throws IOException {
+            synchronized (out) {
+                if ((queued + data.length) > MAX_QUEUED_BYTES)
+                    throw new IOException("Output queue full, client too slow: " + socket);
+                out.addLast(ByteBuffer.wrap(data));
+                queued += data.length;
+            }
+            if (flushScheduled.compareAndSet(false, true)) {
+                pendingWrites.add(this);
+                if (Thread.currentThread() != selectorThread) {
+                    Selector sel = selector;
+                    if (sel != null) sel.wakeup();
+                }
+            }
+        }
+
+        /**
+         * Writes as much of the queue as the socket accepts. Selector thread only.
+         */
+        private void flush() {
+            flushScheduled.set(false);
+            if (!channel.isOpen()) return;
+            ByteBuffer[] buffers;
+            synchronized (out) {
+                if (out.isEmpty()) return;
+                buffers = out.toArray(NO_BUFFERS);
+            }
+            try {
+                channel.write(buffers);
+                boolean remaining;
+                synchronized (out) {
+                    while ((!out.isEmpty()) && (!out.peekFirst().hasRemaining())) {
+                        queued -= out.removeFirst().capacity();
+                    }
+                    remaining = !out.isEmpty();
+                }
+                key.interestOps(remaining ? (SelectionKey.OP_READ | SelectionKey.OP_WRITE) : SelectionKey.OP_READ);
+            } catch (IOException | CancelledKeyException e) {
+                closeClient(socket);
+            }
+        }
+
+        @Override
+        protected void close() throws IOException {
+            if (key != null) key.cancel();
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package io.github.marcocipriani01.thunderfocus.ascom;
+
+import io.github.marcocipriani01.thunderfocus.board.BoardState;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Pre-encoded replies to the bulk queries of the ASCOM Switch driver, ready to be written to the sockets.
+ * The replies are rebuilt only when the board publishes a new {@link BoardState.PinsSnapshot}, which happens
+ * on {@link io.github.marcocipriani01.thunderfocus.board.Board.Parameters#POWERBOX_PINS} events and on connection.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+final class SwitchResponseCache {
+
+    private volatile Entry entry = null;
+
+    /**
+     * @param pins the current pins.
+     * @return the replies for the given pins, encoded as lines.
+     */
+    Entry get(BoardState.PinsSnapshot pins) {
+        Entry e = entry;
+        if ((e == null) || (e.source != pins)) {
+            e = new Entry(pins);
+            entry = e;
+        }
+        return e;
+    }
+
+    static final class Entry {
+
+        private final BoardState.PinsSnapshot source;
+        final byte[] maxSwitch;
+        final byte[] names;
+        final byte[] descriptions;
+        final byte[] canWrite;
+        final byte[] switches;
+        final byte[] maxValues;
+
+        private Entry(BoardState.PinsSnapshot pins) {
+            this.source = pins;
+            int max = pins.maxPinNumber();
+            maxSwitch = line(new StringBuilder().append(max + 1));
+            StringBuilder names = new StringBuilder(), descriptions = new StringBuilder(),
+                    canWrite = new StringBuilder(), switches = new StringBuilder(), maxValues = new StringBuilder();
+            for (int i = 0; i <= max; i++) {
+                BoardState.PinSnapshot pin = pins.get(i);
+                if (pin == null) {
+                    names.append("Unavailable");
+                    descriptions.append("This switch doesn't exist on the powerbox.");
+                    canWrite.append(false);
+                    switches.append(0);
+                    maxValues.append(1);
+                } else {
+                    names.append(pin.name());
+                    descriptions.append(pin.name());
+                    if (pin.pwmEnabled()) descriptions.append(" (PWM)");
+                    if (pin.autoModeEn() || pin.onWhenAppOpen()) descriptions.append(", automatic mode enabled.");
+                    canWrite.append(pin.canWrite());
+                    switches.append(pin.pwmEnabled() ? pin.value() : (pin.getValueBoolean() ? 1 : 0));
+                    maxValues.append(pin.pwmEnabled() ? 255 : 1);
+                }
+                if (i < max) {
+                    names.append(';');
+                    descriptions.append(';');
+                    canWrite.append(';');
+                    switches.append(';');
+                    maxValues.append(';');
+                }
+            }
+            this.names = line(names);
+            this.descriptions = line(descriptions);
+            this.canWrite = line(canWrite);
+            this.switches = line(switches);
+            this.maxValues = line(maxValues);
+        }
+
+        private static byte[] line(StringBuilder sb) {
+            return sb.append('\n').toString().getBytes(StandardCharsets.UTF_8);
+        }
+    }
+}
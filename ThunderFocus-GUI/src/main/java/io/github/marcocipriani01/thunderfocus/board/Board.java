@@ -2,32 +2,66 @@ package io.github.marcocipriani01.thunderfocus.board;
 
 import io.github.marcocipriani01.thunderfocus.Main;
 import io.github.marcocipriani01.thunderfocus.serial.SerialMessageListener;
-import io.github.marcocipriani01.thunderfocus.serial.SerialPortImpl;
+import io.github.marcocipriani01.thunderfocus.serial.SerialWriter;
+import io.github.marcocipriani01.thunderfocus.serial.Transport;
 import jssc.SerialPortException;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static io.github.marcocipriani01.thunderfocus.Main.*;
 
 public final class Board implements SerialMessageListener {
 
-    private final ArrayList<Listener> listeners = new ArrayList<>();
-    private final SerialPortImpl serialPort = new SerialPortImpl();
+    private static final long CONFIG_REQUEST_DELAY_MS = 500L;
+    private static final long CONFIG_REQUEST_MAX_DELAY_MS = 2000L;
+    private static final long CONFIG_TIMEOUT_MS = 8000L;
+    private static final long RECONNECT_DELAY_MS = 100L;
+    private static final long RECONNECT_MAX_DELAY_MS = 5000L;
+    private final ListenerRegistry listeners = new ListenerRegistry();
+    private final FrameHandler[] handlers = new FrameHandler[128];
+    private final FrameReader reader = new FrameReader();
+    private final AtomicReference<BoardState> state = new AtomicReference<>(BoardState.DISCONNECTED);
+    private final LinkMetrics metrics = new LinkMetrics(this::getWriteQueueDepth);
+    private final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread t = new Thread(r, "Board scheduler");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile Transport transport = null;
+    private volatile SerialWriter writer = null;
     private volatile String version = null;
     private volatile PowerBox powerBox = null;
     private volatile Focuser focuser = null;
     private volatile FlatPanel flat = null;
-    private volatile int timerCount = 0;
+    private ScheduledFuture<?> configRequest = null;
+    private ScheduledFuture<?> reconnectTask = null;
+    private volatile int connectionId = 0;
+    private volatile String address = null;
+    private long reconnectDelay = RECONNECT_DELAY_MS;
     private volatile Listener exclusiveCaller = null;
     private volatile boolean ready = false;
+    /**
+     * {@code true} once the board has sent its config: from then on, a lost link is reopened automatically.
+     */
+    private volatile boolean supervised = false;
+    private volatile boolean reconnecting = false;
+    /**
+     * Scratch space of the pins handler, which only runs on the reader thread. Sized when the config is parsed.
+     */
+    private int[] pinNumbers = new int[0];
+    private int[] pinValues = new int[0];
 
     public Board() {
-        serialPort.addListener(this);
+        scheduler.setRemoveOnCancelPolicy(true);
+        registerHandlers();
     }
 
     public String getBoardVersion() {
@@ -36,20 +70,178 @@ public final class Board implements SerialMessageListener {
     }
 
     public boolean isConnected() {
-        return serialPort.isConnected();
+        Transport t = transport;
+        return (t != null) && t.isConnected();
     }
 
     public boolean isReady() {
-        return serialPort.isConnected() && ready;
+        return isConnected() && ready;
     }
 
-    public synchronized void connect(String port) throws SerialPortException {
+    /**
+     * @return {@code true} if the link was lost and is being reopened. The last known state of the board is kept
+     * in the meantime, but commands are ignored.
+     */
+    public boolean isReconnecting() {
+        return reconnecting;
+    }
+
+    /**
+     * @return the address of the board, while connected or reconnecting, or {@code null}.
+     */
+    public String getAddress() {
+        return address;
+    }
+
+    /**
+     * Connects to a board. If the link is lost afterwards, it is reopened automatically until
+     * {@link #disconnect()} is called.
+     *
+     * @param address a serial port, or any other address supported by {@link Transport#forAddress(String)}.
+     */
+    public synchronized void connect(String address) throws IOException {
+        if (reconnecting) disconnect(false);
         if (isConnected())
             throw new IllegalStateException("Already connected");
         updConnSate(ConnectionState.TIMEOUT);
-        serialPort.connect(port);
-        timerCount = 1;
-        new Timer("SendSettingsRequestTask #" + timerCount).schedule(new PingRetryTimer(), 500);
+        openLink(address, CONFIG_REQUEST_DELAY_MS);
+        this.address = address;
+    }
+
+    private void openLink(String address, long configDelay) throws IOException {
+        metrics.onConnect();
+        Transport t = Transport.forAddress(address);
+        t.addListener(this);
+        try {
+            t.connect(address);
+        } catch (IOException e) {
+            t.removeListener(this);
+            throw e;
+        }
+        transport = t;
+        writer = new SerialWriter(t, this::onWriteError);
+        writer.setOnWritten(metrics::onFrameWritten);
+        writer.start();
+        int id = ++connectionId;
+        long start = System.currentTimeMillis();
+        configRequest = scheduler.schedule(() -> requestConfig(id, start, configDelay),
+                configDelay, TimeUnit.MILLISECONDS);
+    }
+
+    private void closeLink() {
+        cancelConfigRequest();
+        connectionId++;
+        ready = false;
+        SerialWriter w = writer;
+        writer = null;
+        if (w != null) w.close();
+        Transport t = transport;
+        transport = null;
+        if (t != null) {
+            t.removeListener(this);
+            try {
+                t.disconnect();
+            } catch (Exception ignored) {
+            }
+        }
+    }
+
+    /**
+     * Asks the board for its config until it answers, doubling the delay between requests up to
+     * {@value #CONFIG_REQUEST_MAX_DELAY_MS} ms, and gives up after {@value #CONFIG_TIMEOUT_MS} ms.
+     *
+     * @param id    the connection that scheduled the request, which must still be the current one.
+     * @param start when the connection was opened.
+     * @param delay the delay before this request.
+     */
+    private synchronized void requestConfig(int id, long start, long delay) {
+        if ((id != connectionId) || (!isConnected()) || ready) return;
+        long elapsed = System.currentTimeMillis() - start;
+        if (elapsed >= CONFIG_TIMEOUT_MS) {
+            if (reconnecting) {
+                closeLink();
+                scheduleReconnect();
+            } else {
+                disconnect();
+                nOnCriticalError(new IllegalStateException("Connection timeout, disconnecting."));
+            }
+            return;
+        }
+        try {
+            System.out.println("Sending focuser settings request");
+            Commands.PRINT_CONFIG.run(this, null);
+            long next = Math.min(Math.min(delay * 2L, CONFIG_REQUEST_MAX_DELAY_MS), CONFIG_TIMEOUT_MS - elapsed);
+            configRequest = scheduler.schedule(() -> requestConfig(id, start, next), next, TimeUnit.MILLISECONDS);
+        } catch (IOException e) {
+            if (reconnecting) {
+                closeLink();
+                scheduleReconnect();
+            } else {
+                disconnect();
+                nOnCriticalError(e);
+            }
+        }
+    }
+
+    private void cancelConfigRequest() {
+        ScheduledFuture<?> f = configRequest;
+        configRequest = null;
+        if (f != null) f.cancel(false);
+    }
+
+    /**
+     * @return {@code true} if a config request is scheduled and hasn't run yet.
+     */
+    synchronized boolean isConfigRequestPending() {
+        ScheduledFuture<?> f = configRequest;
+        return (f != null) && (!f.isDone());
+    }
+
+    /**
+     * Closes a link that failed and starts reopening it, keeping the last known state of the board.
+     *
+     * @param id the connection that failed. Errors of previous connections are ignored.
+     */
+    private synchronized void onLinkLost(int id) {
+        if ((id != connectionId) || (!supervised)) return;
+        closeLink();
+        if (!reconnecting) {
+            System.out.println("Link lost, reconnecting");
+            reconnecting = true;
+            reconnectDelay = RECONNECT_DELAY_MS;
+            state.set(BoardState.DISCONNECTED);
+            updConnSate(ConnectionState.RECONNECTING);
+        }
+        scheduleReconnect();
+    }
+
+    /**
+     * Schedules the next attempt to reopen the link, doubling the delay up to {@value #RECONNECT_MAX_DELAY_MS} ms.
+     */
+    private void scheduleReconnect() {
+        long delay = reconnectDelay;
+        reconnectDelay = Math.min(delay * 2L, RECONNECT_MAX_DELAY_MS);
+        int id = connectionId;
+        reconnectTask = scheduler.schedule(() -> reconnect(id), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void reconnect(int id) {
+        if ((id != connectionId) || (!reconnecting)) return;
+        try {
+            // The board may have been reset by the new connection, ask for the config early and often
+            openLink(address, RECONNECT_DELAY_MS);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Reconnection failed: " + e.getMessage());
+            scheduleReconnect();
+        }
+    }
+
+    /**
+     * @return a single-threaded scheduler for short periodic tasks tied to the board, such as keepalives.
+     * Tasks must not block, since they delay the config requests.
+     */
+    public ScheduledExecutorService scheduler() {
+        return scheduler;
     }
 
     public synchronized void disconnect() {
@@ -62,7 +254,7 @@ public final class Board implements SerialMessageListener {
                 for (ArduinoPin pin : powerBox.asList()) {
                     if (pin.isOnWhenAppOpen()) {
                         pin.setValue(false);
-                        Commands.POWER_BOX_SET_PIN.run(this, null, false, pin.getNumber(), pin.getValuePWM());
+                        Commands.POWER_BOX_SET_PIN.run(this, null, pin.getNumber(), pin.getValuePWM());
                     }
                 }
             } catch (Exception ignored) {
@@ -71,11 +263,15 @@ public final class Board implements SerialMessageListener {
         updConnSate(ConnectionState.TIMEOUT);
         if (focuser != null)
             updFocuserState(Focuser.FocuserState.NONE);
+        supervised = false;
+        reconnecting = false;
+        ScheduledFuture<?> r = reconnectTask;
+        reconnectTask = null;
+        if (r != null) r.cancel(false);
+        address = null;
         ready = false;
-        try {
-            serialPort.disconnect();
-        } catch (Exception ignored) {
-        }
+        state.set(BoardState.DISCONNECTED);
+        closeLink();
         updConnSate(ConnectionState.DISCONNECTED);
         focuser = null;
         powerBox = null;
@@ -83,6 +279,25 @@ public final class Board implements SerialMessageListener {
         version = null;
     }
 
+    /**
+     * @return the latest snapshot of the board, safe to read from any thread without locking.
+     */
+    public BoardState state() {
+        return state.get();
+    }
+
+    /**
+     * @return the latency and throughput metrics of the link, disabled by default.
+     */
+    public LinkMetrics metrics() {
+        return metrics;
+    }
+
+    private int getWriteQueueDepth() {
+        SerialWriter w = writer;
+        return (w == null) ? 0 : w.getQueueDepth();
+    }
+
     public Focuser focuser() {
         return focuser;
     }
@@ -91,17 +306,49 @@ public final class Board implements SerialMessageListener {
         return flat;
     }
 
+    /**
+     * Adds a listener that receives all the parameter updates.
+     */
     public void addListener(Listener l) {
-        listeners.add(l);
+        listeners.add(l, EnumSet.allOf(Parameters.class));
+    }
+
+    /**
+     * Adds a listener that receives only the updates of the given parameters,
+     * plus all the connection, focuser state and error events.
+     */
+    public void addListener(Listener l, EnumSet<Parameters> parameters) {
+        listeners.add(l, parameters);
     }
 
     public void removeListener(Listener l) {
         listeners.remove(l);
     }
 
-    public void run(Commands cmd, Listener caller, int... params) throws IllegalArgumentException, SerialPortException, IOException {
+    /**
+     * Queues a command for the board. Parameters are validated and the local state is updated immediately,
+     * while the frame is written asynchronously. Consecutive commands that supersede each other are coalesced.
+     *
+     * @return a future completed when the command has been written, or immediately if the command was ignored.
+     */
+    public CompletableFuture<Void> run(Commands cmd, Listener caller, int... params) throws IllegalArgumentException, SerialPortException, IOException {
         if (isReady() && ((exclusiveCaller == null) || (caller == exclusiveCaller)))
-            cmd.run(this, caller, params);
+            return cmd.run(this, caller, params);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private void onWriteError(Exception e) {
+        e.printStackTrace();
+        if (supervised) {
+            int id = connectionId;
+            scheduler.execute(() -> onLinkLost(id));
+            return;
+        }
+        synchronized (this) {
+            if (writer == null) return;
+            disconnect(false);
+        }
+        nOnCriticalError(e);
     }
 
     public PowerBox powerBox() {
@@ -125,198 +372,373 @@ public final class Board implements SerialMessageListener {
     }
 
     @Override
-    public synchronized void onSerialMessage(String msg) {
+    public synchronized void onSerialMessage(CharSequence msg) {
+        metrics.onFrameReceived(msg);
         if (msg.isEmpty())
             return;
         char c = msg.charAt(0);
-        String param = msg.substring(1);
         if (ready) {
+            FrameHandler handler = (c < handlers.length) ? handlers[c] : null;
+            if (handler == null) {
+                metrics.onUnknownFrame();
+                System.err.println("Unknown message received: \"" + msg + "\"");
+                return;
+            }
             try {
-                switch (c) {
-                    case '>' -> // Log
-                            System.out.println("Message from focuser: \"" + param + "\"");
-
-                    case 'S' -> { // Pos
-                        int newCurrentPos = Integer.parseInt(param);
-                        if (newCurrentPos != focuser.pos) {
-                            focuser.pos = newCurrentPos;
-                            notifyListeners(null, Parameters.CURRENT_POS);
-                        }
-                    }
+                handler.handle(reader.reset(msg, 1));
+            } catch (Exception e) {
+                metrics.onParseError();
+                e.printStackTrace();
+            }
+        } else if (c == 'C') {
+            System.out.println("Focuser settings: " + msg.subSequence(1, msg.length()));
+            // Parsed aside: the current objects stay visible to the other threads until the whole frame is valid
+            Config config;
+            try {
+                config = parseConfig(reader.reset(msg, 1));
+            } catch (Exception e) {
+                metrics.onParseError();
+                System.err.println("Error while parsing config: " + msg);
+                // While reconnecting, the last known state is kept and the config is requested again
+                if (reconnecting) return;
+                nOnCriticalError(e);
+                disconnect();
+                return;
+            }
+            cancelConfigRequest();
+            supervised = true;
+            if ((config.focuser != null) && (config.focuser.pos > settings.getFocuserMaxTravel()))
+                settings.setFokMaxTravel(config.focuser.pos, null);
+            version = config.version;
+            int pins = (config.powerBox == null) ? 0 : config.powerBox.size();
+            if (pinNumbers.length < pins) {
+                pinNumbers = new int[pins];
+                pinValues = new int[pins];
+            }
+            if (reconnecting) {
+                resync(config);
+            } else {
+                focuser = config.focuser;
+                powerBox = config.powerBox;
+                flat = config.flat;
+                state.set(BoardState.of(focuser, powerBox, flat));
+                ready = true;
+                updConnSate(ConnectionState.CONNECTED_READY);
+            }
+            try {
+                sendStartupCommands(config);
+            } catch (Exception e) {
+                // Write errors are reported by the writer
+                e.printStackTrace();
+            }
+        }
+    }
 
-                    case 'M' -> // Moving
-                            updFocuserState(Focuser.FocuserState.MOVING);
+    /**
+     * Sets the clock of the board and switches on the pins that must be on while the app is open.
+     * Called once the config has been applied, so that the commands update the current objects.
+     */
+    private void sendStartupCommands(Config config) throws IOException {
+        PowerBox parsed = config.powerBox;
+        if (parsed == null) return;
+        if (parsed.hasRTC())
+            Commands.SET_TIME_LAT_LONG.run(this, null, (int) (System.currentTimeMillis() / 1000L), 0, 0);
+        for (ArduinoPin pin : parsed.asList()) {
+            if (pin.isOnWhenAppOpen() && (!pin.isAutoModeEn()))
+                Commands.POWER_BOX_SET_PIN.run(this, null, pin.getNumber(), 255);
+        }
+    }
 
-                    case 'H' -> // Hold
-                            updFocuserState(Focuser.FocuserState.HOLD_MOTOR);
+    private void registerHandlers() {
+        handlers['>'] = in -> // Log
+                System.out.println("Message from focuser: \"" + in.nextString('\n') + "\"");
+        handlers['S'] = in -> { // Pos
+            int newCurrentPos = in.nextInt();
+            in.expectEnd();
+            if (newCurrentPos != focuser.pos) {
+                focuser.pos = newCurrentPos;
+                notifyListeners(null, Parameters.CURRENT_POS);
+            }
+        };
+        handlers['M'] = in -> // Moving
+                updFocuserState(Focuser.FocuserState.MOVING);
+        handlers['H'] = in -> // Hold
+                updFocuserState(Focuser.FocuserState.HOLD_MOTOR);
+        handlers['A'] = in -> { // Arrived
+            for (Listener l : listeners.all()) {
+                l.onFocuserReachedPos();
+            }
+        };
+        handlers['P'] = in -> // Power save
+                updFocuserState(Focuser.FocuserState.POWER_SAVE);
+        handlers['J'] = in -> { // Ambient
+            double temperature = in.nextDecimal();
+            in.expect(',');
+            double humidity = in.nextDecimal();
+            in.expect(',');
+            double dewPoint = in.nextDecimal();
+            in.expectEnd();
+            powerBox.temperature = temperature;
+            powerBox.humidity = humidity;
+            powerBox.dewPoint = dewPoint;
+            notifyListeners(null, Parameters.POWERBOX_AMBIENT_DATA);
+        };
+        handlers['Y'] = in -> { // Pins, only the changes are notified
+            PowerBox.AutoModes autoMode = parseAutoMode(in);
+            in.expect(',');
+            // The whole frame is validated before applying it, so that a bad frame changes nothing
+            int size = powerBox.size(), count = 0;
+            int[] numbers = pinNumbers, values = pinValues;
+            while (in.skip('(')) {
+                int number = in.nextInt();
+                in.expect('%');
+                int value = in.nextInt();
+                in.expect(')');
+                if (powerBox.get(number) == null) throw new IOException("Unknown pin " + number);
+                if (count == size) throw new IOException("Too many pins");
+                numbers[count] = number;
+                values[count++] = value;
+            }
+            in.expectEnd();
+            int changed = 0;
+            for (int i = 0; i < count; i++) {
+                ArduinoPin pin = powerBox.get(numbers[i]);
+                int old = pin.getValuePWM();
+                pin.setValue(values[i]);
+                if (pin.getValuePWM() != old) numbers[changed++] = numbers[i];
+            }
+            if (powerBox.autoMode != autoMode) {
+                powerBox.autoMode = autoMode;
+                notifyListeners(null, Parameters.POWERBOX_AUTO_MODE);
+            }
+            if (changed != 0) notifyPinsChanged(null, Arrays.copyOf(numbers, changed));
+        };
+        handlers['T'] = in -> { // Sun elevation
+            double sunElev = in.nextDecimal();
+            in.expectEnd();
+            powerBox.sunElev = sunElev;
+            notifyListeners(null, Parameters.POWERBOX_SUN_ELEV);
+        };
+        handlers['W'] = in -> // Time sync
+                Commands.SET_TIME_LAT_LONG.run(this, null, (int) (System.currentTimeMillis() / 1000L), 0, 0);
+        handlers['E'] = in -> { // Flat panel
+            FlatPanel.CoverStatus coverStatus = parseCoverStatus(in);
+            in.expectEnd();
+            flat.coverStatus = coverStatus;
+            notifyListeners(null, Parameters.FLAT_COVER_STATUS);
+        };
+    }
 
-                    case 'A' -> { // Arrived
-                        for (Listener l : listeners) {
-                            l.onFocuserReachedPos();
-                        }
-                    }
+    /**
+     * Completes a reconnection. If the board still has the same features, the objects known to the listeners are
+     * kept and only the parameters that changed while the link was down are notified. Otherwise, the listeners are
+     * told that the old board was disconnected and a new one connected.
+     */
+    private void resync(Config config) {
+        reconnecting = false;
+        reconnectDelay = RECONNECT_DELAY_MS;
+        boolean sameFeatures = ((focuser == null) == (config.focuser == null)) &&
+                ((powerBox == null) ? (config.powerBox == null) : powerBox.hasSameFeatures(config.powerBox)) &&
+                ((flat == null) ? (config.flat == null) :
+                        ((config.flat != null) && (flat.hasServo() == config.flat.hasServo())));
+        if (!sameFeatures) {
+            System.out.println("Board features changed, reloading");
+            updConnSate(ConnectionState.DISCONNECTED);
+            focuser = config.focuser;
+            powerBox = config.powerBox;
+            flat = config.flat;
+            state.set(BoardState.of(focuser, powerBox, flat));
+            ready = true;
+            updConnSate(ConnectionState.CONNECTED_READY);
+            return;
+        }
+        EnumSet<Parameters> changed = EnumSet.noneOf(Parameters.class);
+        if (focuser != null) focuser.update(config.focuser, changed);
+        if (powerBox != null) powerBox.update(config.powerBox, changed);
+        if (flat != null) flat.update(config.flat, changed);
+        state.set(BoardState.of(focuser, powerBox, flat));
+        ready = true;
+        System.out.println("Reconnected, changed: " + changed);
+        updConnSate(ConnectionState.RECONNECTED);
+        for (Parameters p : changed) {
+            notifyListeners(null, p);
+        }
+    }
 
-                    case 'P' -> // Power save
-                            updFocuserState(Focuser.FocuserState.POWER_SAVE);
+    /**
+     * Parses a config frame into new objects, without changing the board or sending anything.
+     */
+    private static Config parseConfig(FrameReader in) throws IOException {
+        String version = in.nextString(';');
+        Focuser focuser = null;
+        PowerBox powerBox = null;
+        FlatPanel flat = null;
+        while (in.hasNext()) {
+            char type = in.peek();
+            in.skipPast('[');
+            switch (type) {
+                case 'F' -> { // Focuser
+                    int pos = in.nextInt();
+                    in.expect(',');
+                    int speed = in.nextInt();
+                    in.expect(',');
+                    int backlash = in.nextInt();
+                    in.expect(',');
+                    boolean invertDir = in.nextBoolean();
+                    in.expect(',');
+                    boolean powerSaver = in.nextBoolean();
+                    focuser = new Focuser(pos, speed, backlash, invertDir, powerSaver);
+                }
 
-                    case 'J' -> { // Ambient
-                        String[] split = param.split(",");
-                        powerBox.temperature = Double.parseDouble(split[0]);
-                        powerBox.humidity = Double.parseDouble(split[1]);
-                        powerBox.dewPoint = Double.parseDouble(split[2]);
-                        notifyListeners(null, Parameters.POWERBOX_AMBIENT_DATA);
+                case 'D' -> { // Powerbox
+                    boolean ambient = in.nextBoolean();
+                    in.expect(',');
+                    boolean rtc = in.nextBoolean();
+                    in.expect(',');
+                    if (rtc) {
+                        double latitude = in.nextDecimal();
+                        in.expect(',');
+                        double longitude = in.nextDecimal();
+                        in.expect(',');
+                        powerBox = new PowerBox(ambient, latitude, longitude, parseAutoMode(in));
+                    } else {
+                        powerBox = new PowerBox(ambient, parseAutoMode(in));
                     }
-
-                    case 'Y' -> { // Pins
-                        String[] split = param.split(",");
-                        powerBox.autoMode = PowerBox.AutoModes.values()[Integer.parseInt(split[0])];
-                        Pattern pattern = Pattern.compile("\\((.*?)\\)");
-                        Matcher m = pattern.matcher(split[1]);
-                        while (m.find()) {
-                            String[] rcvPin = m.group(1).split("%");
-                            int number = Integer.parseInt(rcvPin[0]), value = Integer.parseInt(rcvPin[1]);
-                            this.powerBox.get(number).setValue(value);
-                        }
-                        notifyListeners(null, Parameters.POWERBOX_AUTO_MODE);
-                        notifyListeners(null, Parameters.POWERBOX_PINS);
+                    in.expect(',');
+                    while (in.skip('(')) {
+                        powerBox.add(parseConfigPin(in));
                     }
+                }
 
-                    case 'T' -> { // Sun elevation
-                        powerBox.sunElev = Double.parseDouble(param);
-                        notifyListeners(null, Parameters.POWERBOX_SUN_ELEV);
+                case 'P' -> { // Flat panel
+                    boolean lightStatus = in.nextBoolean();
+                    in.expect(',');
+                    int brightness = in.nextInt();
+                    in.expect(',');
+                    if (in.nextBoolean()) {
+                        in.expect(',');
+                        int openServoVal = in.nextInt();
+                        in.expect(',');
+                        int closedServoVal = in.nextInt();
+                        in.expect(',');
+                        int servoSpeed = in.nextInt();
+                        in.expect(',');
+                        flat = new FlatPanel(lightStatus, brightness, openServoVal, closedServoVal, servoSpeed,
+                                parseCoverStatus(in));
+                    } else {
+                        flat = new FlatPanel(lightStatus, brightness);
                     }
+                }
+            }
+            in.skipPast(']');
+            in.skip(';');
+        }
+        return new Config(version, focuser, powerBox, flat);
+    }
 
-                    case 'W' -> // Time sync
-                            Commands.SET_TIME_LAT_LONG.run(this, null, (int) (System.currentTimeMillis() / 1000L), 0, 0);
+    private static PowerBox.AutoModes parseAutoMode(FrameReader in) throws IOException {
+        int ordinal = in.nextInt();
+        PowerBox.AutoModes mode = PowerBox.AutoModes.fromOrdinal(ordinal);
+        if (mode == null) throw new IOException("Unknown auto mode " + ordinal);
+        return mode;
+    }
 
-                    case 'E' -> { // Flat panel
-                        flat.coverStatus = FlatPanel.CoverStatus.values()[Integer.parseInt(param)];
-                        notifyListeners(null, Parameters.FLAT_COVER_STATUS);
-                    }
+    private static FlatPanel.CoverStatus parseCoverStatus(FrameReader in) throws IOException {
+        int ordinal = in.nextInt();
+        FlatPanel.CoverStatus[] values = FlatPanel.CoverStatus.values();
+        if ((ordinal < 0) || (ordinal >= values.length)) throw new IOException("Unknown cover status " + ordinal);
+        return values[ordinal];
+    }
 
-                    default -> System.err.println("Unknown message received: \"" + msg + "\"");
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        } else if (c == 'C') {
-            try {
-                System.out.println("Focuser settings: " + param);
-                String[] devs = param.split(";");
-                version = devs[0];
-                for (int i = 1; i < devs.length; i++) {
-                    String dev = devs[i];
-                    char type = dev.charAt(0);
-                    String[] config = dev.substring(dev.indexOf("[") + 1, dev.indexOf("]")).split(",");
-                    switch (type) {
-                        case 'F' -> { // Focuser
-                            int pos = Integer.parseInt(config[0]);
-                            if (pos > settings.getFocuserMaxTravel())
-                                settings.setFokMaxTravel(pos, null);
-                            focuser = new Focuser(pos, Integer.parseInt(config[1]), Integer.parseInt(config[2]),
-                                    config[3].equals("1"), config[4].equals("1"));
-                        }
-
-                        case 'D' -> { // Powerbox
-                            boolean ambient = config[0].equals("1"),
-                                    rtc = config[1].equals("1");
-                            String pins;
-                            if (rtc) {
-                                powerBox = new PowerBox(ambient,
-                                        Double.parseDouble(config[2]), Double.parseDouble(config[3]),
-                                        PowerBox.AutoModes.values()[Integer.parseInt(config[4])]);
-                                pins = config[5];
-                                Commands.SET_TIME_LAT_LONG.run(this, null, (int) (System.currentTimeMillis() / 1000L), 0, 0);
-                            } else {
-                                powerBox = new PowerBox(ambient, PowerBox.AutoModes.values()[Integer.parseInt(config[2])]);
-                                pins = config[3];
-                            }
-                            Pattern pattern = Pattern.compile("\\((.*?)\\)");
-                            Matcher m = pattern.matcher(pins);
-                            while (m.find()) {
-                                String[] rcvPin = m.group(1).split("%");
-                                int number = Integer.parseInt(rcvPin[0]),
-                                        value = Integer.parseInt(rcvPin[1]);
-                                boolean isPwm = rcvPin[2].equals("1");
-                                ArduinoPin stored = PowerBox.getPinFrom(Main.settings.powerBoxPins, number);
-                                if (stored == null) {
-                                    if (isPwm)
-                                        this.powerBox.add(new ArduinoPin(number, i18n("output.pin.default.name") + " " + number,
-                                                value, rcvPin[3].equals("1"), rcvPin[4].equals("1"), false));
-                                    else
-                                        this.powerBox.add(new ArduinoPin(number, i18n("output.pin.default.name") + " " + number,
-                                                value, rcvPin[3].equals("1"), false));
-                                } else if (stored.isOnWhenAppOpen()) {
-                                    if (isPwm)
-                                        this.powerBox.add(new ArduinoPin(number, stored.getName(),
-                                                255, rcvPin[3].equals("1"), rcvPin[4].equals("1"), true));
-                                    else
-                                        this.powerBox.add(new ArduinoPin(number, stored.getName(),
-                                                255, rcvPin[3].equals("1"), true));
-                                    Commands.POWER_BOX_SET_PIN.run(this, null, number, 255);
-                                } else {
-                                    if (isPwm)
-                                        this.powerBox.add(new ArduinoPin(number, stored.getName(),
-                                                value, rcvPin[3].equals("1"), rcvPin[4].equals("1"), false));
-                                    else
-                                        this.powerBox.add(new ArduinoPin(number, stored.getName(),
-                                                value, rcvPin[3].equals("1"), false));
-                                }
-                            }
-                        }
-
-                        case 'P' -> { // Flat panel
-                            boolean lightStatus = config[0].equals("1");
-                            int brightness = Integer.parseInt(config[1]);
-                            if (config[2].equals("1")) {
-                                this.flat = new FlatPanel(lightStatus, brightness,
-                                        Integer.parseInt(config[3]), Integer.parseInt(config[4]), Integer.parseInt(config[5]),
-                                        FlatPanel.CoverStatus.values()[Integer.parseInt(config[6])]);
-                            } else {
-                                this.flat = new FlatPanel(lightStatus, brightness);
-                            }
-                        }
-                    }
-                }
-                ready = true;
-                updConnSate(ConnectionState.CONNECTED_READY);
-            } catch (Exception e) {
-                System.err.println("Error while parsing config: " + msg);
-                nOnCriticalError(e);
-                disconnect();
-            }
+    /**
+     * Parses a pin of the config, named after the pin with the same number in the settings. Pins that must be on
+     * while the app is open are created already on: the command is sent by {@link #sendStartupCommands(Config)}.
+     */
+    private static ArduinoPin parseConfigPin(FrameReader in) throws IOException {
+        int number = in.nextInt();
+        in.expect('%');
+        int value = in.nextInt();
+        in.expect('%');
+        boolean isPwm = in.nextBoolean();
+        in.expect('%');
+        boolean enablePwm = false;
+        if (isPwm) {
+            enablePwm = in.nextBoolean();
+            in.expect('%');
+        }
+        boolean autoModeEn = in.nextBoolean();
+        in.expect(')');
+        ArduinoPin stored = PowerBox.getPinFrom(Main.settings.powerBoxPins, number);
+        if (stored == null) {
+            if (isPwm)
+                return new ArduinoPin(number, i18n("output.pin.default.name") + " " + number,
+                        value, enablePwm, autoModeEn, false);
+            return new ArduinoPin(number, i18n("output.pin.default.name") + " " + number, value, autoModeEn, false);
+        } else if (stored.isOnWhenAppOpen()) {
+            if (isPwm)
+                return new ArduinoPin(number, stored.getName(), 255, enablePwm, autoModeEn, true);
+            return new ArduinoPin(number, stored.getName(), 255, autoModeEn, true);
+        } else {
+            if (isPwm)
+                return new ArduinoPin(number, stored.getName(), value, enablePwm, autoModeEn, false);
+            return new ArduinoPin(number, stored.getName(), value, autoModeEn, false);
         }
     }
 
+    /**
+     * Called by the transport when reading fails. The link is reopened from the scheduler, never from the thread
+     * of the transport, which may have to be stopped.
+     */
     @Override
     public void onSerialError(Exception e) {
-        updConnSate(ConnectionState.ERROR);
         e.printStackTrace();
+        if (supervised) {
+            int id = connectionId;
+            scheduler.execute(() -> onLinkLost(id));
+        } else {
+            updConnSate(ConnectionState.ERROR);
+        }
     }
 
     public void notifyListeners(Listener notMe, Parameters p) {
-        for (Listener l : listeners) {
+        state.updateAndGet(s -> s.with(p, focuser, powerBox, flat));
+        for (Listener l : listeners.subscribedTo(p)) {
             if (l != notMe) l.updateParam(p);
         }
     }
 
+    /**
+     * Notifies the listeners subscribed to {@link Parameters#POWERBOX_PINS} that only the values of some pins
+     * changed.
+     *
+     * @param notMe a listener to skip, or {@code null}.
+     * @param pins  the numbers of the pins whose value changed.
+     */
+    public void notifyPinsChanged(Listener notMe, int... pins) {
+        state.updateAndGet(s -> s.with(Parameters.POWERBOX_PINS, focuser, powerBox, flat));
+        for (Listener l : listeners.subscribedTo(Parameters.POWERBOX_PINS)) {
+            if (l != notMe) l.onPinsChanged(pins);
+        }
+    }
+
     private void updFocuserState(Focuser.FocuserState focuserState) {
         System.out.println("Focuser state: " + focuserState.toString());
         this.focuser.state = focuserState;
-        for (Listener l : listeners) {
+        state.updateAndGet(s -> s.withFocuser(focuser));
+        for (Listener l : listeners.all()) {
             l.updateFocuserState(focuserState);
         }
     }
 
     private void updConnSate(ConnectionState connectionState) {
-        for (Listener l : listeners) {
+        for (Listener l : listeners.all()) {
             l.updateConnectionState(connectionState);
         }
     }
 
     private void nOnCriticalError(Exception e) {
         e.printStackTrace();
-        for (Listener l : listeners) {
+        for (Listener l : listeners.all()) {
             l.onCriticalError(e);
         }
     }
@@ -341,7 +763,17 @@ public final class Board implements SerialMessageListener {
         DISCONNECTED(i18n("disconnected")),
         CONNECTED_READY(i18n("connected")),
         TIMEOUT(i18n("timeout")),
-        ERROR(i18n("error.lowercase"));
+        ERROR(i18n("error.lowercase")),
+        /**
+         * The link was lost and is being reopened. The last known state of the board is kept.
+         */
+        RECONNECTING(i18n("reconnecting")),
+        /**
+         * The link was reopened and the board has the same features as before: the objects returned by
+         * {@link #focuser()}, {@link #powerBox()} and {@link #flat()} haven't changed, and only the parameters that
+         * changed are notified.
+         */
+        RECONNECTED(i18n("connected"));
 
         private final String label;
 
@@ -365,7 +797,7 @@ public final class Board implements SerialMessageListener {
         FOCUSER_REL_MOVE('R', 1, (b, params) -> (b.hasFocuser() &&
                 ((b.focuser.pos + params[0]) >= 0) && ((b.focuser.pos + params[0]) <= Main.settings.getFocuserMaxTravel()))),
         FOCUSER_ABS_MOVE('A', 1,
-                (b, params) -> (board.hasFocuser() && (params[0] >= 0) && (params[0] <= Main.settings.getFocuserMaxTravel())),
+                (b, params) -> (b.hasFocuser() && (params[0] >= 0) && (params[0] <= Main.settings.getFocuserMaxTravel())),
                 (b, caller, params) -> {
                     b.focuser.targetPos = params[0];
                     b.notifyListeners(caller, Parameters.REQUESTED_POS);
@@ -399,11 +831,11 @@ public final class Board implements SerialMessageListener {
             return ((pin != null) && (params[1] >= 0) && (params[1] <= 255) && (!pin.isAutoModeEn()));
         }, (b, caller, params) -> {
             b.powerBox.get(params[0]).setValue(params[1]);
-            b.notifyListeners(caller, Parameters.POWERBOX_PINS);
+            b.notifyPinsChanged(caller, params[0]);
         }),
-        POWER_BOX_SET_AUTO_MODE('K', 1, (b, params) -> (b.hasPowerBox() && b.powerBox.supportedAutoModes().contains(PowerBox.AutoModes.values()[params[0]])),
+        POWER_BOX_SET_AUTO_MODE('K', 1, (b, params) -> (b.hasPowerBox() && b.powerBox.supportsAutoMode(params[0])),
                 (b, caller, params) -> {
-                    b.powerBox.autoMode = PowerBox.AutoModes.values()[params[0]];
+                    b.powerBox.autoMode = PowerBox.AutoModes.fromOrdinal(params[0]);
                     b.notifyListeners(caller, Parameters.POWERBOX_AUTO_MODE);
                 }),
         POWER_BOX_EN_PIN_PWM('J', 2, (b, params) -> (b.hasPowerBox() && b.powerBox.contains(params[0]) && ((params[1] == 0) || (params[1] == 1))),
@@ -455,28 +887,69 @@ public final class Board implements SerialMessageListener {
             this.whenDone = whenDone;
         }
 
-        private void run(Board b, Listener caller, int... params)
-                throws IllegalArgumentException, SerialPortException, IOException {
-            run(b, caller, true, params);
-        }
-
-        private synchronized void run(Board b, Listener caller, boolean applyPinsOnDisconnect, int... params)
-                throws IllegalArgumentException, SerialPortException, IOException {
-            StringBuilder cmd = new StringBuilder("$").append(id);
+        private CompletableFuture<Void> run(Board b, Listener caller, int... params)
+                throws IllegalArgumentException, IOException {
             if (params.length != paramsCount)
                 throw new IllegalArgumentException("Missing/too much parameters.");
             if ((validator != null) && !validator.validate(b, params))
                 throw new IllegalArgumentException("Invalid parameters.");
+            SerialWriter w = b.writer;
+            if (w == null) throw new IOException("Not connected.");
+            CompletableFuture<Void> future = w.enqueue(coalescingKey(params), encode(params));
+            if (whenDone != null) whenDone.action(b, caller, params);
+            return future;
+        }
+
+        /**
+         * Commands that only set a value supersede the previous, still queued, command of the same kind
+         * (and for the same pin).
+         */
+        private long coalescingKey(int[] params) {
+            return switch (this) {
+                case FOCUSER_ABS_MOVE, FLAT_SET_BRIGHTNESS -> ((long) ordinal()) << 32;
+                case POWER_BOX_SET_PIN -> (((long) ordinal()) << 32) | (params[0] & 0xFFFFFFFFL);
+                default -> SerialWriter.NO_COALESCING;
+            };
+        }
+
+        /**
+         * Encodes the command as {@code $<id><p1>%<p2>%...\n}.
+         */
+        private byte[] encode(int[] params) {
+            int length = 3;
             for (int p : params) {
-                cmd.append(p).append("%");
+                length += digits(p) + 1;
             }
-            try {
-                b.serialPort.println(cmd.toString());
-                if (whenDone != null) whenDone.action(b, caller, params);
-            } catch (SerialPortException | IOException e) {
-                b.disconnect(applyPinsOnDisconnect);
-                throw e;
+            byte[] frame = new byte[length];
+            frame[0] = '$';
+            frame[1] = (byte) id;
+            int i = 2;
+            for (int p : params) {
+                long v = p;
+                if (v < 0) {
+                    frame[i++] = '-';
+                    v = -v;
+                }
+                int end = i + digits(v);
+                for (int j = end - 1; j >= i; j--) {
+                    frame[j] = (byte) ('0' + (v % 10));
+                    v /= 10;
+                }
+                i = end;
+                frame[i++] = '%';
             }
+            frame[i] = '\n';
+            return frame;
+        }
+
+        private static int digits(long v) {
+            int n = (v < 0) ? 2 : 1;
+            v = Math.abs(v);
+            while (v >= 10) {
+                v /= 10;
+                n++;
+            }
+            return n;
         }
 
         private interface ParamValidator {
@@ -489,6 +962,16 @@ public final class Board implements SerialMessageListener {
         }
     }
 
+    /**
+     * The content of a config frame.
+     */
+    private record Config(String version, Focuser focuser, PowerBox powerBox, FlatPanel flat) {
+    }
+
+    private interface FrameHandler {
+        void handle(FrameReader in) throws Exception;
+    }
+
     public interface Listener {
         default void updateConnectionState(ConnectionState connectionState) {
         }
@@ -502,30 +985,17 @@ public final class Board implements SerialMessageListener {
         default void updateParam(Parameters p) {
         }
 
-        default void onCriticalError(Exception e) {
+        /**
+         * Called instead of {@link #updateParam(Parameters)} with {@link Parameters#POWERBOX_PINS} when only the
+         * values of some pins changed, not the pins themselves or their settings.
+         *
+         * @param changedPins the numbers of the pins whose value changed.
+         */
+        default void onPinsChanged(int[] changedPins) {
+            updateParam(Parameters.POWERBOX_PINS);
         }
-    }
 
-    private class PingRetryTimer extends TimerTask {
-        @Override
-        public synchronized void run() {
-            if (isConnected() && (!ready)) {
-                try {
-                    System.out.println("Sending focuser settings request");
-                    Commands.PRINT_CONFIG.run(Board.this, null);
-                    timerCount++;
-                    if (timerCount < 10) {
-                        new Timer("SendSettingsRequestTask #" + timerCount).schedule(new PingRetryTimer(), 500);
-                    } else {
-                        disconnect();
-                        nOnCriticalError(new IllegalStateException("Connection timeout, disconnecting."));
-                    }
-                } catch (IllegalArgumentException ignored) {
-                } catch (IOException | SerialPortException e) {
-                    disconnect();
-                    nOnCriticalError(e);
-                }
-            }
+        default void onCriticalError(Exception e) {
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,124 @@
+package io.github.marcocipriani01.thunderfocus.board;
+
+/**
+ * Immutable snapshot of the board, published by {@link Board} every time it applies a change.
+ * Can be read from any thread without locking: the parts that didn't change are shared between snapshots.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ * @see Board#state()
+ */
+public record BoardState(boolean ready, FocuserSnapshot focuser, PowerBoxSnapshot powerBox,
+                         PinsSnapshot pins, FlatSnapshot flat) {
+
+    /**
+     * The state of a board that is not connected or not ready.
+     */
+    public static final BoardState DISCONNECTED = new BoardState(false, null, null, null, null);
+
+    static BoardState of(Focuser focuser, PowerBox powerBox, FlatPanel flat) {
+        return new BoardState(true, FocuserSnapshot.of(focuser), PowerBoxSnapshot.of(powerBox),
+                PinsSnapshot.of(powerBox), FlatSnapshot.of(flat));
+    }
+
+    /**
+     * @return a copy of this snapshot with the parts affected by the given parameter rebuilt from the board.
+     */
+    BoardState with(Board.Parameters p, Focuser focuser, PowerBox powerBox, FlatPanel flat) {
+        if (!ready) return this;
+        return switch (p) {
+            case REQUESTED_POS, CURRENT_POS, SPEED, BACKLASH, REVERSE_DIR, ENABLE_POWER_SAVE ->
+                    new BoardState(true, FocuserSnapshot.of(focuser), this.powerBox, pins, this.flat);
+            case POWERBOX_PINS -> new BoardState(true, this.focuser, this.powerBox, PinsSnapshot.of(powerBox), this.flat);
+            case POWERBOX_AUTO_MODE, POWERBOX_AMBIENT_DATA, POWERBOX_SUN_ELEV ->
+                    new BoardState(true, this.focuser, PowerBoxSnapshot.of(powerBox), pins, this.flat);
+            case FLAT_COVER_STATUS, FLAT_LIGHT_STATUS, FLAT_BRIGHTNESS ->
+                    new BoardState(true, this.focuser, this.powerBox, pins, FlatSnapshot.of(flat));
+        };
+    }
+
+    BoardState withFocuser(Focuser focuser) {
+        if (!ready) return this;
+        return new BoardState(true, FocuserSnapshot.of(focuser), powerBox, pins, flat);
+    }
+
+    public record FocuserSnapshot(int pos, int targetPos, int speed, int backlash, boolean invertDir,
+                                  boolean powerSaver, Focuser.FocuserState state) {
+
+        static FocuserSnapshot of(Focuser f) {
+            if (f == null) return null;
+            return new FocuserSnapshot(f.pos, f.targetPos, f.speed, f.backlash, f.invertDir, f.powerSaver, f.state);
+        }
+
+        public boolean isMoving() {
+            return state == Focuser.FocuserState.MOVING;
+        }
+    }
+
+    public record PowerBoxSnapshot(boolean ambientSensors, boolean rtc, double temperature, double humidity,
+                                   double dewPoint, double sunElev, PowerBox.AutoModes autoMode) {
+
+        static PowerBoxSnapshot of(PowerBox p) {
+            if (p == null) return null;
+            return new PowerBoxSnapshot(p.hasAmbientSensors(), p.hasRTC(), p.temperature, p.humidity,
+                    p.dewPoint, p.sunElev, p.autoMode);
+        }
+    }
+
+    public record PinSnapshot(int number, String name, int value, boolean pwmEnabled,
+                              boolean autoModeEn, boolean onWhenAppOpen) {
+
+        public boolean canWrite() {
+            return (!autoModeEn) && (!onWhenAppOpen);
+        }
+
+        public boolean getValueBoolean() {
+            return value > 100;
+        }
+    }
+
+    /**
+     * The pins of the powerbox, indexed by their number.
+     */
+    public static final class PinsSnapshot {
+
+        private final PinSnapshot[] byNumber;
+
+        private PinsSnapshot(PinSnapshot[] byNumber) {
+            this.byNumber = byNumber;
+        }
+
+        static PinsSnapshot of(PowerBox p) {
+            if (p == null) return null;
+            PinSnapshot[] byNumber = new PinSnapshot[p.maxPinNumber() + 1];
+            for (ArduinoPin pin : p.asList()) {
+                byNumber[pin.getNumber()] = new PinSnapshot(pin.getNumber(), pin.getName(), pin.getValuePWM(),
+                        pin.isPWMEnabled(), pin.isAutoModeEn(), pin.isOnWhenAppOpen());
+            }
+            return new PinsSnapshot(byNumber);
+        }
+
+        /**
+         * @return the pin with the given number, or {@code null}.
+         */
+        public PinSnapshot get(int number) {
+            return ((number >= 0) && (number < byNumber.length)) ? byNumber[number] : null;
+        }
+
+        /**
+         * @return the highest pin number, or {@code 0} if there are no pins.
+         */
+        public int maxPinNumber() {
+            return byNumber.length - 1;
+        }
+    }
+
+    public record FlatSnapshot(boolean hasServo, boolean lightStatus, int brightness,
+                               FlatPanel.CoverStatus coverStatus) {
+
+        static FlatSnapshot of(FlatPanel f) {
+            if (f == null) return null;
+            return new FlatSnapshot(f.hasServo, f.lightStatus, f.brightness, f.coverStatus);
+        }
+    }
+}
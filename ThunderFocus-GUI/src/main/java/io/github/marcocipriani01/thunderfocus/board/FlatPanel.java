@@ -1,5 +1,7 @@
 package io.github.marcocipriani01.thunderfocus.board;
 
+import java.util.EnumSet;
+
 import static io.github.marcocipriani01.thunderfocus.Main.i18n;
 
 public class FlatPanel {
@@ -61,6 +63,30 @@ public class FlatPanel {
         return coverStatus;
     }
 
+    /**
+     * Copies the state read from the board after a reconnection.
+     *
+     * @param from    the flat panel parsed from the new config, with the same {@link #hasServo()}.
+     * @param changed receives the parameters whose value changed.
+     */
+    void update(FlatPanel from, EnumSet<Board.Parameters> changed) {
+        if (lightStatus != from.lightStatus) {
+            lightStatus = from.lightStatus;
+            changed.add(Board.Parameters.FLAT_LIGHT_STATUS);
+        }
+        if (brightness != from.brightness) {
+            brightness = from.brightness;
+            changed.add(Board.Parameters.FLAT_BRIGHTNESS);
+        }
+        if (coverStatus != from.coverStatus) {
+            coverStatus = from.coverStatus;
+            changed.add(Board.Parameters.FLAT_COVER_STATUS);
+        }
+        openServoVal = from.openServoVal;
+        closedServoVal = from.closedServoVal;
+        servoSpeed = from.servoSpeed;
+    }
+
     public enum CoverStatus {
         NEITHER_OPEN_NOR_CLOSED(i18n("cover.moving")),
         CLOSED(i18n("cover.closed")),
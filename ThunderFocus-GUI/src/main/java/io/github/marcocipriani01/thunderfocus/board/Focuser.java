@@ -2,6 +2,8 @@ package io.github.marcocipriani01.thunderfocus.board;
 
 import io.github.marcocipriani01.thunderfocus.Main;
 
+import java.util.EnumSet;
+
 import static io.github.marcocipriani01.thunderfocus.Main.i18n;
 
 public class Focuser {
@@ -60,6 +62,35 @@ public class Focuser {
         return powerSaver;
     }
 
+    /**
+     * Copies the settings read from the board after a reconnection.
+     *
+     * @param from    the focuser parsed from the new config.
+     * @param changed receives the parameters whose value changed.
+     */
+    void update(Focuser from, EnumSet<Board.Parameters> changed) {
+        if (pos != from.pos) {
+            pos = from.pos;
+            changed.add(Board.Parameters.CURRENT_POS);
+        }
+        if (speed != from.speed) {
+            speed = from.speed;
+            changed.add(Board.Parameters.SPEED);
+        }
+        if (backlash != from.backlash) {
+            backlash = from.backlash;
+            changed.add(Board.Parameters.BACKLASH);
+        }
+        if (invertDir != from.invertDir) {
+            invertDir = from.invertDir;
+            changed.add(Board.Parameters.REVERSE_DIR);
+        }
+        if (powerSaver != from.powerSaver) {
+            powerSaver = from.powerSaver;
+            changed.add(Board.Parameters.ENABLE_POWER_SAVE);
+        }
+    }
+
     public FocuserState getState() {
         return state;
     }
@@ -0,0 +1,160 @@
+package io.github.marcocipriani01.thunderfocus.board;
+
+/**
+ * Cursor over a message received from the board. Parses integers, fixed-point decimals and
+ * separators straight from the characters of the frame, without regular expressions, substrings or arrays.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+final class FrameReader {
+
+    private static final double[] POW10 = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9,
+            1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18};
+    private CharSequence in;
+    private int pos;
+    private int end;
+
+    /**
+     * Points this reader to a new frame.
+     *
+     * @param in   the frame.
+     * @param from the index of the first character to read.
+     * @return this object.
+     */
+    FrameReader reset(CharSequence in, int from) {
+        this.in = in;
+        this.pos = from;
+        this.end = in.length();
+        return this;
+    }
+
+    boolean hasNext() {
+        return pos < end;
+    }
+
+    /**
+     * @return the next character, without consuming it, or {@code 0} at the end of the frame.
+     */
+    char peek() {
+        return (pos < end) ? in.charAt(pos) : 0;
+    }
+
+    /**
+     * Consumes the given character if it's the next one.
+     *
+     * @param c the expected character.
+     * @return {@code true} if the character was found and consumed.
+     */
+    boolean skip(char c) {
+        if ((pos < end) && (in.charAt(pos) == c)) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Consumes the given character, throwing an exception if the frame contains something else.
+     *
+     * @param c the expected character.
+     */
+    void expect(char c) {
+        if (!skip(c)) throw error("'" + c + "' expected");
+    }
+
+    /**
+     * Throws an exception if there are characters left in the frame.
+     */
+    void expectEnd() {
+        if (pos < end) throw error("end of frame expected");
+    }
+
+    /**
+     * @return {@code true} if the next integer is {@code 1}.
+     */
+    boolean nextBoolean() {
+        return nextInt() == 1;
+    }
+
+    /**
+     * Parses a decimal integer, with an optional minus sign.
+     *
+     * @return the parsed value.
+     */
+    int nextInt() {
+        boolean negative = skip('-');
+        int start = pos;
+        long value = 0;
+        while (pos < end) {
+            int digit = in.charAt(pos) - '0';
+            if ((digit < 0) || (digit > 9)) break;
+            value = (value * 10) + digit;
+            if (value > (((long) Integer.MAX_VALUE) + 1)) throw error("integer overflow");
+            pos++;
+        }
+        if (pos == start) throw error("digit expected");
+        if (negative) value = -value;
+        if (value > Integer.MAX_VALUE) throw error("integer overflow");
+        return (int) value;
+    }
+
+    /**
+     * Parses a fixed-point decimal number as printed by the firmware, like {@code -12.5}.
+     *
+     * @return the parsed value.
+     */
+    double nextDecimal() {
+        boolean negative = skip('-');
+        int start = pos, scale = -1, digits = 0;
+        long mantissa = 0;
+        while (pos < end) {
+            char c = in.charAt(pos);
+            if ((c >= '0') && (c <= '9')) {
+                if (digits == (POW10.length - 1)) throw error("too many digits");
+                mantissa = (mantissa * 10) + (c - '0');
+                digits++;
+                if (scale >= 0) scale++;
+            } else if ((c == '.') && (scale < 0)) {
+                scale = 0;
+            } else {
+                break;
+            }
+            pos++;
+        }
+        if (digits == 0) {
+            pos = start;
+            throw error("number expected");
+        }
+        double value = (scale > 0) ? (mantissa / POW10[scale]) : mantissa;
+        return negative ? -value : value;
+    }
+
+    /**
+     * Reads all the characters up to the given delimiter (or the end of the frame) into a new {@code String}.
+     * The delimiter is consumed but not returned.
+     *
+     * @param delimiter the delimiter.
+     * @return the characters read.
+     */
+    String nextString(char delimiter) {
+        int start = pos;
+        while ((pos < end) && (in.charAt(pos) != delimiter)) pos++;
+        String s = in.subSequence(start, pos).toString();
+        if (pos < end) pos++;
+        return s;
+    }
+
+    /**
+     * Skips all the characters up to and including the given delimiter.
+     *
+     * @param delimiter the delimiter.
+     */
+    void skipPast(char delimiter) {
+        while ((pos < end) && (in.charAt(pos++) != delimiter)) ;
+    }
+
+    private NumberFormatException error(String what) {
+        return new NumberFormatException(what + " at index " + pos + " of \"" + in + "\"");
+    }
+}
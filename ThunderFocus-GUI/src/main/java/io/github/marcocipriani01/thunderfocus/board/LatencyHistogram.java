@@ -0,0 +1,89 @@
+package io.github.marcocipriani01.thunderfocus.board;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear histogram of durations in microseconds, like HdrHistogram: every power of two is split into
+ * 32 linear buckets, so percentiles are exact to within 3% from 1 µs to about one minute (longer durations are
+ * clamped). Recording is lock-free and never allocates.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+final class LatencyHistogram {
+
+    private static final int PRECISION_BITS = 6;
+    private static final int HALF_BUCKETS = 1 << (PRECISION_BITS - 1);
+    private static final long MAX_MICROS = (1L << 26) - 1L;
+    private final AtomicLongArray counts = new AtomicLongArray(index(MAX_MICROS) + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    private static int index(long micros) {
+        if (micros < (1L << PRECISION_BITS)) return (int) micros;
+        int shift = 64 - Long.numberOfLeadingZeros(micros) - PRECISION_BITS;
+        return (shift * HALF_BUCKETS) + (int) (micros >>> shift);
+    }
+
+    private static long lowerBound(int index) {
+        if (index < (1 << PRECISION_BITS)) return index;
+        int shift = (index / HALF_BUCKETS) - 1;
+        return ((long) (index - (shift * HALF_BUCKETS))) << shift;
+    }
+
+    /**
+     * Adds a value.
+     *
+     * @param micros the duration in microseconds. Negative values are recorded as zero.
+     */
+    void record(long micros) {
+        micros = Math.min(Math.max(micros, 0L), MAX_MICROS);
+        counts.incrementAndGet(index(micros));
+        count.incrementAndGet();
+        sum.addAndGet(micros);
+        max.accumulateAndGet(micros, Math::max);
+    }
+
+    long getCount() {
+        return count.get();
+    }
+
+    double getMeanMicros() {
+        long n = count.get();
+        return (n == 0L) ? 0.0 : ((double) sum.get() / n);
+    }
+
+    long getMaxMicros() {
+        return max.get();
+    }
+
+    /**
+     * @param quantile from 0 to 1.
+     * @return the highest value equivalent to the given quantile, or zero if nothing has been recorded.
+     */
+    long getPercentileMicros(double quantile) {
+        long total = 0L;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        if (total == 0L) return 0L;
+        long rank = Math.max(1L, (long) Math.ceil(quantile * total));
+        long seen = 0L;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return Math.min(lowerBound(i + 1) - 1L, max.get());
+        }
+        return max.get();
+    }
+
+    void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0L);
+        }
+        count.set(0L);
+        sum.set(0L);
+        max.set(0L);
+    }
+}
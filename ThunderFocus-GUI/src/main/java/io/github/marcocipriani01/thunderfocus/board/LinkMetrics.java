@@ -0,0 +1,323 @@
+package io.github.marcocipriani01.thunderfocus.board;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Latency and throughput of the link to the board. Disabled by default, in which case every hook returns after
+ * reading a single volatile field: enable it with {@code -Dthunderfocus.metrics=true} or from JMX.
+ * <p>
+ * Only some commands get a response from the firmware (the config frame, the moving state after a move, the pins
+ * after an auto mode change, the sun elevation after a time sync, the cover status): their latency is the time from
+ * the end of the write to the next frame of the expected kind. Commands are matched in order, and those still
+ * waiting after five seconds are counted as unanswered. Received bytes are counted after framing, one terminator
+ * per frame.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+public final class LinkMetrics implements LinkMetricsMXBean {
+
+    /**
+     * JMX name of the metrics.
+     */
+    public static final String OBJECT_NAME = "io.github.marcocipriani01.thunderfocus:type=LinkMetrics";
+    private static final Board.Commands[] COMMANDS_BY_ID = new Board.Commands[128];
+    private static final char[] RESPONSES = new char[Board.Commands.values().length];
+    private static final String[] FRAME_NAMES = new String[128];
+    private static final int MAX_IN_FLIGHT = 64;
+    private static final long RESPONSE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final long SECOND_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    static {
+        for (Board.Commands cmd : Board.Commands.values()) {
+            COMMANDS_BY_ID[cmd.id] = cmd;
+        }
+        RESPONSES[Board.Commands.PRINT_CONFIG.ordinal()] = 'C';
+        RESPONSES[Board.Commands.FOCUSER_ABS_MOVE.ordinal()] = 'M';
+        RESPONSES[Board.Commands.FOCUSER_REL_MOVE.ordinal()] = 'M';
+        RESPONSES[Board.Commands.SET_TIME_LAT_LONG.ordinal()] = 'T';
+        RESPONSES[Board.Commands.POWER_BOX_SET_AUTO_MODE.ordinal()] = 'Y';
+        RESPONSES[Board.Commands.POWER_BOX_EN_PIN_PWM.ordinal()] = 'Y';
+        RESPONSES[Board.Commands.POWER_BOX_SET_PIN_AUTO.ordinal()] = 'Y';
+        RESPONSES[Board.Commands.FLAT_SET_COVER.ordinal()] = 'E';
+        FRAME_NAMES['>'] = "log";
+        FRAME_NAMES['C'] = "config";
+        FRAME_NAMES['S'] = "position";
+        FRAME_NAMES['M'] = "moving";
+        FRAME_NAMES['A'] = "arrived";
+        FRAME_NAMES['H'] = "hold";
+        FRAME_NAMES['P'] = "power save";
+        FRAME_NAMES['J'] = "ambient";
+        FRAME_NAMES['Y'] = "pins";
+        FRAME_NAMES['T'] = "sun elevation";
+        FRAME_NAMES['W'] = "time sync";
+        FRAME_NAMES['E'] = "cover";
+    }
+
+    private final IntSupplier queueDepth;
+    private final LatencyHistogram[] commandLatency = new LatencyHistogram[Board.Commands.values().length];
+    private final LatencyHistogram[] interArrival = new LatencyHistogram[128];
+    private final long[] lastArrival = new long[128];
+    private final ArrayDeque<Sent> inFlight = new ArrayDeque<>();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder framesIn = new LongAdder();
+    private final LongAdder framesOut = new LongAdder();
+    private final LongAdder parseErrors = new LongAdder();
+    private final LongAdder unknownFrames = new LongAdder();
+    private final LongAdder unanswered = new LongAdder();
+    private volatile boolean enabled = Boolean.getBoolean("thunderfocus.metrics");
+    private volatile long since = System.nanoTime();
+    private long fpsSecond = 0L;
+    private int fpsCount = 0;
+    private int lastFps = 0;
+
+    /**
+     * Class constructor.
+     *
+     * @param queueDepth returns the number of frames waiting to be written.
+     */
+    LinkMetrics(IntSupplier queueDepth) {
+        this.queueDepth = queueDepth;
+        for (int i = 0; i < commandLatency.length; i++) {
+            commandLatency[i] = new LatencyHistogram();
+        }
+    }
+
+    private static String summary(LatencyHistogram h) {
+        return String.format(Locale.ROOT, "n=%d, mean=%.2f ms, p50=%.2f ms, p90=%.2f ms, p99=%.2f ms, max=%.2f ms",
+                h.getCount(), h.getMeanMicros() / 1000.0, h.getPercentileMicros(0.5) / 1000.0,
+                h.getPercentileMicros(0.9) / 1000.0, h.getPercentileMicros(0.99) / 1000.0, h.getMaxMicros() / 1000.0);
+    }
+
+    private static String frameName(int id) {
+        String name = FRAME_NAMES[id];
+        return (name == null) ? String.valueOf((char) id) : ((char) id + " (" + name + ")");
+    }
+
+    /**
+     * Registers the metrics in the platform MBean server, unless already registered.
+     */
+    public void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException ignored) {
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Forgets the frames and commands of the previous connection, keeping the totals.
+     */
+    synchronized void onConnect() {
+        inFlight.clear();
+        for (int i = 0; i < lastArrival.length; i++) {
+            lastArrival[i] = 0L;
+        }
+    }
+
+    /**
+     * Called from the writer thread after a frame has been written.
+     */
+    void onFrameWritten(byte[] frame) {
+        if (!enabled) return;
+        long now = System.nanoTime();
+        framesOut.increment();
+        bytesOut.add(frame.length);
+        if ((frame.length < 2) || (frame[0] != '$') || (frame[1] < 0)) return;
+        Board.Commands cmd = COMMANDS_BY_ID[frame[1]];
+        if ((cmd == null) || (RESPONSES[cmd.ordinal()] == 0)) return;
+        synchronized (this) {
+            expire(now);
+            if (inFlight.size() >= MAX_IN_FLIGHT) {
+                inFlight.pollFirst();
+                unanswered.increment();
+            }
+            inFlight.addLast(new Sent(cmd, now));
+        }
+    }
+
+    /**
+     * Called for every frame received from the board, before it is decoded.
+     */
+    void onFrameReceived(CharSequence frame) {
+        if (!enabled) return;
+        long now = System.nanoTime();
+        framesIn.increment();
+        bytesIn.add(frame.length() + 1);
+        if (frame.isEmpty()) return;
+        char id = frame.charAt(0);
+        synchronized (this) {
+            long second = now / SECOND_NANOS;
+            if (second != fpsSecond) {
+                lastFps = (second == (fpsSecond + 1)) ? fpsCount : 0;
+                fpsSecond = second;
+                fpsCount = 0;
+            }
+            fpsCount++;
+            if (id >= interArrival.length) return;
+            if (lastArrival[id] != 0L) {
+                LatencyHistogram h = interArrival[id];
+                if (h == null) interArrival[id] = h = new LatencyHistogram();
+                h.record((now - lastArrival[id]) / 1000L);
+            }
+            lastArrival[id] = now;
+            if (inFlight.isEmpty()) return;
+            expire(now);
+            Iterator<Sent> it = inFlight.iterator();
+            while (it.hasNext()) {
+                Sent sent = it.next();
+                if (RESPONSES[sent.cmd.ordinal()] == id) {
+                    it.remove();
+                    commandLatency[sent.cmd.ordinal()].record((now - sent.nanos) / 1000L);
+                    return;
+                }
+            }
+        }
+    }
+
+    private void expire(long now) {
+        Sent sent;
+        while (((sent = inFlight.peekFirst()) != null) && ((now - sent.nanos) > RESPONSE_TIMEOUT_NANOS)) {
+            inFlight.pollFirst();
+            unanswered.increment();
+        }
+    }
+
+    void onParseError() {
+        if (enabled) parseErrors.increment();
+    }
+
+    void onUnknownFrame() {
+        if (enabled) unknownFrames.increment();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    @Override
+    public long getFramesIn() {
+        return framesIn.sum();
+    }
+
+    @Override
+    public long getFramesOut() {
+        return framesOut.sum();
+    }
+
+    @Override
+    public synchronized int getFramesPerSecond() {
+        long second = System.nanoTime() / SECOND_NANOS;
+        if (second == fpsSecond) return lastFps;
+        return (second == (fpsSecond + 1)) ? fpsCount : 0;
+    }
+
+    @Override
+    public long getParseErrors() {
+        return parseErrors.sum();
+    }
+
+    @Override
+    public long getUnknownFrames() {
+        return unknownFrames.sum();
+    }
+
+    @Override
+    public long getUnansweredCommands() {
+        return unanswered.sum();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queueDepth.getAsInt();
+    }
+
+    @Override
+    public Map<String, String> getCommandLatencies() {
+        Map<String, String> map = new LinkedHashMap<>();
+        for (Board.Commands cmd : Board.Commands.values()) {
+            LatencyHistogram h = commandLatency[cmd.ordinal()];
+            if (h.getCount() != 0L) map.put(cmd.name(), summary(h));
+        }
+        return map;
+    }
+
+    @Override
+    public synchronized Map<String, String> getInterArrivalTimes() {
+        Map<String, String> map = new LinkedHashMap<>();
+        for (int i = 0; i < interArrival.length; i++) {
+            LatencyHistogram h = interArrival[i];
+            if ((h != null) && (h.getCount() != 0L)) map.put(frameName(i), summary(h));
+        }
+        return map;
+    }
+
+    @Override
+    public String dump() {
+        double seconds = (System.nanoTime() - since) / 1e9;
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "Serial link metrics (%s), collected for %.1f s%n",
+                enabled ? "enabled" : "disabled", seconds));
+        sb.append(String.format(Locale.ROOT, "Bytes in/out: %d/%d%n", getBytesIn(), getBytesOut()));
+        sb.append(String.format(Locale.ROOT, "Frames in/out: %d/%d, %d frames/s in the last second, %.1f on average%n",
+                getFramesIn(), getFramesOut(), getFramesPerSecond(), getFramesIn() / Math.max(seconds, 1e-3)));
+        sb.append(String.format(Locale.ROOT, "Parse errors: %d, unknown frames: %d, unanswered commands: %d%n",
+                getParseErrors(), getUnknownFrames(), getUnansweredCommands()));
+        sb.append(String.format(Locale.ROOT, "Write queue depth: %d%n", getQueueDepth()));
+        sb.append("Command to first response:").append(System.lineSeparator());
+        getCommandLatencies().forEach((k, v) -> sb.append("  ").append(k).append(": ").append(v).append(System.lineSeparator()));
+        sb.append("Inter-arrival time:").append(System.lineSeparator());
+        getInterArrivalTimes().forEach((k, v) -> sb.append("  ").append(k).append(": ").append(v).append(System.lineSeparator()));
+        return sb.toString();
+    }
+
+    @Override
+    public synchronized void reset() {
+        for (LatencyHistogram h : commandLatency) {
+            h.reset();
+        }
+        for (LatencyHistogram h : interArrival) {
+            if (h != null) h.reset();
+        }
+        bytesIn.reset();
+        bytesOut.reset();
+        framesIn.reset();
+        framesOut.reset();
+        parseErrors.reset();
+        unknownFrames.reset();
+        unanswered.reset();
+        since = System.nanoTime();
+    }
+
+    private record Sent(Board.Commands cmd, long nanos) {
+    }
+}
@@ -0,0 +1,60 @@
+package io.github.marcocipriani01.thunderfocus.board;
+
+import java.util.Map;
+
+/**
+ * JMX view of the {@link LinkMetrics}, registered as {@value LinkMetrics#OBJECT_NAME}.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+public interface LinkMetricsMXBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    long getFramesIn();
+
+    long getFramesOut();
+
+    /**
+     * @return the number of frames received during the last full second.
+     */
+    int getFramesPerSecond();
+
+    long getParseErrors();
+
+    long getUnknownFrames();
+
+    /**
+     * @return the number of commands that got no response within five seconds.
+     */
+    long getUnansweredCommands();
+
+    int getQueueDepth();
+
+    /**
+     * @return a summary of the time from writing each kind of command to its response, for the commands that have one.
+     */
+    Map<String, String> getCommandLatencies();
+
+    /**
+     * @return a summary of the time between consecutive frames of each kind.
+     */
+    Map<String, String> getInterArrivalTimes();
+
+    /**
+     * @return all the metrics as text.
+     */
+    String dump();
+
+    /**
+     * Clears all the metrics.
+     */
+    void reset();
+}
@@ -0,0 +1,71 @@
+package io.github.marcocipriani01.thunderfocus.board;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Thread-safe registry of {@link Board.Listener}s. Every listener receives the connection, focuser state and error
+ * events, but only the parameter updates it subscribed to. Listeners are dispatched from copy-on-write arrays,
+ * one per {@link Board.Parameters}, so that the serial thread can iterate them without locking
+ * while other threads add or remove listeners.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+final class ListenerRegistry {
+
+    private static final Board.Listener[] NONE = new Board.Listener[0];
+    private static final Board.Parameters[] PARAMETERS = Board.Parameters.values();
+    private final LinkedHashMap<Board.Listener, EnumSet<Board.Parameters>> subscriptions = new LinkedHashMap<>();
+    private volatile Board.Listener[] all = NONE;
+    private volatile Board.Listener[][] byParameter;
+
+    ListenerRegistry() {
+        rebuild();
+    }
+
+    /**
+     * Adds a listener, or replaces its subscriptions if it's already registered.
+     *
+     * @param l          the listener.
+     * @param parameters the parameters whose updates the listener wants.
+     */
+    synchronized void add(Board.Listener l, EnumSet<Board.Parameters> parameters) {
+        if (l == null) throw new NullPointerException("Null listener!");
+        subscriptions.put(l, EnumSet.copyOf(parameters));
+        rebuild();
+    }
+
+    synchronized void remove(Board.Listener l) {
+        if (subscriptions.remove(l) != null) rebuild();
+    }
+
+    /**
+     * @return all the listeners. The array must not be modified.
+     */
+    Board.Listener[] all() {
+        return all;
+    }
+
+    /**
+     * @return the listeners subscribed to the given parameter. The array must not be modified.
+     */
+    Board.Listener[] subscribedTo(Board.Parameters p) {
+        return byParameter[p.ordinal()];
+    }
+
+    private void rebuild() {
+        Board.Listener[][] byParameter = new Board.Listener[PARAMETERS.length][];
+        for (Board.Parameters p : PARAMETERS) {
+            ArrayList<Board.Listener> list = new ArrayList<>();
+            for (Map.Entry<Board.Listener, EnumSet<Board.Parameters>> e : subscriptions.entrySet()) {
+                if (e.getValue().contains(p)) list.add(e.getKey());
+            }
+            byParameter[p.ordinal()] = list.toArray(NONE);
+        }
+        this.byParameter = byParameter;
+        this.all = subscriptions.keySet().toArray(NONE);
+    }
+}
@@ -2,6 +2,10 @@ package io.github.marcocipriani01.thunderfocus.board;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
 
 import static io.github.marcocipriani01.thunderfocus.Main.i18n;
 
@@ -17,8 +21,20 @@ public class PowerBox {
     public static final double ABSOLUTE_ZERO = -273.15;
     public static final double INVALID_HUMIDITY = -1.0;
     final ArrayList<ArduinoPin> pins = new ArrayList<>();
+    private final BitSet pwmCapablePins = new BitSet();
+    /**
+     * The same pins as {@link #pins}, indexed by their number.
+     */
+    private ArduinoPin[] byNumber = new ArduinoPin[0];
+    /**
+     * The index of every pin in {@link #pins}, by pin number.
+     */
+    private int[] rowByNumber = new int[0];
+    private int maxPinNumber = 0;
     private final boolean rtcFeature;
     private final boolean ambientFeature;
+    private final Set<AutoModes> supportedAutoModes;
+    private final AutoModes[] supportedAutoModesArray;
     AutoModes autoMode;
     double temperature = ABSOLUTE_ZERO;
     double humidity = INVALID_HUMIDITY;
@@ -31,6 +47,8 @@ public class PowerBox {
         this.rtcFeature = false;
         this.ambientFeature = ambientFeature;
         this.autoMode = autoMode;
+        this.supportedAutoModes = computeAutoModes(false, ambientFeature);
+        this.supportedAutoModesArray = supportedAutoModes.toArray(new AutoModes[0]);
     }
 
     public PowerBox(boolean ambientFeature, double latitude, double longitude, AutoModes autoMode) {
@@ -39,6 +57,17 @@ public class PowerBox {
         this.longitude = longitude;
         this.ambientFeature = ambientFeature;
         this.autoMode = autoMode;
+        this.supportedAutoModes = computeAutoModes(true, ambientFeature);
+        this.supportedAutoModesArray = supportedAutoModes.toArray(new AutoModes[0]);
+    }
+
+    private static Set<AutoModes> computeAutoModes(boolean rtcFeature, boolean ambientFeature) {
+        EnumSet<AutoModes> set = EnumSet.noneOf(AutoModes.class);
+        if (rtcFeature)
+            set.addAll(EnumSet.range(AutoModes.NIGHT_ASTRONOMICAL, AutoModes.DAYTIME));
+        if (ambientFeature)
+            set.addAll(EnumSet.range(AutoModes.DEW_POINT_DIFF1, AutoModes.TEMP_FREEZE));
+        return Collections.unmodifiableSet(set);
     }
 
     public static void clonePins(PowerBox from, ArrayList<ArduinoPin> to) {
@@ -62,12 +91,7 @@ public class PowerBox {
     }
 
     public int maxPinNumber() {
-        int max = 0;
-        for (ArduinoPin pin : pins) {
-            int n = pin.getNumber();
-            if (n > max) max = n;
-        }
-        return max;
+        return maxPinNumber;
     }
 
     public double getSunElev() {
@@ -123,8 +147,8 @@ public class PowerBox {
     }
 
     public boolean hasPWMPins() {
-        for (ArduinoPin ap : pins) {
-            if (ap.isPWMEnabled()) return true;
+        for (int i = pwmCapablePins.nextSetBit(0); i >= 0; i = pwmCapablePins.nextSetBit(i + 1)) {
+            if (byNumber[i].isPWMEnabled()) return true;
         }
         return false;
     }
@@ -138,16 +162,60 @@ public class PowerBox {
      * @return {@code true} if this list contains the given pin.
      */
     public boolean contains(int pin) {
-        for (ArduinoPin ap : pins) {
-            if (ap.getNumber() == pin) {
-                return true;
-            }
-        }
-        return false;
+        return get(pin) != null;
     }
 
     public ArduinoPin get(int pin) {
-        return getPinFrom(pins, pin);
+        return ((pin >= 0) && (pin < byNumber.length)) ? byNumber[pin] : null;
+    }
+
+    /**
+     * @param pin a pin number.
+     * @return the index of the pin in the list, or {@code -1} if there's no such pin.
+     */
+    public int indexOf(int pin) {
+        return (get(pin) == null) ? -1 : rowByNumber[pin];
+    }
+
+    /**
+     * @param other another powerbox, or {@code null}.
+     * @return {@code true} if the other powerbox has the same sensors and the same pins, whatever their values.
+     */
+    boolean hasSameFeatures(PowerBox other) {
+        if ((other == null) || (rtcFeature != other.rtcFeature) || (ambientFeature != other.ambientFeature) ||
+                (pins.size() != other.pins.size()))
+            return false;
+        for (ArduinoPin pin : pins) {
+            ArduinoPin o = other.get(pin.getNumber());
+            if ((o == null) || (o.isPWM() != pin.isPWM())) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Copies the state read from the board after a reconnection. The powerboxes must have the same features.
+     *
+     * @param from    the powerbox parsed from the new config.
+     * @param changed receives the parameters whose value changed.
+     * @see #hasSameFeatures(PowerBox)
+     */
+    void update(PowerBox from, EnumSet<Board.Parameters> changed) {
+        if (autoMode != from.autoMode) {
+            autoMode = from.autoMode;
+            changed.add(Board.Parameters.POWERBOX_AUTO_MODE);
+        }
+        latitude = from.latitude;
+        longitude = from.longitude;
+        for (ArduinoPin pin : pins) {
+            ArduinoPin o = from.get(pin.getNumber());
+            if ((pin.getValuePWM() != o.getValuePWM()) || (pin.isPWMEnabled() != o.isPWMEnabled()) ||
+                    (pin.isAutoModeEn() != o.isAutoModeEn())) {
+                if (pin.isPWM()) pin.setPWMEnabled(o.isPWMEnabled());
+                pin.setAutoModeEn(o.isAutoModeEn());
+                pin.setValue(o.getValuePWM());
+                changed.add(Board.Parameters.POWERBOX_PINS);
+            }
+        }
     }
 
     /**
@@ -157,34 +225,41 @@ public class PowerBox {
      */
     void add(ArduinoPin pin) {
         if (pin == null) throw new NullPointerException("Null pin!");
-        if (pins.contains(pin)) throw new IllegalArgumentException("Pin already in list!");
+        int number = pin.getNumber();
+        if (number < 0) throw new IllegalArgumentException("Invalid pin number!");
+        if (contains(number)) throw new IllegalArgumentException("Pin already in list!");
+        if (number >= byNumber.length) {
+            byNumber = Arrays.copyOf(byNumber, number + 1);
+            rowByNumber = Arrays.copyOf(rowByNumber, number + 1);
+        }
+        byNumber[number] = pin;
+        rowByNumber[number] = pins.size();
         pins.add(pin);
+        if (number > maxPinNumber) maxPinNumber = number;
+        if (pin.isPWM()) pwmCapablePins.set(number);
     }
 
+    /**
+     * @return the supported automatic modes, in display order. Shared array, do not modify it.
+     */
     public AutoModes[] supportedAutoModesArray() {
-        Object[] array = supportedAutoModes().toArray();
-        return Arrays.copyOf(array, array.length, AutoModes[].class);
+        return supportedAutoModesArray;
     }
 
-    public ArrayList<AutoModes> supportedAutoModes() {
-        ArrayList<AutoModes> list = new ArrayList<>();
-        if (rtcFeature) {
-            list.add(AutoModes.NIGHT_ASTRONOMICAL);
-            list.add(AutoModes.NIGHT_CIVIL);
-            list.add(AutoModes.DAYTIME);
-        }
-        if (ambientFeature) {
-            list.add(AutoModes.DEW_POINT_DIFF1);
-            list.add(AutoModes.DEW_POINT_DIFF2);
-            list.add(AutoModes.DEW_POINT_DIFF3);
-            list.add(AutoModes.DEW_POINT_DIFF5);
-            list.add(AutoModes.DEW_POINT_DIFF7);
-            list.add(AutoModes.HUMIDITY_90);
-            list.add(AutoModes.HUMIDITY_80);
-            list.add(AutoModes.HUMIDITY_70);
-            list.add(AutoModes.TEMP_FREEZE);
-        }
-        return list;
+    /**
+     * @return the supported automatic modes, as an unmodifiable set.
+     */
+    public Set<AutoModes> supportedAutoModes() {
+        return supportedAutoModes;
+    }
+
+    /**
+     * @param ordinal the ordinal of an {@link AutoModes} constant, as sent by the board.
+     * @return {@code true} if the given automatic mode exists and is supported by this powerbox.
+     */
+    public boolean supportsAutoMode(int ordinal) {
+        AutoModes mode = AutoModes.fromOrdinal(ordinal);
+        return (mode != null) && supportedAutoModes.contains(mode);
     }
 
     /**
@@ -195,13 +270,7 @@ public class PowerBox {
         if (pin == null) {
             throw new NullPointerException("Null pin!");
         }
-        int param = pin.getNumber();
-        for (ArduinoPin ap : pins) {
-            if (ap.getNumber() == param) {
-                return true;
-            }
-        }
-        return false;
+        return contains(pin.getNumber());
     }
 
     public boolean supportsAutoModes() {
@@ -223,12 +292,20 @@ public class PowerBox {
         TEMP_FREEZE(i18n("cold")),
         UNAVAILABLE(i18n("not.available"));
 
+        private static final AutoModes[] VALUES = values();
         private final String label;
 
         AutoModes(String label) {
             this.label = label;
         }
 
+        /**
+         * @return the constant with the given ordinal, or {@code null}, without cloning {@link #values()}.
+         */
+        public static AutoModes fromOrdinal(int ordinal) {
+            return ((ordinal >= 0) && (ordinal < VALUES.length)) ? VALUES[ordinal] : null;
+        }
+
         @Override
         public String toString() {
             return label;
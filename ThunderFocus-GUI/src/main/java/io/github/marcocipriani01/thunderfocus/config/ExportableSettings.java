@@ -1,5 +1,6 @@
 package io.github.marcocipriani01.thunderfocus.config;
 
+import com.google.gson.Gson;
 import com.google.gson.annotations.Expose;
 import com.google.gson.annotations.SerializedName;
 import io.github.marcocipriani01.thunderfocus.board.ArduinoPin;
@@ -9,6 +10,7 @@ import io.github.marcocipriani01.thunderfocus.board.Board;
 import jssc.SerialPortException;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
@@ -18,6 +20,8 @@ import java.nio.file.Path;
  */
 public class ExportableSettings extends Settings {
 
+    private static final Gson PRETTY_SERIALIZER = serializer.newBuilder().setPrettyPrinting().create();
+
     @SerializedName("Backlash")
     @Expose
     public int backlash = 0;
@@ -47,8 +51,12 @@ public class ExportableSettings extends Settings {
         this.ascomBridge = s.ascomBridge;
         this.indiServerPort = s.indiServerPort;
         this.ascomBridgePort = s.ascomBridgePort;
+        this.ascomServerMode = s.ascomServerMode;
         this.serialPort = s.serialPort;
         this.autoConnect = s.autoConnect;
+        this.chartRetentionMinutes = s.chartRetentionMinutes;
+        this.telemetryRecording = s.telemetryRecording;
+        this.telemetryRetentionDays = s.telemetryRetentionDays;
         if (b.isReady()) {
             Focuser focuser = b.focuser();
             if (focuser != null) {
@@ -89,9 +97,12 @@ public class ExportableSettings extends Settings {
         return s;
     }
 
+    /**
+     * Exports the settings, pretty printed so that they can be edited by hand.
+     */
     @Override
     public void save(Path path) throws IOException {
-        super.save(path);
+        SettingsWriter.write(path, PRETTY_SERIALIZER.toJson(this).getBytes(StandardCharsets.UTF_8), false);
     }
 
     public void applyTo(Settings s, Board b) throws IllegalArgumentException, SerialPortException, IOException {
@@ -103,9 +114,13 @@ public class ExportableSettings extends Settings {
         s.ascomBridge = this.ascomBridge;
         s.indiServerPort = this.indiServerPort;
         s.ascomBridgePort = this.ascomBridgePort;
+        s.ascomServerMode = this.ascomServerMode;
         s.focuserTicksCount = this.focuserTicksCount;
         s.focuserTicksUnit = this.focuserTicksUnit;
         s.autoConnect = this.autoConnect;
+        s.chartRetentionMinutes = this.chartRetentionMinutes;
+        s.telemetryRecording = this.telemetryRecording;
+        s.telemetryRetentionDays = this.telemetryRetentionDays;
         s.powerBoxPins = this.powerBoxPins;
         s.setFokMaxTravel(this.focuserMaxTravel, null);
         s.save();
@@ -130,6 +145,7 @@ public class ExportableSettings extends Settings {
                         }
                     }
                 }
+                b.notifyListeners(null, Board.Parameters.POWERBOX_PINS);
                 if (powerBox.supportsAutoModes() && (this.autoMode != PowerBox.AutoModes.UNAVAILABLE))
                     b.run(Board.Commands.POWER_BOX_SET_AUTO_MODE, null, this.autoMode.ordinal());
                 if (powerBox.hasAmbientSensors())
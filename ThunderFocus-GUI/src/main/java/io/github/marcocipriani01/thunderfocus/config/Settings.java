@@ -5,10 +5,12 @@ import com.google.gson.GsonBuilder;
 import com.google.gson.annotations.Expose;
 import com.google.gson.annotations.SerializedName;
 import io.github.marcocipriani01.thunderfocus.Main;
+import io.github.marcocipriani01.thunderfocus.ascom.SimpleServer;
 import io.github.marcocipriani01.thunderfocus.board.ArduinoPin;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
@@ -27,13 +29,14 @@ import static io.github.marcocipriani01.thunderfocus.Main.i18n;
 public class Settings {
 
     /**
-     * An instance of {@link Gson} to save all the settings.
+     * An instance of {@link Gson} to save all the settings, without pretty printing to keep the file small.
      */
     protected static final Gson serializer = new GsonBuilder()
-            .setPrettyPrinting().serializeNulls().excludeFieldsWithoutExposeAnnotation().create();
+            .serializeNulls().excludeFieldsWithoutExposeAnnotation().create();
     protected static Path filePath = null;
     protected static String folder = null;
     protected final ArrayList<SettingsListener> listeners = new ArrayList<>();
+    private transient SettingsWriter writer = null;
     @SerializedName("Relative step size")
     @Expose
     public int relativeStepSize = 10;
@@ -58,12 +61,24 @@ public class Settings {
     @SerializedName("ASCOM port")
     @Expose
     public int ascomBridgePort = 5001;
+    @SerializedName("ASCOM server mode")
+    @Expose
+    public SimpleServer.ServerMode ascomServerMode = SimpleServer.ServerMode.THREADS;
     @SerializedName("Focuser ticks count")
     @Expose
     public int focuserTicksCount = 70;
     @SerializedName("Focuser ticks unit")
     @Expose
     public Units focuserTicksUnit = Units.TICKS;
+    @SerializedName("Chart retention minutes")
+    @Expose
+    public int chartRetentionMinutes = 720;
+    @SerializedName("Telemetry recording")
+    @Expose
+    public boolean telemetryRecording = true;
+    @SerializedName("Telemetry retention days")
+    @Expose
+    public int telemetryRetentionDays = 30;
     @SerializedName("Auto connect")
     @Expose
     public boolean autoConnect = true;
@@ -95,25 +110,59 @@ public class Settings {
         return (Settings.folder = folder);
     }
 
+    /**
+     * Makes this instance of the app use a new, empty settings folder, deleted on exit, so that it neither reads nor
+     * changes the real settings. Must be called before {@link #load()}.
+     */
+    public static void useTemporaryFolder() throws IOException {
+        File dir = Files.createTempDirectory(Main.APP_NAME).toFile();
+        // Files registered later are deleted first
+        dir.deleteOnExit();
+        Settings.folder = dir.getPath() + File.separator;
+        Settings.filePath = null;
+        Path file = getSettingsFilePath();
+        new File(file.toString()).deleteOnExit();
+        SettingsWriter.backupOf(file).toFile().deleteOnExit();
+        file.resolveSibling(file.getFileName() + ".tmp").toFile().deleteOnExit();
+    }
+
     protected static Path getSettingsFilePath() throws IOException {
         if (filePath != null) return filePath;
         return (filePath = Paths.get(getSettingsFolder() + Main.APP_NAME + ".json"));
     }
 
+    /**
+     * Loads the settings, falling back to the backup if the file is missing or corrupted, and then to the defaults.
+     */
     public static Settings load() {
         Settings s;
         try {
-            s = serializer.fromJson(new String(Files.readAllBytes(getSettingsFilePath())), Settings.class);
-        } catch (NoSuchFileException e) {
-            return new Settings();
-        } catch (Exception e) {
+            Path file = getSettingsFilePath();
+            s = read(file);
+            if (s == null) {
+                s = read(SettingsWriter.backupOf(file));
+                if (s != null) System.err.println("Settings restored from the backup.");
+            }
+        } catch (IOException e) {
             e.printStackTrace();
-            return new Settings();
+            s = null;
         }
+        if (s == null) return new Settings();
         normalize(s);
         return s;
     }
 
+    private static Settings read(Path file) {
+        try {
+            return serializer.fromJson(Files.readString(file), Settings.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
     protected static void normalize(Settings s) {
         // Normalize invalid values
         if (s.indiServerPort <= 1024 || s.indiServerPort >= 65535) s.indiServerPort = 7625;
@@ -121,17 +170,46 @@ public class Settings {
         if (s.focuserTicksCount < 10 || s.focuserTicksCount == 2147483647) s.focuserTicksCount = 70;
         if (s.focuserMaxTravel < 1 || s.focuserMaxTravel == 2147483647) s.focuserMaxTravel = 32767;
         if (s.theme == null) s.theme = Theme.LIGHT;
+        if (s.ascomServerMode == null) s.ascomServerMode = SimpleServer.ServerMode.THREADS;
         if (s.focuserTicksUnit == null) s.focuserTicksUnit = Units.TICKS;
         if (s.powerBoxPins == null) s.powerBoxPins = new ArrayList<>();
         if (s.relativeStepSize <= 0) s.relativeStepSize = 10;
+        if (s.chartRetentionMinutes <= 0 || s.chartRetentionMinutes > 10080) s.chartRetentionMinutes = 720;
+        if (s.telemetryRetentionDays <= 0 || s.telemetryRetentionDays > 3650) s.telemetryRetentionDays = 30;
     }
 
+    /**
+     * Writes the settings to a file, replacing it atomically.
+     */
     protected void save(Path path) throws IOException {
-        Files.write(path, serializer.toJson(this).getBytes());
+        SettingsWriter.write(path, serializer.toJson(this).getBytes(StandardCharsets.UTF_8), false);
     }
 
+    /**
+     * Saves the settings in the background. Changes made within {@value SettingsWriter#DELAY_MS} ms are written
+     * together, call {@link #flush()} to write them immediately.
+     *
+     * @throws IOException if the settings folder can't be created.
+     */
     public void save() throws IOException {
-        save(getSettingsFilePath());
+        Path file = getSettingsFilePath();
+        SettingsWriter w;
+        synchronized (this) {
+            if (writer == null) writer = new SettingsWriter(this, file);
+            w = writer;
+        }
+        w.schedule();
+    }
+
+    /**
+     * Writes the changes not saved yet, if any, on the calling thread.
+     */
+    public void flush() throws IOException {
+        SettingsWriter w;
+        synchronized (this) {
+            w = writer;
+        }
+        if (w != null) w.flush();
     }
 
     public void addListener(SettingsListener listener) {
@@ -0,0 +1,135 @@
+package io.github.marcocipriani01.thunderfocus.config;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ConcurrentModificationException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves the settings in the background, at most once every {@value #DELAY_MS} ms however often they change.
+ * The file is never left half-written: the JSON goes to a temporary file, which is synced to disk and then moved
+ * over the old one, after copying it to a backup.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+final class SettingsWriter {
+
+    /**
+     * Time between the first change and the write, during which further changes are merged.
+     */
+    static final long DELAY_MS = 500L;
+    private static final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread t = new Thread(r, "Settings writer");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Settings settings;
+    private final Path file;
+    /**
+     * Held while writing, so that {@link #schedule()} never waits for the disk.
+     */
+    private final Object writeLock = new Object();
+    private ScheduledFuture<?> pending = null;
+    private String lastWritten = null;
+
+    SettingsWriter(Settings settings, Path file) {
+        this.settings = settings;
+        this.file = file;
+    }
+
+    /**
+     * @param file a settings file.
+     * @return the previous version of the file, kept by {@link #write(Path, byte[], boolean)}.
+     */
+    static Path backupOf(Path file) {
+        return file.resolveSibling(file.getFileName() + ".bak");
+    }
+
+    /**
+     * Replaces a file atomically, syncing the new content to disk before it becomes visible.
+     *
+     * @param file   the destination file.
+     * @param data   the new content.
+     * @param backup whether to copy the current file to {@link #backupOf(Path)} first.
+     */
+    static void write(Path file, byte[] data, boolean backup) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.wrap(data);
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+            ch.force(true);
+        }
+        if (backup && Files.exists(file))
+            Files.copy(file, backupOf(file), StandardCopyOption.REPLACE_EXISTING);
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        // Makes the rename durable too. Directories can't be opened on Windows, where this isn't needed
+        try (FileChannel dir = FileChannel.open(file.toAbsolutePath().getParent(), StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Marks the settings as changed. Returns immediately, the write happens on the writer thread.
+     */
+    synchronized void schedule() {
+        if (pending == null) pending = executor.schedule(this::run, DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes the pending changes, if any, on the calling thread, waiting for the writer thread to finish first.
+     */
+    void flush() throws IOException {
+        synchronized (this) {
+            if (pending != null) {
+                pending.cancel(false);
+                pending = null;
+            }
+        }
+        writeNow();
+    }
+
+    private void run() {
+        synchronized (this) {
+            pending = null;
+        }
+        try {
+            writeNow();
+        } catch (ConcurrentModificationException e) {
+            // The pins or the presets were being edited, try again with the new values
+            schedule();
+        } catch (RuntimeException e) {
+            // An exception would cancel the task silently and the changes would be lost: keep trying
+            e.printStackTrace();
+            schedule();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void writeNow() throws IOException {
+        synchronized (writeLock) {
+            String json = Settings.serializer.toJson(settings);
+            if (json.equals(lastWritten)) return;
+            write(file, json.getBytes(StandardCharsets.UTF_8), true);
+            lastWritten = json;
+        }
+    }
+}
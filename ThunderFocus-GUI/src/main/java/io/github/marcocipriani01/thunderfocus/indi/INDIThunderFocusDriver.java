@@ -2,6 +2,7 @@ package io.github.marcocipriani01.thunderfocus.indi;
 
 import io.github.marcocipriani01.thunderfocus.board.*;
 import io.github.marcocipriani01.thunderfocus.config.Settings;
+import io.github.marcocipriani01.thunderfocus.serial.PortDiscovery;
 import io.github.marcocipriani01.thunderfocus.serial.SerialPortImpl;
 import jssc.SerialPortException;
 import org.indilib.i4j.Constants;
@@ -15,9 +16,11 @@ import org.indilib.i4j.protocol.api.INDIConnection;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.HashMap;
 
 import static io.github.marcocipriani01.thunderfocus.Main.board;
+import static io.github.marcocipriani01.thunderfocus.Main.portDiscovery;
 import static io.github.marcocipriani01.thunderfocus.Main.settings;
 import static io.github.marcocipriani01.thunderfocus.board.PowerBox.ABSOLUTE_ZERO;
 import static io.github.marcocipriani01.thunderfocus.board.PowerBox.INVALID_HUMIDITY;
@@ -61,12 +64,13 @@ public class INDIThunderFocusDriver extends INDIFocuserDriver implements Board.L
     private final INDISwitchProperty dustCapP;
     private final INDISwitchElement dustCapOpenE;
     private final INDISwitchElement dustCapCloseE;
-    private INDISwitchProperty portsListProp;
-    private INDISwitchElement searchElem;
-    private HashMap<INDISwitchElement, String> portsListElements;
+    private volatile INDISwitchProperty portsListProp;
+    private volatile INDISwitchElement searchElem;
+    private volatile HashMap<INDISwitchElement, String> portsListElements;
     private INDISwitchProperty digitalPinsProps;
     private INDINumberProperty pwmPinsProp;
     private HashMap<INDIElement<?>, ArduinoPin> pinsMap;
+    private HashMap<Integer, INDIElement<?>> pinElements;
     private boolean relativeFocusDirection = false;
 
     /**
@@ -87,7 +91,7 @@ public class INDIThunderFocusDriver extends INDIFocuserDriver implements Board.L
         serialPortFieldElem = new INDIElementBuilder<>(INDITextElement.class, serialPortFieldProp)
                 .name(INDIStandardElement.PORT).label("Port").textValue(settings.getSerialPort()).create();
         addProperty(serialPortFieldProp);
-        refreshSerialPorts();
+        refreshSerialPorts(false);
 
         focusRelPositionP = newNumberProperty().name(INDIStandardProperty.REL_FOCUS_POSITION).label("Relative").group(GROUP_MAIN_CONTROL).create();
         focusRelPositionE = focusRelPositionP.newElement().name(INDIStandardElement.FOCUS_RELATIVE_POSITION).label("Focus Movement").step(1d)
@@ -129,7 +133,10 @@ public class INDIThunderFocusDriver extends INDIFocuserDriver implements Board.L
         dustCapOpenE = dustCapP.newElement().name("UNPARK").label("Open").switchValue(Constants.SwitchStatus.ON).create();
         dustCapCloseE = dustCapP.newElement().name("PARK").label("Close").switchValue(Constants.SwitchStatus.OFF).create();
 
-        board.addListener(this);
+        board.addListener(this, EnumSet.of(Board.Parameters.CURRENT_POS, Board.Parameters.SPEED,
+                Board.Parameters.REQUESTED_POS, Board.Parameters.REVERSE_DIR, Board.Parameters.POWERBOX_PINS,
+                Board.Parameters.POWERBOX_AMBIENT_DATA, Board.Parameters.FLAT_BRIGHTNESS,
+                Board.Parameters.FLAT_COVER_STATUS, Board.Parameters.FLAT_LIGHT_STATUS));
         if (board.isReady()) onBoardConnected();
     }
 
@@ -214,9 +221,30 @@ public class INDIThunderFocusDriver extends INDIFocuserDriver implements Board.L
     }
 
     /**
-     * Looks for serial ports and displays the available one to the user in the INDI properties.
+     * Looks for serial ports and displays the available one to the user in the INDI properties. The ports are then
+     * probed in the background, and listed again with the boards found.
+     *
+     * @param probe whether to probe the ports.
      */
-    private void refreshSerialPorts() {
+    private void refreshSerialPorts(boolean probe) {
+        showSerialPorts(SerialPortImpl.scanSerialPorts());
+        if (probe) {
+            portDiscovery.discover(board.getAddress(), port -> {
+            }).thenAccept(ports -> {
+                showSerialPorts(ports.stream().map(PortDiscovery.Port::name).toArray(String[]::new));
+                // Nothing chosen yet, pick the first board
+                if (settings.getSerialPort().isEmpty()) {
+                    ports.stream().filter(PortDiscovery.Port::isBoard).findFirst().ifPresent(port -> {
+                        settings.setSerialPort(port.name(), this);
+                        serialPortFieldElem.setValue(port.name());
+                        updateProperty(serialPortFieldProp);
+                    });
+                }
+            });
+        }
+    }
+
+    private synchronized void showSerialPorts(String[] ports) {
         if (portsListProp != null && getPropertiesAsList().contains(portsListProp)) {
             removeProperty(portsListProp);
         }
@@ -224,12 +252,15 @@ public class INDIThunderFocusDriver extends INDIFocuserDriver implements Board.L
                 .state(Constants.PropertyStates.OK).create();
         searchElem = new INDIElementBuilder<>(INDISwitchElement.class, portsListProp).name("REFRESH_PORTS").label("Refresh")
                 .switchValue(Constants.SwitchStatus.ON).create();
-        portsListElements = new HashMap<>();
-        for (String port : SerialPortImpl.scanSerialPorts()) {
-            portsListElements.put(
-                    new INDIElementBuilder<>(INDISwitchElement.class, portsListProp).name(port).label(port)
+        HashMap<INDISwitchElement, String> elements = new HashMap<>();
+        for (String port : ports) {
+            String version = portDiscovery.getBoardVersion(port);
+            String label = (version == null) ? port : (port + " (ThunderFocus v" + version + ")");
+            elements.put(
+                    new INDIElementBuilder<>(INDISwitchElement.class, portsListProp).name(port).label(label)
                             .switchValue(Constants.SwitchStatus.OFF).create(), port);
         }
+        portsListElements = elements;
         addProperty(portsListProp);
     }
 
@@ -390,13 +421,15 @@ public class INDIThunderFocusDriver extends INDIFocuserDriver implements Board.L
                     element.setValue(value);
                     if (value == Constants.SwitchStatus.ON) {
                         connectionProp.setState(Constants.PropertyStates.BUSY);
-                        if (element == connectElem) board.connect(settings.getSerialPort());
-                        else if (element == disconnectElem) board.disconnect();
+                        if (element == connectElem) {
+                            portDiscovery.release(settings.getSerialPort());
+                            board.connect(settings.getSerialPort());
+                        } else if (element == disconnectElem) board.disconnect();
                         break;
                     }
                 }
                 updateProperty(connectionProp);
-            } catch (SerialPortException e) {
+            } catch (IOException e) {
                 e.printStackTrace();
                 connectionProp.setState(Constants.PropertyStates.ALERT);
                 updateProperty(connectionProp);
@@ -409,7 +442,7 @@ public class INDIThunderFocusDriver extends INDIFocuserDriver implements Board.L
                 element.setValue(value);
                 if (value == Constants.SwitchStatus.ON) {
                     if (element == searchElem) {
-                        refreshSerialPorts();
+                        refreshSerialPorts(true);
                     } else {
                         String serialPort = portsListElements.get(element);
                         settings.setSerialPort(serialPort, this);
@@ -609,6 +642,7 @@ public class INDIThunderFocusDriver extends INDIFocuserDriver implements Board.L
 
     private void updatePowerBoxProperties() {
         pinsMap = new HashMap<>();
+        pinElements = new HashMap<>();
         if (digitalPinsProps != null) removeProperty(digitalPinsProps);
         if (pwmPinsProp != null) removeProperty(pwmPinsProp);
         removeProperty(ambientP);
@@ -621,8 +655,10 @@ public class INDIThunderFocusDriver extends INDIFocuserDriver implements Board.L
                         .group(GROUP_MAIN_CONTROL).switchRule(Constants.SwitchRules.ANY_OF_MANY).create();
                 for (ArduinoPin pin : digitalPins) {
                     String pinName = pin.getName();
-                    pinsMap.put(new INDIElementBuilder<>(INDISwitchElement.class, digitalPinsProps).name(pinName)
-                            .label(pinName).switchValue(pin.getValueINDI()).create(), pin);
+                    INDISwitchElement element = new INDIElementBuilder<>(INDISwitchElement.class, digitalPinsProps)
+                            .name(pinName).label(pinName).switchValue(pin.getValueINDI()).create();
+                    pinsMap.put(element, pin);
+                    pinElements.put(pin.getNumber(), element);
                 }
                 digitalPinsProps.setState(Constants.PropertyStates.OK);
                 addProperty(digitalPinsProps);
@@ -634,9 +670,11 @@ public class INDIThunderFocusDriver extends INDIFocuserDriver implements Board.L
                         .group(GROUP_MAIN_CONTROL).create();
                 for (ArduinoPin pin : pwmPins) {
                     String pinName = pin.getName();
-                    pinsMap.put(new INDIElementBuilder<>(INDINumberElement.class, pwmPinsProp).name(pinName)
-                            .label(pinName).step(1).numberFormat("%.0f")
-                            .maximum(255.0).numberValue(pin.getValuePWM()).create(), pin);
+                    INDINumberElement element = new INDIElementBuilder<>(INDINumberElement.class, pwmPinsProp)
+                            .name(pinName).label(pinName).step(1).numberFormat("%.0f")
+                            .maximum(255.0).numberValue(pin.getValuePWM()).create();
+                    pinsMap.put(element, pin);
+                    pinElements.put(pin.getNumber(), element);
                 }
                 pwmPinsProp.setState(Constants.PropertyStates.OK);
                 addProperty(pwmPinsProp);
@@ -700,6 +738,28 @@ public class INDIThunderFocusDriver extends INDIFocuserDriver implements Board.L
         }
     }
 
+    @Override
+    public void onPinsChanged(int[] changedPins) {
+        HashMap<INDIElement<?>, ArduinoPin> pinsMap = this.pinsMap;
+        HashMap<Integer, INDIElement<?>> pinElements = this.pinElements;
+        if ((pinsMap == null) || (pinElements == null)) return;
+        boolean digital = false, pwm = false;
+        for (int number : changedPins) {
+            INDIElement<?> element = pinElements.get(number);
+            ArduinoPin pin = pinsMap.get(element);
+            if (pin == null) continue;
+            if (element instanceof INDISwitchElement switchElement) {
+                switchElement.setValue(pin.getValueINDI());
+                digital = true;
+            } else if (element instanceof INDINumberElement numberElement) {
+                numberElement.setValue((double) pin.getValuePWM());
+                pwm = true;
+            }
+        }
+        if (digital) updateProperty(digitalPinsProps);
+        if (pwm) updateProperty(pwmPinsProp);
+    }
+
     @Override
     public void updateFocuserState(Focuser.FocuserState focuserState) {
         if (focuserState == Focuser.FocuserState.NONE)
@@ -723,6 +783,7 @@ public class INDIThunderFocusDriver extends INDIFocuserDriver implements Board.L
                     pinsMap.clear();
                     pinsMap = null;
                 }
+                pinElements = null;
 
                 removeProperty(flatLightP);
                 removeProperty(flatBrightnessP);
@@ -742,7 +803,8 @@ public class INDIThunderFocusDriver extends INDIFocuserDriver implements Board.L
                 connectionProp.setState(Constants.PropertyStates.OK);
             }
             case ERROR -> connectionProp.setState(Constants.PropertyStates.ALERT);
-            case TIMEOUT -> connectionProp.setState(Constants.PropertyStates.BUSY);
+            case TIMEOUT, RECONNECTING -> connectionProp.setState(Constants.PropertyStates.BUSY);
+            case RECONNECTED -> connectionProp.setState(Constants.PropertyStates.OK);
         }
         updateProperty(connectionProp);
     }
@@ -0,0 +1,160 @@
+package io.github.marcocipriani01.thunderfocus.serial;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Splits the raw byte stream coming from the board into lines without allocating.
+ * Incoming bytes are copied into a reusable buffer, {@code '\r'} is dropped and every complete line
+ * is trimmed and handed to the consumer as a {@link CharSequence} view over that buffer.
+ * The view is only valid for the duration of the callback: call {@link Object#toString()} to keep it.
+ * <p>
+ * Without trimming, lines are split like {@link java.io.BufferedReader#readLine()} instead: {@code '\n'},
+ * {@code '\r'} and {@code "\r\n"} all end a line, and every line, even an empty one, is decoded from UTF-8 into
+ * a new {@code String}.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+public class LineFramer {
+
+    /**
+     * Default maximum line length, large enough for the config frame of a board with 54 pins.
+     */
+    public static final int DEFAULT_CAPACITY = 4096;
+    private final byte[] buffer;
+    private final Line line = new Line();
+    private final Consumer<CharSequence> consumer;
+    private final boolean trim;
+    private int length = 0;
+    private boolean discarding = false;
+    private boolean skipLF = false;
+
+    /**
+     * Class constructor.
+     *
+     * @param consumer the object that will receive the lines.
+     */
+    public LineFramer(Consumer<CharSequence> consumer) {
+        this(DEFAULT_CAPACITY, consumer);
+    }
+
+    /**
+     * Class constructor.
+     *
+     * @param capacity the maximum length of a line, longer lines are discarded.
+     * @param consumer the object that will receive the lines.
+     */
+    public LineFramer(int capacity, Consumer<CharSequence> consumer) {
+        this(capacity, true, consumer);
+    }
+
+    /**
+     * Class constructor.
+     *
+     * @param capacity the maximum length of a line, longer lines are discarded.
+     * @param trim     {@code true} to trim the lines and skip the blank ones, {@code false} to split them like
+     *                 {@link java.io.BufferedReader#readLine()}.
+     * @param consumer the object that will receive the lines.
+     */
+    public LineFramer(int capacity, boolean trim, Consumer<CharSequence> consumer) {
+        if (capacity <= 0) throw new IllegalArgumentException("Invalid capacity!");
+        this.buffer = new byte[capacity];
+        this.trim = trim;
+        this.consumer = consumer;
+    }
+
+    /**
+     * Appends some bytes to the buffer and dispatches all the lines completed by them.
+     *
+     * @param data   the received bytes.
+     * @param offset the index of the first byte to read.
+     * @param count  the number of bytes to read.
+     */
+    public void feed(byte[] data, int offset, int count) {
+        final int end = offset + count;
+        for (int i = offset; i < end; i++) {
+            byte b = data[i];
+            if (skipLF) {
+                skipLF = false;
+                if (b == '\n') continue;
+            }
+            if ((b == '\n') || ((b == '\r') && (!trim))) {
+                skipLF = (b == '\r');
+                if (discarding) discarding = false;
+                else dispatch();
+                length = 0;
+            } else if (b != '\r') {
+                if (length == buffer.length) {
+                    if (!discarding) System.err.println("Serial line too long, discarding it.");
+                    discarding = true;
+                    length = 0;
+                }
+                if (!discarding) buffer[length++] = b;
+            }
+        }
+    }
+
+    /**
+     * Dispatches the incomplete line, if any, as {@link java.io.BufferedReader#readLine()} does at the end of the
+     * stream.
+     */
+    public void finish() {
+        if ((length != 0) && (!discarding)) dispatch();
+        reset();
+    }
+
+    /**
+     * Discards the incomplete line, if any.
+     */
+    public void reset() {
+        length = 0;
+        discarding = false;
+        skipLF = false;
+    }
+
+    private void dispatch() {
+        if (!trim) {
+            consumer.accept(new String(buffer, 0, length, StandardCharsets.UTF_8));
+            return;
+        }
+        int start = 0, stop = length;
+        while ((start < stop) && ((buffer[start] & 0xFF) <= ' ')) start++;
+        while ((stop > start) && ((buffer[stop - 1] & 0xFF) <= ' ')) stop--;
+        if (start == stop) return;
+        line.start = start;
+        line.end = stop;
+        consumer.accept(line);
+    }
+
+    /**
+     * ASCII view over a line stored in the buffer.
+     */
+    private final class Line implements CharSequence {
+
+        private int start;
+        private int end;
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if ((index < 0) || (index >= (end - start))) throw new IndexOutOfBoundsException(index);
+            return (char) (buffer[start + index] & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            if ((from < 0) || (to > (end - start)) || (from > to)) throw new IndexOutOfBoundsException();
+            return new String(buffer, start + from, to - from, StandardCharsets.ISO_8859_1);
+        }
+
+        @Override
+        public String toString() {
+            return new String(buffer, start, end - start, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package io.github.marcocipriani01.thunderfocus.serial;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * In-memory link to a {@link Device} created in the same process, for example a board emulator or a test harness:
+ * {@code pipe:name}. Bytes are delivered synchronously, on the thread that writes them.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+public class PipeTransport implements Transport {
+
+    /**
+     * Address prefix of in-memory boards.
+     */
+    public static final String SCHEME = "pipe:";
+    private static final ConcurrentHashMap<String, Device> DEVICES = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<SerialMessageListener> listeners = new CopyOnWriteArrayList<>();
+    private final LineFramer framer = new LineFramer(this::dispatch);
+    private volatile Device device = null;
+
+    /**
+     * Class constructor.
+     */
+    public PipeTransport() {
+
+    }
+
+    /**
+     * Creates the board side of a pipe.
+     *
+     * @param name     the name of the pipe, to connect to with {@code pipe:name}.
+     * @param listener receives the frames sent to the board.
+     * @return the new device.
+     * @throws IllegalStateException if a device with the same name already exists.
+     */
+    public static Device createDevice(String name, SerialMessageListener listener) {
+        Device device = new Device(name, listener);
+        if (DEVICES.putIfAbsent(name, device) != null)
+            throw new IllegalStateException("Pipe already exists: " + name);
+        return device;
+    }
+
+    @Override
+    public synchronized void connect(String address) throws IOException {
+        if (isConnected()) throw new IllegalStateException("Already connected.");
+        String name = address.startsWith(SCHEME) ? address.substring(SCHEME.length()) : address;
+        Device d = DEVICES.get(name);
+        if (d == null) throw new IOException("No such pipe: " + name);
+        synchronized (d) {
+            if (d.host != null) throw new IOException("Pipe already in use: " + name);
+            framer.reset();
+            d.framer.reset();
+            d.host = this;
+        }
+        device = d;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return device != null;
+    }
+
+    @Override
+    public synchronized void disconnect() {
+        Device d = device;
+        device = null;
+        if (d != null) {
+            synchronized (d) {
+                if (d.host == this) d.host = null;
+            }
+        }
+    }
+
+    @Override
+    public void write(byte[] data) throws IOException {
+        write(data, 0, data.length);
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        Device d = device;
+        if (d == null) throw new IllegalStateException("Not connected.");
+        synchronized (d) {
+            if (d.host != this) throw new IOException("Pipe closed.");
+            d.framer.feed(data, offset, length);
+        }
+    }
+
+    @Override
+    public void addListener(SerialMessageListener listener) {
+        if (!listeners.addIfAbsent(listener))
+            throw new IllegalArgumentException("Listener already in the list!");
+    }
+
+    @Override
+    public void removeListener(SerialMessageListener listener) {
+        listeners.remove(listener);
+    }
+
+    private synchronized void receive(byte[] data, int offset, int length) {
+        if (device != null) framer.feed(data, offset, length);
+    }
+
+    private void dispatch(CharSequence line) {
+        for (SerialMessageListener l : listeners) {
+            l.onSerialMessage(line);
+        }
+    }
+
+    /**
+     * The board side of a pipe.
+     */
+    public static final class Device implements Closeable {
+
+        private final String name;
+        private final LineFramer framer;
+        private PipeTransport host = null;
+
+        private Device(String name, SerialMessageListener listener) {
+            this.name = name;
+            this.framer = new LineFramer(listener::onSerialMessage);
+        }
+
+        /**
+         * @return {@code true} if a transport is connected to this device.
+         */
+        public synchronized boolean isConnected() {
+            return host != null;
+        }
+
+        /**
+         * Sends a frame to the connected transport, if any.
+         *
+         * @param frame the frame, without the line terminator.
+         */
+        public void println(String frame) {
+            byte[] data = (frame + "\n").getBytes(StandardCharsets.US_ASCII);
+            write(data, 0, data.length);
+        }
+
+        /**
+         * Sends some bytes to the connected transport, if any.
+         */
+        public void write(byte[] data, int offset, int length) {
+            PipeTransport h;
+            synchronized (this) {
+                h = host;
+            }
+            if (h != null) h.receive(data, offset, length);
+        }
+
+        /**
+         * Removes the device. The connected transport, if any, is disconnected and notified with an error.
+         */
+        @Override
+        public void close() {
+            DEVICES.remove(name, this);
+            PipeTransport h;
+            synchronized (this) {
+                h = host;
+                host = null;
+            }
+            if (h != null) {
+                h.disconnect();
+                for (SerialMessageListener l : h.listeners) {
+                    l.onSerialError(new IOException("Pipe closed: " + name));
+                }
+            }
+        }
+    }
+}
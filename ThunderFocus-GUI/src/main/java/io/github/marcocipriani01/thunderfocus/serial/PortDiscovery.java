@@ -0,0 +1,210 @@
+package io.github.marcocipriani01.thunderfocus.serial;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the ThunderFocus boards attached to the serial ports. Every port is opened on its own thread and asked for
+ * its config with {@code $C}: a board answers with {@code C<version>;...}, anything else (or silence) means the
+ * port belongs to some other device. Results are cached until the port disappears, so a port is probed only once
+ * and the boards aren't reset by every refresh.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+public final class PortDiscovery {
+
+    /**
+     * Maximum time a port is kept open waiting for the config. Opening the port resets most Arduino boards, which
+     * then spend up to two seconds in the bootloader.
+     */
+    public static final long PROBE_TIMEOUT_MS = 3000L;
+    private static final long REQUEST_RETRY_DELAY_MS = 250L;
+    private static final byte[] CONFIG_REQUEST = "$C\n".getBytes(StandardCharsets.US_ASCII);
+    private static final Pattern CONFIG_FRAME = Pattern.compile("C(\\d+(?:\\.\\d+)*);.*");
+    private final ConcurrentHashMap<String, Port> cache = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Transport> probing = new ConcurrentHashMap<>();
+    private final ExecutorService probes = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "Port probe");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Class constructor.
+     */
+    public PortDiscovery() {
+
+    }
+
+    /**
+     * @param frame a frame received from a port.
+     * @return the firmware version, if the frame is the config of a ThunderFocus board, or {@code null}.
+     */
+    static String parseVersion(CharSequence frame) {
+        Matcher m = CONFIG_FRAME.matcher(frame);
+        return m.matches() ? m.group(1) : null;
+    }
+
+    /**
+     * @param port a port name.
+     * @return the firmware version of the ThunderFocus board last found on the port, or {@code null}.
+     */
+    public String getBoardVersion(String port) {
+        if (port == null) return null;
+        Port p = cache.get(port);
+        return (p == null) ? null : p.version();
+    }
+
+    /**
+     * Lists the serial ports and probes the ones not probed yet, in parallel.
+     *
+     * @param inUse    a port currently used by the app, which can't be opened: it's reported from the cache.
+     *                 May be {@code null}.
+     * @param onResult called once per port, on the thread that probed it, as soon as its result is known.
+     * @return all the ports, in the order of {@link SerialPortImpl#scanSerialPorts()}, when every probe is done.
+     */
+    public CompletableFuture<List<Port>> discover(String inUse, Consumer<Port> onResult) {
+        return CompletableFuture.supplyAsync(SerialPortImpl::scanSerialPorts, probes).thenCompose(names -> {
+            cache.keySet().retainAll(new HashSet<>(Arrays.asList(names)));
+            List<CompletableFuture<Port>> results = new ArrayList<>(names.length);
+            for (String name : names) {
+                Port cached = cache.get(name);
+                CompletableFuture<Port> result;
+                if ((cached != null) || name.equals(inUse)) {
+                    result = CompletableFuture.completedFuture(Objects.requireNonNullElse(cached, new Port(name, null)));
+                } else {
+                    result = CompletableFuture.supplyAsync(() -> probePort(name), probes);
+                }
+                results.add(result.whenComplete((p, e) -> {
+                    if (p != null) onResult.accept(p);
+                }));
+            }
+            return CompletableFuture.allOf(results.toArray(CompletableFuture<?>[]::new))
+                    .thenApply(v -> results.stream().map(CompletableFuture::join).toList());
+        });
+    }
+
+    /**
+     * Closes the port, if it's being probed, so that it can be opened by the board. The result of the probe is
+     * discarded.
+     *
+     * @param port the port name.
+     */
+    public void release(String port) {
+        Transport t = probing.remove(port);
+        if (t != null) {
+            try {
+                t.disconnect();
+            } catch (IOException ignored) {
+            }
+        }
+        cache.remove(port);
+    }
+
+    /**
+     * @param port a port name.
+     * @return {@code true} if the result of the last probe of the port is remembered.
+     */
+    boolean isCached(String port) {
+        return cache.containsKey(port);
+    }
+
+    /**
+     * Forgets all the results, so that every port is probed again.
+     */
+    public void clearCache() {
+        cache.clear();
+    }
+
+    /**
+     * Opens a port and asks for the config, doubling the delay between requests, until a board answers or
+     * {@value #PROBE_TIMEOUT_MS} ms have passed.
+     *
+     * @param address the port name, or any address supported by {@link Transport#forAddress(String)}.
+     * @return the firmware version, or {@code null} if the port isn't a ThunderFocus board.
+     */
+    public String probe(String address) {
+        return probePort(address).version();
+    }
+
+    private Port probePort(String address) {
+        CompletableFuture<String> version = new CompletableFuture<>();
+        Transport t = Transport.forAddress(address);
+        t.addListener(new SerialMessageListener() {
+            @Override
+            public void onSerialMessage(CharSequence msg) {
+                String v = parseVersion(msg);
+                if (v != null) version.complete(v);
+            }
+
+            @Override
+            public void onSerialError(Exception e) {
+                version.complete(null);
+            }
+        });
+        String result = null;
+        boolean opened = false, released;
+        // Registered before opening, so that release() can close a port that is still being opened
+        probing.put(address, t);
+        try {
+            t.connect(address);
+            opened = true;
+            if (probing.get(address) != t) return new Port(address, null);
+            long start = System.currentTimeMillis(), delay = REQUEST_RETRY_DELAY_MS, elapsed;
+            t.write(CONFIG_REQUEST);
+            while ((result == null) && ((elapsed = System.currentTimeMillis() - start) < PROBE_TIMEOUT_MS)) {
+                try {
+                    result = version.get(Math.min(delay, PROBE_TIMEOUT_MS - elapsed), TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException e) {
+                    if (!t.isConnected()) break;
+                    t.write(CONFIG_REQUEST);
+                    delay *= 2L;
+                }
+            }
+        } catch (Exception ignored) {
+        } finally {
+            released = !probing.remove(address, t);
+            try {
+                t.disconnect();
+            } catch (IOException ignored) {
+            }
+        }
+        // Don't remember ports closed by release(), they weren't probed until the end, nor the ones that couldn't be
+        // opened (busy, no permission): they may be available next time
+        Port p = new Port(address, (result == null) ? version.getNow(null) : result);
+        if (opened && (!released)) cache.put(address, p);
+        return p;
+    }
+
+    /**
+     * A serial port.
+     *
+     * @param name    the port name.
+     * @param version the firmware version of the ThunderFocus board attached to it, or {@code null}.
+     */
+    public record Port(String name, String version) {
+
+        /**
+         * @return {@code true} if a ThunderFocus board is attached to the port.
+         */
+        public boolean isBoard() {
+            return version != null;
+        }
+    }
+}
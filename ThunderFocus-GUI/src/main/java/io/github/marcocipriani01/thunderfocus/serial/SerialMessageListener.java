@@ -11,10 +11,11 @@ public interface SerialMessageListener {
 
     /**
      * Called when a new message is received from the serial port.
+     * The message is a view over the receive buffer, valid only until this method returns.
      *
-     * @param msg the received message.
+     * @param msg the received message, already trimmed and never empty.
      */
-    void onSerialMessage(final String msg);
+    void onSerialMessage(final CharSequence msg);
 
     /**
      * Called when an error occurred while communicating with the serial port.
@@ -3,9 +3,11 @@ package io.github.marcocipriani01.thunderfocus.serial;
 import io.github.marcocipriani01.thunderfocus.Main;
 import jssc.*;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 
 /**
@@ -16,7 +18,7 @@ import java.util.ArrayList;
  * @see <a href="https://github.com/scream3r/java-simple-serial-connector">jSSC on GitHub</a>
  */
 @SuppressWarnings("unused")
-public class SerialPortImpl implements SerialPortEventListener {
+public class SerialPortImpl implements Transport, SerialPortEventListener {
 
     /**
      * List of all the listeners.
@@ -26,7 +28,7 @@ public class SerialPortImpl implements SerialPortEventListener {
      * An instance of the {@link SerialPort} class.
      */
     protected volatile SerialPort serialPort = null;
-    private String buf = "";
+    private final LineFramer framer = new LineFramer(this::dispatch);
 
     /**
      * Class constructor.
@@ -36,32 +38,54 @@ public class SerialPortImpl implements SerialPortEventListener {
     }
 
     /**
-     * Serial ports discovery.
+     * Serial ports discovery. Doesn't open the ports, see {@link PortDiscovery} to find the boards.
      *
-     * @return an array containing all the available and not busy ports.
+     * @return an array containing all the available ports.
      */
     public static String[] scanSerialPorts() {
-        if (Main.OPERATING_SYSTEM == Main.OperatingSystem.MACOS) {
-            try {
-                Process process = new ProcessBuilder("ls", "-1", "/dev/tty.*").start();
-                BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()));
-                String line;
+        switch (Main.OPERATING_SYSTEM) {
+            case LINUX -> {
+                String[] ports = scanSysfs();
+                if (ports != null) return ports;
+            }
+            case MACOS -> {
                 ArrayList<String> devs = new ArrayList<>();
-                while ((line = in.readLine()) != null) {
-                    devs.add(line);
-                }
-                try {
-                    process.waitFor();
-                } catch (InterruptedException ignored) {
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get("/dev"), "tty.*")) {
+                    for (Path p : stream) {
+                        devs.add(p.toString());
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
                 }
+                devs.sort(null);
                 return devs.toArray(new String[0]);
-            } catch (IOException e) {
-                e.printStackTrace();
             }
         }
         return SerialPortList.getPortNames();
     }
 
+    /**
+     * Lists the ttys backed by a device in {@code /sys/class/tty}, skipping the placeholders the 8250 driver
+     * creates for legacy ports that don't exist.
+     *
+     * @return the ports, or {@code null} if sysfs can't be read.
+     */
+    private static String[] scanSysfs() {
+        Path sysfs = Paths.get("/sys/class/tty");
+        ArrayList<String> devs = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(sysfs)) {
+            for (Path tty : stream) {
+                Path device = tty.resolve("device");
+                if ((!Files.exists(device)) || device.toRealPath().toString().contains("/serial8250")) continue;
+                devs.add("/dev/" + tty.getFileName());
+            }
+        } catch (IOException | SecurityException e) {
+            return null;
+        }
+        devs.sort(null);
+        return devs.toArray(new String[0]);
+    }
+
     /**
      * Connects a board to this object.
      *
@@ -70,6 +94,7 @@ public class SerialPortImpl implements SerialPortEventListener {
      */
     public void connect(String port, int rate) throws SerialPortException {
         if (isConnected()) throw new IllegalStateException("Already connected.");
+        framer.reset();
         serialPort = new SerialPort(port);
         serialPort.openPort();
         serialPort.setParams(rate, SerialPort.DATABITS_8, SerialPort.STOPBITS_1, SerialPort.PARITY_NONE, true, true);
@@ -82,8 +107,13 @@ public class SerialPortImpl implements SerialPortEventListener {
      *
      * @param port the port.
      */
-    public void connect(String port) throws SerialPortException {
-        connect(port, SerialPort.BAUDRATE_115200);
+    @Override
+    public void connect(String port) throws IOException {
+        try {
+            connect(port, SerialPort.BAUDRATE_115200);
+        } catch (SerialPortException e) {
+            throw new IOException("Could not connect to " + port + "!", e);
+        }
     }
 
     /**
@@ -91,6 +121,7 @@ public class SerialPortImpl implements SerialPortEventListener {
      *
      * @return {@code true} if the board is connected, {@code false} if otherwise.
      */
+    @Override
     public boolean isConnected() {
         return (serialPort != null) && serialPort.isOpened();
     }
@@ -100,6 +131,7 @@ public class SerialPortImpl implements SerialPortEventListener {
      *
      * @see #connect
      */
+    @Override
     public void disconnect() throws IOException {
         if (serialPort == null) return;
         try {
@@ -111,16 +143,31 @@ public class SerialPortImpl implements SerialPortEventListener {
         }
     }
 
+    /**
+     * Writes some bytes to the connected board.
+     *
+     * @param data the bytes you want to send.
+     */
+    @Override
+    public void write(byte[] data) throws IOException {
+        SerialPort port = serialPort;
+        if ((port == null) || (!port.isOpened()))
+            throw new IllegalStateException("Not connected.");
+        try {
+            if (!port.writeBytes(data))
+                throw new IOException("Could not write serial message.");
+        } catch (SerialPortException e) {
+            throw new IOException("Could not write serial message.", e);
+        }
+    }
+
     /**
      * Prints a {@code String} to the connected board.
      *
      * @param message the message you want to send.
      */
-    public void print(String message) throws SerialPortException, IOException {
-        if (!isConnected())
-            throw new IllegalStateException("Not connected.");
-        if (!serialPort.writeBytes(message.getBytes()))
-            throw new IOException("Could not write serial message.");
+    public void print(String message) throws IOException {
+        write(message.getBytes());
     }
 
     /**
@@ -128,7 +175,7 @@ public class SerialPortImpl implements SerialPortEventListener {
      *
      * @param message the message you want to send.
      */
-    public void println(String message) throws SerialPortException, IOException {
+    public void println(String message) throws IOException {
         print(message + "\n");
     }
 
@@ -146,6 +193,7 @@ public class SerialPortImpl implements SerialPortEventListener {
      *
      * @param listener a listener to add.
      */
+    @Override
     public void addListener(SerialMessageListener listener) {
         if (listeners.contains(listener)) {
             throw new IllegalArgumentException("Listener already in the list!");
@@ -158,6 +206,7 @@ public class SerialPortImpl implements SerialPortEventListener {
      *
      * @param listener a listener to remove.
      */
+    @Override
     public void removeListener(SerialMessageListener listener) {
         listeners.remove(listener);
     }
@@ -170,24 +219,18 @@ public class SerialPortImpl implements SerialPortEventListener {
     @Override
     public void serialEvent(SerialPortEvent portEvent) {
         try {
-            String in = serialPort.readString();
-            if (in != null && !in.isEmpty()) {
-                String[] split = (buf + in.replace("\r", "")).split("\n", 0);
-                boolean b = in.endsWith("\n");
-                for (int i = 0; i < (b ? split.length : (split.length - 1)); i++) {
-                    split[i] = split[i].trim();
-                    if (split[i] != null && !split[i].isEmpty()) {
-                        for (SerialMessageListener l : listeners) {
-                            l.onSerialMessage(split[i]);
-                        }
-                    }
-                }
-                buf = b ? "" : split[split.length - 1];
-            }
+            byte[] in = serialPort.readBytes();
+            if (in != null) framer.feed(in, 0, in.length);
         } catch (SerialPortException e) {
             for (SerialMessageListener l : listeners) {
                 l.onSerialError(e);
             }
         }
     }
+
+    private void dispatch(CharSequence line) {
+        for (SerialMessageListener l : listeners) {
+            l.onSerialMessage(line);
+        }
+    }
 }
\ No newline at end of file
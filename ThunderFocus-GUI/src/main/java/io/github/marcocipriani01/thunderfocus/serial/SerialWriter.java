@@ -0,0 +1,245 @@
+package io.github.marcocipriani01.thunderfocus.serial;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Sends frames to the board from a single writer thread, so that the callers never block on the serial line.
+ * Frames are queued in a bounded queue that any thread can feed. A frame with a coalescing key replaces the
+ * last queued frame if it has the same key and hasn't been written yet: the callers of both frames get the same
+ * future, completed when the surviving frame is written. Frames queued while the previous write was in progress
+ * are sent together in a single write, which over a network link means a single packet.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+public class SerialWriter {
+
+    /**
+     * Coalescing key for frames that must always be sent.
+     */
+    public static final long NO_COALESCING = -1L;
+    /**
+     * Default maximum number of queued frames.
+     */
+    public static final int DEFAULT_CAPACITY = 64;
+    private static final long ENQUEUE_TIMEOUT_MS = 1000L;
+    private static final long CLOSE_TIMEOUT_MS = 1000L;
+    private static final int BATCH_BYTES = 1024;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final ArrayDeque<Frame> queue;
+    private final int capacity;
+    private final Transport port;
+    private final Consumer<Exception> onError;
+    private volatile Consumer<byte[]> onWritten = null;
+    private Thread thread = null;
+    private boolean running = false;
+
+    /**
+     * Class constructor.
+     *
+     * @param port    the port to write to.
+     * @param onError called from the writer thread when a write fails. All the queued frames are discarded.
+     */
+    public SerialWriter(Transport port, Consumer<Exception> onError) {
+        this(port, DEFAULT_CAPACITY, onError);
+    }
+
+    /**
+     * Class constructor.
+     *
+     * @param port     the port to write to.
+     * @param capacity the maximum number of queued frames.
+     * @param onError  called from the writer thread when a write fails. All the queued frames are discarded.
+     */
+    public SerialWriter(Transport port, int capacity, Consumer<Exception> onError) {
+        this.port = port;
+        this.capacity = capacity;
+        this.queue = new ArrayDeque<>(capacity);
+        this.onError = onError;
+    }
+
+    /**
+     * Sets a callback that receives every frame after it has been written, from the writer thread.
+     *
+     * @param onWritten the callback, or {@code null}.
+     */
+    public void setOnWritten(Consumer<byte[]> onWritten) {
+        this.onWritten = onWritten;
+    }
+
+    /**
+     * Starts the writer thread.
+     */
+    public void start() {
+        lock.lock();
+        try {
+            if (running) throw new IllegalStateException("Already running.");
+            running = true;
+            thread = new Thread(this::loop, "Serial writer");
+            thread.setDaemon(true);
+            thread.start();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queues a frame.
+     *
+     * @param coalescingKey a key identifying the frames that supersede each other, or {@link #NO_COALESCING}.
+     * @param data          the bytes to send.
+     * @return a future completed when the frame has been written.
+     * @throws IOException if the writer isn't running or the queue stays full for too long.
+     */
+    public CompletableFuture<Void> enqueue(long coalescingKey, byte[] data) throws IOException {
+        lock.lock();
+        try {
+            if (!running) throw new IOException("Serial writer not running.");
+            if (coalescingKey != NO_COALESCING) {
+                Frame last = queue.peekLast();
+                if ((last != null) && (last.key == coalescingKey)) {
+                    last.data = data;
+                    return last.future;
+                }
+            }
+            long nanos = TimeUnit.MILLISECONDS.toNanos(ENQUEUE_TIMEOUT_MS);
+            while (queue.size() >= capacity) {
+                if (nanos <= 0L) throw new IOException("Serial write queue full.");
+                nanos = notFull.awaitNanos(nanos);
+                if (!running) throw new IOException("Serial writer not running.");
+            }
+            Frame frame = new Frame(coalescingKey, data);
+            queue.addLast(frame);
+            notEmpty.signal();
+            return frame.future;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the serial write queue.", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of frames waiting to be written.
+     */
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops the writer thread once all the queued frames have been written.
+     * Waits for the thread to terminate, unless called from the writer thread itself.
+     */
+    public void close() {
+        Thread t;
+        lock.lock();
+        try {
+            if (!running) return;
+            running = false;
+            notEmpty.signalAll();
+            notFull.signalAll();
+            t = thread;
+            thread = null;
+        } finally {
+            lock.unlock();
+        }
+        if ((t != null) && (t != Thread.currentThread())) {
+            try {
+                t.join(CLOSE_TIMEOUT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void loop() {
+        ArrayList<Frame> batch = new ArrayList<>();
+        byte[] buffer = new byte[BATCH_BYTES];
+        while (true) {
+            int length = 0;
+            lock.lock();
+            try {
+                while (queue.isEmpty() && running) {
+                    notEmpty.awaitUninterruptibly();
+                }
+                Frame frame;
+                while (((frame = queue.peekFirst()) != null) &&
+                        (batch.isEmpty() || ((length + frame.data.length) <= BATCH_BYTES))) {
+                    queue.pollFirst();
+                    batch.add(frame);
+                    length += frame.data.length;
+                }
+                if (batch.isEmpty()) return;
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            try {
+                if (batch.size() == 1) {
+                    port.write(batch.get(0).data);
+                } else {
+                    int i = 0;
+                    for (Frame f : batch) {
+                        System.arraycopy(f.data, 0, buffer, i, f.data.length);
+                        i += f.data.length;
+                    }
+                    port.write(buffer, 0, length);
+                }
+                Consumer<byte[]> callback = onWritten;
+                for (Frame f : batch) {
+                    if (callback != null) callback.accept(f.data);
+                    f.future.complete(null);
+                }
+                batch.clear();
+            } catch (Exception e) {
+                for (Frame f : batch) {
+                    f.future.completeExceptionally(e);
+                }
+                failAll(e);
+                onError.accept(e);
+                return;
+            }
+        }
+    }
+
+    private void failAll(Exception e) {
+        lock.lock();
+        try {
+            running = false;
+            Frame frame;
+            while ((frame = queue.pollFirst()) != null) {
+                frame.future.completeExceptionally(e);
+            }
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class Frame {
+
+        private final long key;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private byte[] data;
+
+        private Frame(long key, byte[] data) {
+            this.key = key;
+            this.data = data;
+        }
+    }
+}
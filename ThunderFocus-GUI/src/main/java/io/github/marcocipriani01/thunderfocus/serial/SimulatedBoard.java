@@ -0,0 +1,536 @@
+package io.github.marcocipriani01.thunderfocus.serial;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process ThunderFocus board with a focuser, a power box (ambient sensor and RTC) and a flat panel with a
+ * servo-driven cover, implementing the same text protocol as the firmware. The focuser accelerates and decelerates
+ * like the real stepper, so moves produce the usual {@code M}, {@code S}, {@code A}, {@code H} and {@code P} frames.
+ * All the frames are delivered on a single daemon thread, in order.
+ * <p>
+ * Address: {@code sim:} optionally followed by comma-separated options, for example
+ * {@code sim:latency=20,jitter=5,rate=50}:
+ * <ul>
+ *     <li>{@code latency} - delay of every frame in each direction, in milliseconds (default 0)</li>
+ *     <li>{@code jitter} - maximum random delay added to the latency, in milliseconds (default 0)</li>
+ *     <li>{@code rate} - position updates per second while moving (default 10)</li>
+ *     <li>{@code ambient} - interval between ambient data frames, in milliseconds (default 10000)</li>
+ *     <li>{@code sun} - interval between sun elevation frames and auto mode updates, in milliseconds (default 30000)</li>
+ *     <li>{@code pins} - number of power box pins (default 4)</li>
+ *     <li>{@code seed} - seed of the jitter and sensor noise, for reproducible runs</li>
+ * </ul>
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+public class SimulatedBoard implements Transport {
+
+    /**
+     * Address prefix of simulated boards.
+     */
+    public static final String SCHEME = "sim:";
+    private static final String VERSION = "6.1";
+    private static final long TICK_MS = 10L;
+    private static final double ACCELERATION = 1000.0;
+    private static final double PPS_MIN = 100.0;
+    private static final double PPS_MAX = 15000.0;
+    private static final long POWER_TIMEOUT_MS = 60000L;
+    private static final int AUTO_MODE_NONE = 12;
+    private static final double PWM_THRESHOLD = 60.0;
+    private static final double OFFSET_FACTOR = 0.4;
+    private static final int COVER_MOVING = 0, COVER_CLOSED = 1, COVER_OPEN = 2, COVER_HALT = 3;
+    private final CopyOnWriteArrayList<SerialMessageListener> listeners = new CopyOnWriteArrayList<>();
+    private final LineFramer framer = new LineFramer(this::execute);
+    private volatile ScheduledExecutorService scheduler = null;
+    private Random random;
+    private long latencyNanos, jitterNanos, syncInterval, ambientInterval, sunInterval;
+    private long lastReceive, lastDelivery;
+    private long startTime, time;
+    // Focuser
+    private double pos, velocity, maxSpeed;
+    private long target, lastSentPos, lastSyncTime, lastMoveTime;
+    private int speed, backlash;
+    private boolean invertDir, powerSaver, moving, motorEnabled;
+    private char focuserState;
+    // Power box
+    private int[] pinNumbers, pinValues;
+    private boolean[] pinPwm, pinPwmEn, pinAuto;
+    private int autoMode;
+    private double temperature, humidity, dewPoint, latitude, longitude;
+    private long lastAmbientTime, lastSunTime;
+    // Flat panel
+    private boolean light, configSent;
+    private int brightness, openServo, closedServo, servoSpeed, coverStatus, coverTarget;
+    private long coverArrival;
+
+    /**
+     * Class constructor.
+     */
+    public SimulatedBoard() {
+
+    }
+
+    private static double dewPoint(double t, double rh) {
+        double gamma = Math.log(rh / 100.0) + (17.62 * t) / (243.12 + t);
+        return 243.12 * gamma / (17.62 - gamma);
+    }
+
+    private static int pwmMap(double in, double min, double max) {
+        if (in <= min) return 0;
+        if (in >= max) return 255;
+        return (int) ((in - min) * (255.0 - PWM_THRESHOLD) / (max - min) + PWM_THRESHOLD);
+    }
+
+    private static String format(double d, int decimals) {
+        return String.format(Locale.ROOT, "%." + decimals + "f", d);
+    }
+
+    @Override
+    public synchronized void connect(String address) throws IOException {
+        if (isConnected()) throw new IllegalStateException("Already connected.");
+        long latency = 0L, jitter = 0L, seed = System.nanoTime();
+        int rate = 10, pins = 4;
+        ambientInterval = 10000L;
+        sunInterval = 30000L;
+        String options = address.startsWith(SCHEME) ? address.substring(SCHEME.length()) : address;
+        try {
+            for (String option : options.split(",")) {
+                if (option.isBlank()) continue;
+                int eq = option.indexOf('=');
+                if (eq < 0) throw new IOException("Invalid simulator option: " + option);
+                long value = Long.parseLong(option.substring(eq + 1).trim());
+                if (value < 0) throw new IOException("Invalid simulator option: " + option);
+                switch (option.substring(0, eq).trim()) {
+                    case "latency" -> latency = value;
+                    case "jitter" -> jitter = value;
+                    case "rate" -> rate = (int) Math.max(value, 1L);
+                    case "ambient" -> ambientInterval = Math.max(value, 1L);
+                    case "sun" -> sunInterval = Math.max(value, 1L);
+                    case "pins" -> pins = (int) Math.min(Math.max(value, 1L), 54L);
+                    case "seed" -> seed = value;
+                    default -> throw new IOException("Unknown simulator option: " + option);
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid simulator address: " + address, e);
+        }
+        latencyNanos = TimeUnit.MILLISECONDS.toNanos(latency);
+        jitterNanos = TimeUnit.MILLISECONDS.toNanos(jitter);
+        syncInterval = 1000L / rate;
+        random = new Random(seed);
+        reset(pins);
+        framer.reset();
+        ScheduledExecutorService s = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "Simulated board");
+            t.setDaemon(true);
+            return t;
+        });
+        s.scheduleAtFixedRate(this::tick, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+        scheduler = s;
+    }
+
+    private void reset(int pins) {
+        startTime = time = System.currentTimeMillis();
+        lastReceive = lastDelivery = 0L;
+        pos = velocity = 0.0;
+        target = lastSentPos = 0L;
+        speed = 50;
+        maxSpeed = speed * (PPS_MAX - PPS_MIN) / 100.0 + PPS_MIN;
+        backlash = 0;
+        invertDir = moving = motorEnabled = configSent = false;
+        powerSaver = true;
+        focuserState = 'P';
+        lastSyncTime = lastMoveTime = lastAmbientTime = lastSunTime = time;
+        pinNumbers = new int[pins];
+        pinValues = new int[pins];
+        pinPwm = new boolean[pins];
+        pinPwmEn = new boolean[pins];
+        pinAuto = new boolean[pins];
+        for (int i = 0; i < pins; i++) {
+            pinNumbers[i] = 2 + i;
+            pinPwm[i] = pinPwmEn[i] = ((i % 4) != 3);
+        }
+        autoMode = AUTO_MODE_NONE;
+        latitude = 41.9;
+        longitude = 12.5;
+        updateAmbient();
+        light = false;
+        brightness = 255;
+        openServo = 270;
+        closedServo = 0;
+        servoSpeed = 5;
+        coverStatus = coverTarget = COVER_CLOSED;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return scheduler != null;
+    }
+
+    @Override
+    public synchronized void disconnect() {
+        ScheduledExecutorService s = scheduler;
+        scheduler = null;
+        // Never waits: the scheduler thread may be blocked on a listener that is disconnecting us
+        if (s != null) s.shutdownNow();
+    }
+
+    @Override
+    public void write(byte[] data) throws IOException {
+        ScheduledExecutorService s = scheduler;
+        if (s == null) throw new IllegalStateException("Not connected.");
+        byte[] copy = data.clone();
+        try {
+            s.schedule(() -> framer.feed(copy, 0, copy.length), receiveDelay(), TimeUnit.NANOSECONDS);
+        } catch (Exception e) {
+            throw new IOException("Could not write to the simulated board.", e);
+        }
+    }
+
+    @Override
+    public void addListener(SerialMessageListener listener) {
+        if (!listeners.addIfAbsent(listener))
+            throw new IllegalArgumentException("Listener already in the list!");
+    }
+
+    @Override
+    public void removeListener(SerialMessageListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * The link never reorders bytes, so every frame is delivered after the previous one even with jitter.
+     */
+    private synchronized long receiveDelay() {
+        long now = System.nanoTime();
+        lastReceive = Math.max(lastReceive, now + latencyNanos + nextJitter());
+        return lastReceive - now;
+    }
+
+    private long nextJitter() {
+        return (jitterNanos > 0L) ? (long) (random.nextDouble() * jitterNanos) : 0L;
+    }
+
+    private void send(String frame) {
+        ScheduledExecutorService s = scheduler;
+        if (s == null) return;
+        if ((latencyNanos == 0L) && (jitterNanos == 0L)) {
+            dispatch(frame);
+            return;
+        }
+        long now = System.nanoTime();
+        lastDelivery = Math.max(lastDelivery, now + latencyNanos + nextJitter());
+        try {
+            s.schedule(() -> dispatch(frame), lastDelivery - now, TimeUnit.NANOSECONDS);
+        } catch (Exception ignored) {
+        }
+    }
+
+    private void dispatch(String frame) {
+        if (scheduler == null) return;
+        for (SerialMessageListener l : listeners) {
+            l.onSerialMessage(frame);
+        }
+    }
+
+    private void execute(CharSequence line) {
+        int start = line.toString().indexOf('$');
+        if ((start < 0) || (start + 1 >= line.length())) return;
+        char cmd = line.charAt(start + 1);
+        String[] tokens = line.subSequence(start + 2, line.length()).toString().split("%");
+        int[] p = new int[tokens.length];
+        int n = 0;
+        for (String token : tokens) {
+            if (token.isEmpty()) continue;
+            try {
+                p[n++] = Integer.parseInt(token);
+            } catch (NumberFormatException e) {
+                return;
+            }
+        }
+        if (n < paramsCount(cmd)) return;
+        time = System.currentTimeMillis();
+        switch (cmd) {
+            case 'C' -> sendConfig();
+            case 'R' -> moveTo(Math.round(pos) + p[0]);
+            case 'A' -> moveTo(p[0]);
+            case 'S' -> {
+                if (moving) {
+                    double stop = (velocity * velocity) / (2.0 * ACCELERATION);
+                    target = Math.round(pos + Math.signum(velocity) * stop);
+                }
+            }
+            case 'P' -> setPosition(p[0]);
+            case 'W' -> setPosition(0);
+            case 'H' -> powerSaver = (p[0] != 0);
+            case 'V' -> {
+                speed = Math.min(Math.max(p[0], 0), 100);
+                maxSpeed = speed * (PPS_MAX - PPS_MIN) / 100.0 + PPS_MIN;
+            }
+            case 'B' -> backlash = p[0];
+            case 'D' -> invertDir = (p[0] != 0);
+            case 'X' -> {
+                int i = pinIndex(p[0]);
+                if (i >= 0) pinValues[i] = pinPwmEn[i] ? Math.min(Math.max(p[1], 0), 255) : ((p[1] > 100) ? 255 : 0);
+            }
+            case 'J' -> {
+                int i = pinIndex(p[0]);
+                if ((i >= 0) && pinPwm[i] && (pinPwmEn[i] != (p[1] != 0))) {
+                    pinPwmEn[i] = (p[1] != 0);
+                    boolean changed = false;
+                    if (pinAuto[i]) {
+                        changed = processAutoMode();
+                    } else if (!pinPwmEn[i]) {
+                        int old = pinValues[i];
+                        pinValues[i] = (old > 100) ? 255 : 0;
+                        changed = (old != pinValues[i]);
+                    }
+                    if (changed) sendPins();
+                }
+            }
+            case 'K' -> {
+                autoMode = ((p[0] >= 0) && (p[0] < AUTO_MODE_NONE)) ? p[0] : AUTO_MODE_NONE;
+                processAutoMode();
+                sendPins();
+            }
+            case 'Y' -> {
+                int i = pinIndex(p[0]);
+                if ((i >= 0) && (pinAuto[i] != (p[1] != 0))) {
+                    pinAuto[i] = (p[1] != 0);
+                    boolean changed;
+                    if (pinAuto[i]) {
+                        changed = processAutoMode();
+                    } else {
+                        changed = (pinValues[i] != 0);
+                        pinValues[i] = 0;
+                    }
+                    if (changed) sendPins();
+                }
+            }
+            case 'T' -> {
+                if ((p[1] != 0) && (p[2] != 0)) {
+                    latitude = p[1] / 1000.0;
+                    longitude = p[2] / 1000.0;
+                }
+                send("T" + format(sunElevation(), 2));
+            }
+            case 'Z' -> brightness = Math.min(Math.max(p[0], 0), 255);
+            case 'L' -> light = (p[0] != 0);
+            case 'Q' -> {
+                int wanted = (p[0] == 0) ? COVER_CLOSED : ((p[0] == 1) ? COVER_OPEN : -1);
+                if ((wanted >= 0) && (coverStatus != wanted)) {
+                    coverTarget = wanted;
+                    // Firmware servo delay, from 50 ms (speed 0) to 3 ms (speed 10) for each of about 60 steps
+                    coverArrival = time + 60L * (50L - servoSpeed * 47L / 10L);
+                    setCover(COVER_MOVING);
+                }
+            }
+            case 'M' -> {
+                if (coverStatus == COVER_MOVING) setCover(COVER_HALT);
+            }
+            case 'F' -> {
+                openServo = Math.min(Math.max(p[0], 170), 290);
+                closedServo = Math.min(Math.max(p[1], -15), 15);
+                servoSpeed = Math.min(Math.max(p[2], 0), 10);
+            }
+        }
+    }
+
+    private static int paramsCount(char cmd) {
+        return switch (cmd) {
+            case 'R', 'A', 'P', 'H', 'V', 'B', 'D', 'K', 'Z', 'L', 'Q' -> 1;
+            case 'X', 'J', 'Y' -> 2;
+            case 'T', 'F' -> 3;
+            default -> 0;
+        };
+    }
+
+    private int pinIndex(int number) {
+        for (int i = 0; i < pinNumbers.length; i++) {
+            if (pinNumbers[i] == number) return i;
+        }
+        return -1;
+    }
+
+    private void sendConfig() {
+        StringBuilder sb = new StringBuilder("C").append(VERSION).append(";F[")
+                .append(Math.round(pos)).append(',').append(speed).append(',').append(backlash).append(',')
+                .append(invertDir ? 1 : 0).append(',').append(powerSaver ? 1 : 0).append("];D[1,1,")
+                .append(format(latitude, 3)).append(',').append(format(longitude, 3)).append(',')
+                .append(autoMode).append(',');
+        for (int i = 0; i < pinNumbers.length; i++) {
+            sb.append('(').append(pinNumbers[i]).append('%').append(pinValues[i]).append('%').append(pinPwm[i] ? 1 : 0);
+            if (pinPwm[i]) sb.append('%').append(pinPwmEn[i] ? 1 : 0);
+            sb.append('%').append(pinAuto[i] ? 1 : 0).append(')');
+        }
+        sb.append("];P[").append(light ? 1 : 0).append(',').append(brightness).append(",1,").append(openServo)
+                .append(',').append(closedServo).append(',').append(servoSpeed).append(',').append(coverStatus).append(']');
+        send(sb.toString());
+        send("T" + format(sunElevation(), 2));
+        configSent = true;
+    }
+
+    private void sendPins() {
+        StringBuilder sb = new StringBuilder("Y").append(autoMode).append(',');
+        for (int i = 0; i < pinNumbers.length; i++) {
+            sb.append('(').append(pinNumbers[i]).append('%').append(pinValues[i]).append(')');
+        }
+        send(sb.toString());
+    }
+
+    private void setCover(int status) {
+        coverStatus = status;
+        send("E" + status);
+    }
+
+    private void moveTo(long newTarget) {
+        target = newTarget;
+        moving = true;
+        motorEnabled = true;
+        lastMoveTime = time;
+        focuserState = 'M';
+        send("M");
+    }
+
+    private void setPosition(long newPos) {
+        pos = target = newPos;
+        velocity = 0.0;
+        moving = false;
+    }
+
+    private void tick() {
+        try {
+            time = System.currentTimeMillis();
+            runFocuser(TICK_MS / 1000.0);
+            if ((coverStatus == COVER_MOVING) && (time >= coverArrival)) setCover(coverTarget);
+            if (!configSent) return;
+            if ((time - lastAmbientTime) >= ambientInterval) {
+                updateAmbient();
+                send("J" + format(temperature, 1) + "," + format(humidity, 1) + "," + format(dewPoint, 1));
+                lastAmbientTime = time;
+            }
+            if ((time - lastSunTime) >= sunInterval) {
+                if (processAutoMode()) sendPins();
+                send("T" + format(sunElevation(), 2));
+                lastSunTime = time;
+            }
+        } catch (Exception e) {
+            for (SerialMessageListener l : listeners) {
+                l.onSerialError(e);
+            }
+        }
+    }
+
+    /**
+     * Trapezoidal speed profile: accelerate towards the target, cruise at the maximum speed and decelerate
+     * as soon as the stopping distance reaches the distance left.
+     */
+    private void runFocuser(double dt) {
+        char state;
+        if (moving) {
+            double distance = target - pos;
+            double direction = Math.signum(distance);
+            double stopDistance = (velocity * velocity) / (2.0 * ACCELERATION);
+            if ((direction == 0.0) || ((velocity * direction) < 0.0) || (stopDistance >= Math.abs(distance))) {
+                double dv = ACCELERATION * dt;
+                velocity = (Math.abs(velocity) <= dv) ? (direction * dv) : (velocity - Math.signum(velocity) * dv);
+            } else {
+                velocity = direction * Math.min(Math.abs(velocity) + ACCELERATION * dt, maxSpeed);
+            }
+            pos += velocity * dt;
+            if ((direction == 0.0) || (((target - pos) * direction) <= 0.0)) {
+                pos = target;
+                velocity = 0.0;
+                moving = false;
+            }
+            lastMoveTime = time;
+            state = 'M';
+        } else if (focuserState == 'M') {
+            state = 'A';
+        } else if (motorEnabled && !(powerSaver && ((time - lastMoveTime) >= POWER_TIMEOUT_MS))) {
+            state = 'H';
+        } else {
+            motorEnabled = false;
+            state = 'P';
+        }
+        if (state != focuserState) {
+            send(String.valueOf(state));
+            focuserState = state;
+        }
+        long p = Math.round(pos);
+        if ((p != lastSentPos) && ((time - lastSyncTime) >= syncInterval)) {
+            send("S" + p);
+            lastSentPos = p;
+            lastSyncTime = time;
+        }
+    }
+
+    /**
+     * Slow temperature and humidity cycles, with a bit of sensor noise.
+     */
+    private void updateAmbient() {
+        double phase = 2.0 * Math.PI * (time - startTime) / 3600000.0;
+        temperature = 8.0 + 4.0 * Math.cos(phase) + random.nextGaussian() * 0.1;
+        humidity = Math.min(Math.max(75.0 - 15.0 * Math.cos(phase) + random.nextGaussian() * 0.5, 1.0), 100.0);
+        dewPoint = dewPoint(temperature, humidity);
+    }
+
+    /**
+     * Approximate solar elevation, in degrees.
+     */
+    private double sunElevation() {
+        double days = time / 86400000.0;
+        double declination = Math.toRadians(-23.44 * Math.cos(2.0 * Math.PI * ((days % 365.25) + 10.0) / 365.25));
+        double hourAngle = Math.toRadians(((days % 1.0) * 360.0) + longitude - 180.0);
+        double lat = Math.toRadians(latitude);
+        return Math.toDegrees(Math.asin(Math.sin(lat) * Math.sin(declination) +
+                Math.cos(lat) * Math.cos(declination) * Math.cos(hourAngle)));
+    }
+
+    private boolean processAutoMode() {
+        return switch (autoMode) {
+            case 0 -> {
+                double e = sunElevation();
+                yield forEachAutoPin(pwmMap(-e, 15.0, 21.0), e <= -18.0);
+            }
+            case 1 -> {
+                double e = sunElevation();
+                yield forEachAutoPin(pwmMap(-e, 3.0, 9.0), e <= -6.0);
+            }
+            case 2 -> {
+                double e = sunElevation();
+                yield forEachAutoPin(pwmMap(e, 0.0, 3.0), e > 0.0);
+            }
+            case 3, 4, 5, 6, 7 -> {
+                double diff = new double[]{1.0, 2.0, 3.0, 5.0, 7.0}[autoMode - 3];
+                yield forEachAutoPin(pwmMap(dewPoint, temperature - diff, temperature - (diff * OFFSET_FACTOR)),
+                        (temperature - dewPoint - (diff * OFFSET_FACTOR)) <= diff);
+            }
+            case 8, 9, 10 -> {
+                double trigger = 90.0 - 10.0 * (autoMode - 8);
+                yield forEachAutoPin(pwmMap(humidity, trigger - 5.0, trigger + 5.0), humidity >= trigger);
+            }
+            case 11 -> forEachAutoPin(pwmMap(-temperature, -4.0, -2.0), temperature <= 3.0);
+            default -> false;
+        };
+    }
+
+    private boolean forEachAutoPin(int pwm, boolean digital) {
+        boolean changed = false;
+        for (int i = 0; i < pinNumbers.length; i++) {
+            if (!pinAuto[i]) continue;
+            int value = (pinPwm[i] && pinPwmEn[i]) ? pwm : (digital ? 255 : 0);
+            if (value != pinValues[i]) {
+                pinValues[i] = value;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+}
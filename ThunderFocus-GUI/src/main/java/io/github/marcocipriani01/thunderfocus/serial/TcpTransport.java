@@ -0,0 +1,145 @@
+package io.github.marcocipriani01.thunderfocus.serial;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Raw TCP link to a board whose serial port is shared on the network, for example with ser2net:
+ * {@code tcp://host:port}. Nagle's algorithm is disabled, so every write (a single frame, or all the frames
+ * queued in the meantime by {@link SerialWriter}) leaves immediately in one packet.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+public class TcpTransport implements Transport {
+
+    /**
+     * Address prefix of network boards.
+     */
+    public static final String SCHEME = "tcp://";
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+    private static final int READ_BUFFER_SIZE = 4096;
+    private final CopyOnWriteArrayList<SerialMessageListener> listeners = new CopyOnWriteArrayList<>();
+    private final LineFramer framer = new LineFramer(this::dispatch);
+    private final Object writeLock = new Object();
+    private volatile SocketChannel channel = null;
+
+    /**
+     * Class constructor.
+     */
+    public TcpTransport() {
+
+    }
+
+    private static InetSocketAddress resolve(String address) throws IOException {
+        URI uri;
+        try {
+            uri = new URI(address);
+        } catch (URISyntaxException e) {
+            throw new IOException("Invalid address: " + address, e);
+        }
+        if ((uri.getHost() == null) || (uri.getPort() <= 0)) throw new IOException("Invalid address: " + address);
+        InetSocketAddress resolved = new InetSocketAddress(uri.getHost(), uri.getPort());
+        if (resolved.isUnresolved()) throw new IOException("Unknown host: " + uri.getHost());
+        return resolved;
+    }
+
+    @Override
+    public synchronized void connect(String address) throws IOException {
+        if (isConnected()) throw new IllegalStateException("Already connected.");
+        InetSocketAddress resolved = resolve(address);
+        SocketChannel ch = SocketChannel.open();
+        try {
+            ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            ch.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+            ch.socket().connect(resolved, CONNECT_TIMEOUT_MS);
+        } catch (IOException e) {
+            ch.close();
+            throw e;
+        }
+        framer.reset();
+        channel = ch;
+        Thread reader = new Thread(() -> readLoop(ch), "TCP reader for " + address);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private void readLoop(SocketChannel ch) {
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        try {
+            while (true) {
+                buffer.clear();
+                int n = ch.read(buffer);
+                if (n < 0) throw new EOFException("Connection closed by the remote host.");
+                framer.feed(buffer.array(), 0, n);
+            }
+        } catch (IOException e) {
+            // Closed by disconnect(), not an error
+            if (channel != ch) return;
+            try {
+                ch.close();
+            } catch (IOException ignored) {
+            }
+            for (SerialMessageListener l : listeners) {
+                l.onSerialError(e);
+            }
+        }
+    }
+
+    @Override
+    public boolean isConnected() {
+        SocketChannel ch = channel;
+        return (ch != null) && ch.isOpen();
+    }
+
+    /**
+     * Closes the connection. Doesn't wait for the reader thread, which stops as soon as the channel is closed.
+     */
+    @Override
+    public synchronized void disconnect() throws IOException {
+        SocketChannel ch = channel;
+        channel = null;
+        if (ch != null) ch.close();
+    }
+
+    @Override
+    public void write(byte[] data) throws IOException {
+        write(data, 0, data.length);
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        SocketChannel ch = channel;
+        if ((ch == null) || (!ch.isOpen())) throw new IllegalStateException("Not connected.");
+        ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+        synchronized (writeLock) {
+            while (buffer.hasRemaining()) {
+                ch.write(buffer);
+            }
+        }
+    }
+
+    @Override
+    public void addListener(SerialMessageListener listener) {
+        if (!listeners.addIfAbsent(listener))
+            throw new IllegalArgumentException("Listener already in the list!");
+    }
+
+    @Override
+    public void removeListener(SerialMessageListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void dispatch(CharSequence line) {
+        for (SerialMessageListener l : listeners) {
+            l.onSerialMessage(line);
+        }
+    }
+}
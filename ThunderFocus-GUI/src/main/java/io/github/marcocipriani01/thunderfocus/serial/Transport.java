@@ -0,0 +1,91 @@
+package io.github.marcocipriani01.thunderfocus.serial;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A byte link to a ThunderFocus board. Received bytes are split into lines and delivered to the
+ * {@link SerialMessageListener}s, sent frames are written as they are.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+public interface Transport {
+
+    /**
+     * Creates the transport for the given address:
+     * <ul>
+     *     <li>{@code tcp://host:port} for a board shared on the network (ser2net and similar), see {@link TcpTransport}</li>
+     *     <li>{@code pipe:name} for an in-memory link to a {@link PipeTransport.Device}</li>
+     *     <li>{@code sim:[options]} for a {@link SimulatedBoard}</li>
+     *     <li>a serial port name otherwise.</li>
+     * </ul>
+     *
+     * @param address the address of the board.
+     * @return a new, disconnected transport.
+     */
+    static Transport forAddress(String address) {
+        if (address.startsWith(TcpTransport.SCHEME)) return new TcpTransport();
+        if (address.startsWith(PipeTransport.SCHEME)) return new PipeTransport();
+        if (address.startsWith(SimulatedBoard.SCHEME)) return new SimulatedBoard();
+        return new SerialPortImpl();
+    }
+
+    /**
+     * @param address the address of a board.
+     * @return {@code true} if the address is a serial port name rather than a network, pipe or simulator address.
+     */
+    static boolean isSerialPort(String address) {
+        return !(address.startsWith(TcpTransport.SCHEME) || address.startsWith(PipeTransport.SCHEME) ||
+                address.startsWith(SimulatedBoard.SCHEME));
+    }
+
+    /**
+     * Opens the link.
+     *
+     * @param address the address of the board, as passed to {@link #forAddress(String)}.
+     */
+    void connect(String address) throws IOException;
+
+    /**
+     * @return {@code true} if the link is open.
+     */
+    boolean isConnected();
+
+    /**
+     * Closes the link.
+     */
+    void disconnect() throws IOException;
+
+    /**
+     * Writes some bytes to the board.
+     *
+     * @param data the bytes to send.
+     */
+    void write(byte[] data) throws IOException;
+
+    /**
+     * Writes part of an array to the board. The default implementation copies the bytes to a new array.
+     *
+     * @param data   the bytes to send.
+     * @param offset the index of the first byte to send.
+     * @param length the number of bytes to send.
+     */
+    default void write(byte[] data, int offset, int length) throws IOException {
+        write(Arrays.copyOfRange(data, offset, offset + length));
+    }
+
+    /**
+     * Adds a listener to the list.
+     *
+     * @param listener a listener to add.
+     */
+    void addListener(SerialMessageListener listener);
+
+    /**
+     * Removes a listener from the list.
+     *
+     * @param listener a listener to remove.
+     */
+    void removeListener(SerialMessageListener listener);
+}
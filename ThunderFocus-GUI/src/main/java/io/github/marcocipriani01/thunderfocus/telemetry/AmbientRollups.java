@@ -0,0 +1,295 @@
+package io.github.marcocipriani01.thunderfocus.telemetry;
+
+import io.github.marcocipriani01.thunderfocus.board.Board;
+import io.github.marcocipriani01.thunderfocus.board.PowerBox;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Long-term history of the ambient sensors. Every sample is added to four tiers of buckets (1 s, 1 min, 15 min and
+ * 1 h) as it arrives, so a chart can read whichever resolution suits the visible time span and a week of history
+ * is only a few hundred points. The tiers are saved to a compact binary file, also every time a 15 min bucket is
+ * complete if {@link #setAutoSave(Path)} is used. Saving only holds the lock while the tiers are encoded in memory,
+ * never while writing to disk, so the thread that delivers the samples isn't blocked.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+public class AmbientRollups implements Board.Listener {
+
+    private static final int MAGIC = 0x5446524C; // "TFRL"
+    private static final int VERSION = 1;
+    private static final TelemetryChannel[] CHANNELS =
+            {TelemetryChannel.TEMPERATURE, TelemetryChannel.HUMIDITY, TelemetryChannel.DEW_POINT};
+    private static final Resolution[] RESOLUTIONS = Resolution.values();
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "Rollups writer");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Board board;
+    private final RollupTier[][] tiers = new RollupTier[CHANNELS.length][RESOLUTIONS.length];
+    /**
+     * Held while writing, so that two saves never write the same temporary file.
+     */
+    private final Object writeLock = new Object();
+    private volatile Path autoSaveFile = null;
+    private long lastQuarter = -1L;
+
+    /**
+     * Class constructor.
+     *
+     * @param board the board whose ambient data is recorded.
+     */
+    public AmbientRollups(Board board) {
+        this.board = board;
+        for (int c = 0; c < CHANNELS.length; c++) {
+            for (Resolution r : RESOLUTIONS) {
+                tiers[c][r.ordinal()] = new RollupTier(r.width, r.capacity);
+            }
+        }
+    }
+
+    private static int indexOf(TelemetryChannel channel) {
+        for (int c = 0; c < CHANNELS.length; c++) {
+            if (CHANNELS[c] == channel) return c;
+        }
+        throw new IllegalArgumentException("Not an ambient channel: " + channel);
+    }
+
+    /**
+     * Starts listening to the board.
+     */
+    public void start() {
+        board.addListener(this, EnumSet.of(Board.Parameters.POWERBOX_AMBIENT_DATA));
+    }
+
+    /**
+     * Stops listening to the board.
+     */
+    public void stop() {
+        board.removeListener(this);
+    }
+
+    @Override
+    public void updateParam(Board.Parameters p) {
+        if (p != Board.Parameters.POWERBOX_AMBIENT_DATA) return;
+        PowerBox powerBox = board.powerBox();
+        if (powerBox == null) return;
+        long now = System.currentTimeMillis();
+        double temperature = powerBox.getTemperature(), humidity = powerBox.getHumidity(),
+                dewPoint = powerBox.getDewPoint();
+        if (temperature != PowerBox.ABSOLUTE_ZERO) add(TelemetryChannel.TEMPERATURE, now, temperature);
+        if (humidity != PowerBox.INVALID_HUMIDITY) add(TelemetryChannel.HUMIDITY, now, humidity);
+        if (dewPoint != PowerBox.ABSOLUTE_ZERO) add(TelemetryChannel.DEW_POINT, now, dewPoint);
+    }
+
+    /**
+     * Adds a sample to all the tiers.
+     *
+     * @param channel {@link TelemetryChannel#TEMPERATURE}, {@link TelemetryChannel#HUMIDITY}
+     *                or {@link TelemetryChannel#DEW_POINT}.
+     * @param time    the time of the sample, in milliseconds.
+     * @param value   the value.
+     */
+    public synchronized void add(TelemetryChannel channel, long time, double value) {
+        for (RollupTier tier : tiers[indexOf(channel)]) {
+            tier.add(time, value);
+        }
+        long quarter = time / Resolution.QUARTER_HOUR.width;
+        if (quarter > lastQuarter) {
+            if ((lastQuarter >= 0L) && (autoSaveFile != null)) saveInBackground();
+            lastQuarter = quarter;
+        }
+    }
+
+    /**
+     * Saves the tiers every time a 15 min bucket is complete, on a background thread, so that a crash loses at most
+     * 15 minutes of history.
+     *
+     * @param file the destination file, or {@code null} to stop saving.
+     */
+    public void setAutoSave(Path file) {
+        this.autoSaveFile = file;
+    }
+
+    private void saveInBackground() {
+        writer.execute(() -> {
+            Path file = autoSaveFile;
+            if (file == null) return;
+            try {
+                save(file);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * @param from      the start of the time range, in milliseconds.
+     * @param to        the end of the time range, in milliseconds.
+     * @param maxPoints the maximum number of buckets wanted, for example the width of the chart.
+     * @return the finest resolution that covers the time range with at most {@code maxPoints} buckets.
+     */
+    public static Resolution resolutionFor(long from, long to, int maxPoints) {
+        long span = Math.max(to - from, 1L);
+        for (Resolution r : RESOLUTIONS) {
+            if (((span / r.width) <= maxPoints) && (r.retention() >= span)) return r;
+        }
+        return Resolution.HOUR;
+    }
+
+    /**
+     * Reads the buckets of the given time range, oldest first, at the resolution chosen by
+     * {@link #resolutionFor(long, long, int)}.
+     *
+     * @param channel   the ambient channel.
+     * @param from      the start of the time range, in milliseconds.
+     * @param to        the end of the time range, in milliseconds.
+     * @param maxPoints the maximum number of buckets wanted.
+     * @param consumer  receives the buckets.
+     * @return the resolution used.
+     */
+    public synchronized Resolution query(TelemetryChannel channel, long from, long to, int maxPoints,
+                                         BucketConsumer consumer) {
+        Resolution r = resolutionFor(from, to, maxPoints);
+        tiers[indexOf(channel)][r.ordinal()].query(from, to, consumer);
+        return r;
+    }
+
+    /**
+     * Reads the buckets of the given time range at a specific resolution.
+     */
+    public synchronized void query(TelemetryChannel channel, Resolution resolution, long from, long to,
+                                   BucketConsumer consumer) {
+        tiers[indexOf(channel)][resolution.ordinal()].query(from, to, consumer);
+    }
+
+    /**
+     * Saves all the tiers. The file is synced to disk and replaced atomically.
+     *
+     * @param file the destination file.
+     */
+    public void save(Path file) throws IOException {
+        byte[] data = encode();
+        synchronized (writeLock) {
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buf = ByteBuffer.wrap(data);
+                while (buf.hasRemaining()) {
+                    ch.write(buf);
+                }
+                ch.force(true);
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    /**
+     * @return a copy of all the tiers in the format of {@link #save(Path)}, about 1 MB.
+     */
+    private synchronized byte[] encode() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 20);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(CHANNELS.length);
+        out.writeInt(RESOLUTIONS.length);
+        for (int c = 0; c < CHANNELS.length; c++) {
+            out.writeInt(CHANNELS[c].ordinal());
+            for (RollupTier tier : tiers[c]) {
+                tier.write(out);
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Loads the tiers saved by {@link #save(Path)}. A missing file is ignored.
+     *
+     * @param file the file to read.
+     */
+    public synchronized void load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if ((in.readInt() != MAGIC) || (in.readInt() != VERSION) ||
+                    (in.readInt() != CHANNELS.length) || (in.readInt() != RESOLUTIONS.length))
+                throw new IOException("Unsupported rollup file!");
+            for (int c = 0; c < CHANNELS.length; c++) {
+                if (in.readInt() != CHANNELS[c].ordinal()) throw new IOException("Unsupported rollup file!");
+                for (RollupTier tier : tiers[c]) {
+                    tier.read(in);
+                }
+            }
+        } catch (NoSuchFileException ignored) {
+        }
+    }
+
+    /**
+     * The available resolutions.
+     */
+    public enum Resolution {
+        /**
+         * 1 s buckets, last hour.
+         */
+        SECOND(1000L, 3600),
+        /**
+         * 1 min buckets, last 2 days.
+         */
+        MINUTE(60_000L, 2 * 24 * 60),
+        /**
+         * 15 min buckets, last 31 days.
+         */
+        QUARTER_HOUR(900_000L, 31 * 24 * 4),
+        /**
+         * 1 h buckets, last year.
+         */
+        HOUR(3600_000L, 366 * 24);
+
+        private final long width;
+        private final int capacity;
+
+        Resolution(long width, int capacity) {
+            this.width = width;
+            this.capacity = capacity;
+        }
+
+        /**
+         * @return the width of the buckets, in milliseconds.
+         */
+        public long getWidth() {
+            return width;
+        }
+
+        /**
+         * @return how far back this resolution goes, in milliseconds.
+         */
+        public long retention() {
+            return width * capacity;
+        }
+    }
+
+    /**
+     * Receives the buckets of a query.
+     */
+    @FunctionalInterface
+    public interface BucketConsumer {
+        void accept(long start, long width, double min, double max, double mean, double last);
+    }
+}
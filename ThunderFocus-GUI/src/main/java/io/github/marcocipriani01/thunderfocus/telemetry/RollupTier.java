@@ -0,0 +1,125 @@
+package io.github.marcocipriani01.thunderfocus.telemetry;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Fixed-width buckets with the minimum, maximum, mean and last value of the samples that fall in each of them,
+ * stored in ring buffers. Only the newest buckets are kept. Not thread-safe.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+final class RollupTier {
+
+    final long width;
+    private final long[] start;
+    private final double[] min;
+    private final double[] max;
+    private final double[] sum;
+    private final double[] last;
+    private final int[] count;
+    private int head = 0;
+    private int size = 0;
+
+    RollupTier(long width, int capacity) {
+        this.width = width;
+        this.start = new long[capacity];
+        this.min = new double[capacity];
+        this.max = new double[capacity];
+        this.sum = new double[capacity];
+        this.last = new double[capacity];
+        this.count = new int[capacity];
+    }
+
+    private int slot(int i) {
+        return (head + i) % start.length;
+    }
+
+    /**
+     * Adds a sample to its bucket. Samples older than the newest bucket are ignored.
+     */
+    void add(long time, double value) {
+        long bucket = time - Math.floorMod(time, width);
+        if (size > 0) {
+            int i = slot(size - 1);
+            if (start[i] == bucket) {
+                if (value < min[i]) min[i] = value;
+                if (value > max[i]) max[i] = value;
+                sum[i] += value;
+                last[i] = value;
+                count[i]++;
+                return;
+            }
+            if (bucket < start[i]) return;
+        }
+        put(bucket, value, value, value, value, 1);
+    }
+
+    private void put(long bucket, double min, double max, double sum, double last, int count) {
+        if (size == start.length) {
+            head = (head + 1) % start.length;
+            size--;
+        }
+        int i = slot(size++);
+        this.start[i] = bucket;
+        this.min[i] = min;
+        this.max[i] = max;
+        this.sum[i] = sum;
+        this.last[i] = last;
+        this.count[i] = count;
+    }
+
+    void query(long from, long to, AmbientRollups.BucketConsumer consumer) {
+        for (int i = firstEndingAfter(from); i < size; i++) {
+            int s = slot(i);
+            if (start[s] > to) break;
+            consumer.accept(start[s], width, min[s], max[s], sum[s] / count[s], last[s]);
+        }
+    }
+
+    private int firstEndingAfter(long time) {
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if ((start[slot(mid)] + width) <= time) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Writes the buckets as offsets from the oldest one and single-precision values, 24 bytes each.
+     */
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        if (size == 0) return;
+        long base = start[head];
+        out.writeLong(base);
+        for (int i = 0; i < size; i++) {
+            int s = slot(i);
+            out.writeInt((int) ((start[s] - base) / width));
+            out.writeFloat((float) min[s]);
+            out.writeFloat((float) max[s]);
+            out.writeFloat((float) (sum[s] / count[s]));
+            out.writeFloat((float) last[s]);
+            out.writeInt(count[s]);
+        }
+    }
+
+    void read(DataInputStream in) throws IOException {
+        head = size = 0;
+        int n = in.readInt();
+        if (n < 0) throw new IOException("Corrupted rollup file!");
+        if (n == 0) return;
+        long base = in.readLong();
+        for (int i = 0; i < n; i++) {
+            long bucket = base + (in.readInt() * width);
+            float min = in.readFloat(), max = in.readFloat(), mean = in.readFloat(), last = in.readFloat();
+            int count = Math.max(in.readInt(), 1);
+            if ((size == 0) || (bucket > start[slot(size - 1)]))
+                put(bucket, min, max, (double) mean * count, last, count);
+        }
+    }
+}
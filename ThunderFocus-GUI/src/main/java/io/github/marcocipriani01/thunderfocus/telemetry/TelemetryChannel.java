@@ -0,0 +1,40 @@
+package io.github.marcocipriani01.thunderfocus.telemetry;
+
+/**
+ * The quantities recorded by {@link TelemetryRecorder}.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+public enum TelemetryChannel {
+    /**
+     * Ambient temperature, °C.
+     */
+    TEMPERATURE,
+    /**
+     * Relative humidity, %.
+     */
+    HUMIDITY,
+    /**
+     * Dew point, °C.
+     */
+    DEW_POINT,
+    /**
+     * Focuser position, steps.
+     */
+    FOCUSER_POS,
+    /**
+     * Value of a powerbox pin, 0→255. The record id is the pin number.
+     */
+    PIN,
+    /**
+     * Sun elevation, degrees.
+     */
+    SUN_ELEV;
+
+    private static final TelemetryChannel[] VALUES = values();
+
+    static TelemetryChannel fromCode(int code) {
+        return ((code >= 0) && (code < VALUES.length)) ? VALUES[code] : null;
+    }
+}
@@ -0,0 +1,62 @@
+package io.github.marcocipriani01.thunderfocus.telemetry;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoField;
+
+/**
+ * Layout of the telemetry segment files. Each file covers one UTC hour and contains a 32-byte header followed by
+ * fixed-width 24-byte records in append order:
+ * <pre>
+ * header: int magic, int version, int record size, int reserved, long hour start (ms), long record count
+ * record: long time (ms), short channel, short id, int reserved, double value
+ * </pre>
+ * The record count is updated after each record is written, so readers never see a partial record.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+final class TelemetryFormat {
+
+    static final int MAGIC = 0x5446544C; // "TFTL"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int RECORD_SIZE = 24;
+    static final int COUNT_OFFSET = 24;
+    static final int TIME_OFFSET = 0;
+    static final int CHANNEL_OFFSET = 8;
+    static final int ID_OFFSET = 10;
+    static final int VALUE_OFFSET = 16;
+    static final long SEGMENT_MILLIS = 3600_000L;
+    static final String EXTENSION = ".tlm";
+    private static final DateTimeFormatter NAME_FORMAT = new DateTimeFormatterBuilder().appendPattern("yyyyMMdd-HH")
+            .parseDefaulting(ChronoField.MINUTE_OF_HOUR, 0).toFormatter().withZone(ZoneOffset.UTC);
+
+    private TelemetryFormat() {
+    }
+
+    static long segmentStart(long time) {
+        return time - Math.floorMod(time, SEGMENT_MILLIS);
+    }
+
+    static String segmentName(long segmentStart) {
+        return NAME_FORMAT.format(Instant.ofEpochMilli(segmentStart)) + EXTENSION;
+    }
+
+    /**
+     * @return the start of the hour covered by the given segment file, or {@code -1} if it isn't a segment.
+     */
+    static long parseSegmentStart(Path file) {
+        String name = file.getFileName().toString();
+        if (!name.endsWith(EXTENSION)) return -1L;
+        try {
+            return NAME_FORMAT.parse(name.substring(0, name.length() - EXTENSION.length()), Instant::from).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1L;
+        }
+    }
+}
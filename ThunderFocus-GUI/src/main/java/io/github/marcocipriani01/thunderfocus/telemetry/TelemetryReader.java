@@ -0,0 +1,157 @@
+package io.github.marcocipriani01.thunderfocus.telemetry;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static io.github.marcocipriani01.thunderfocus.telemetry.TelemetryFormat.*;
+
+/**
+ * Reads the segment files written by {@link TelemetryRecorder}. For every segment a sparse index with the time of one
+ * record out of {@value #INDEX_STRIDE} is kept in memory, so a range query only needs a binary search and a short scan.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+public class TelemetryReader {
+
+    private static final int INDEX_STRIDE = 256;
+    private final Path folder;
+    private final ConcurrentHashMap<Path, SparseIndex> indexes = new ConcurrentHashMap<>();
+
+    /**
+     * Class constructor.
+     *
+     * @param folder the folder that contains the segment files.
+     */
+    public TelemetryReader(Path folder) {
+        this.folder = folder;
+    }
+
+    /**
+     * Reads all the records in the given time range, oldest first.
+     *
+     * @param from     the start of the range (inclusive), in milliseconds.
+     * @param to       the end of the range (inclusive), in milliseconds.
+     * @param consumer receives the records.
+     */
+    public void read(long from, long to, RecordConsumer consumer) throws IOException {
+        if (!Files.isDirectory(folder)) return;
+        ArrayList<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder, "*" + EXTENSION)) {
+            for (Path file : files) {
+                long start = parseSegmentStart(file);
+                if ((start >= 0L) && (start <= to) && ((start + SEGMENT_MILLIS) > from)) segments.add(file);
+            }
+        }
+        segments.sort(Comparator.comparingLong(TelemetryFormat::parseSegmentStart));
+        for (Path file : segments) {
+            readSegment(file, from, to, consumer);
+        }
+    }
+
+    /**
+     * Exports the records in the given time range to a CSV file.
+     *
+     * @param from the start of the range (inclusive), in milliseconds.
+     * @param to   the end of the range (inclusive), in milliseconds.
+     * @param out  the destination file.
+     */
+    public void exportCsv(long from, long to, Path out) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(out, StandardCharsets.UTF_8)) {
+            writer.write("time,channel,id,value");
+            writer.newLine();
+            read(from, to, (time, channel, id, value) -> {
+                try {
+                    writer.write(Instant.ofEpochMilli(time) + "," + channel + "," + id + "," + value);
+                    writer.newLine();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void readSegment(Path file, long from, long to, RecordConsumer consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) return;
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if ((header.getInt(0) != MAGIC) || (header.getInt(4) != VERSION) || (header.getInt(8) != RECORD_SIZE)) {
+                System.err.println("Skipping invalid telemetry segment " + file);
+                return;
+            }
+            long count = Math.min(header.getLong(COUNT_OFFSET), (size - HEADER_SIZE) / RECORD_SIZE);
+            if (count <= 0L) return;
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, count * RECORD_SIZE);
+            SparseIndex index = indexes.compute(file, (k, old) -> SparseIndex.update(old, data, count));
+            for (int i = index.firstCandidate(from) * RECORD_SIZE, end = (int) count * RECORD_SIZE; i < end; i += RECORD_SIZE) {
+                long time = data.getLong(i + TIME_OFFSET);
+                if (time > to) break;
+                if (time < from) continue;
+                TelemetryChannel ch = TelemetryChannel.fromCode(data.getShort(i + CHANNEL_OFFSET));
+                if (ch != null)
+                    consumer.accept(time, ch, data.getShort(i + ID_OFFSET), data.getDouble(i + VALUE_OFFSET));
+            }
+        }
+    }
+
+    /**
+     * Receives the records read from disk.
+     */
+    @FunctionalInterface
+    public interface RecordConsumer {
+        void accept(long time, TelemetryChannel channel, int id, double value);
+    }
+
+    /**
+     * Time of every {@link #INDEX_STRIDE}-th record of a segment. Segments are append-only, so an index built for
+     * fewer records can be extended.
+     */
+    private record SparseIndex(long count, long[] times) {
+
+        private static SparseIndex update(SparseIndex old, MappedByteBuffer data, long count) {
+            if ((old != null) && (old.count == count)) return old;
+            int entries = (int) ((count + INDEX_STRIDE - 1) / INDEX_STRIDE), from = 0;
+            long[] times = new long[entries];
+            if ((old != null) && (old.count < count)) {
+                from = (int) (old.count / INDEX_STRIDE);
+                System.arraycopy(old.times, 0, times, 0, from);
+            }
+            for (int e = from; e < entries; e++) {
+                times[e] = data.getLong(e * INDEX_STRIDE * RECORD_SIZE + TIME_OFFSET);
+            }
+            return new SparseIndex(count, times);
+        }
+
+        /**
+         * @return the index of a record at or before the first one with a time greater or equal to the given one.
+         */
+        private int firstCandidate(long time) {
+            int lo = 0, hi = times.length - 1, found = 0;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (times[mid] < time) {
+                    found = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return found * INDEX_STRIDE;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package io.github.marcocipriani01.thunderfocus.telemetry;
+
+import io.github.marcocipriani01.thunderfocus.board.Board;
+import io.github.marcocipriani01.thunderfocus.board.Focuser;
+import io.github.marcocipriani01.thunderfocus.board.PowerBox;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumSet;
+
+import static io.github.marcocipriani01.thunderfocus.telemetry.TelemetryFormat.*;
+
+/**
+ * Records the board telemetry (ambient data, focuser position, pin values and sun elevation) to disk.
+ * Records are appended to memory-mapped segment files, one per hour, so writing a record is just a few
+ * stores into the page cache and never allocates.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ * @see TelemetryFormat
+ * @see TelemetryReader
+ */
+public class TelemetryRecorder implements Board.Listener, Closeable {
+
+    /**
+     * The board parameters that are recorded.
+     */
+    public static final EnumSet<Board.Parameters> PARAMETERS = EnumSet.of(Board.Parameters.CURRENT_POS,
+            Board.Parameters.POWERBOX_PINS, Board.Parameters.POWERBOX_AMBIENT_DATA, Board.Parameters.POWERBOX_SUN_ELEV);
+    private static final int CHUNK_RECORDS = 4096;
+    private static final long CHUNK_BYTES = (long) CHUNK_RECORDS * RECORD_SIZE;
+    private final Path folder;
+    private final Board board;
+    private FileChannel channel = null;
+    private MappedByteBuffer header = null;
+    private MappedByteBuffer chunk = null;
+    private int chunkPos = 0;
+    private long count = 0L;
+    private long segmentEnd = Long.MIN_VALUE;
+    /**
+     * Time of the last record written. Records never go back in time, as {@link TelemetryReader} expects.
+     */
+    private long lastTime = Long.MIN_VALUE;
+    private boolean closed = false;
+
+    /**
+     * Class constructor.
+     *
+     * @param folder the folder that contains the segment files.
+     * @param board  the board to record.
+     */
+    public TelemetryRecorder(Path folder, Board board) {
+        this.folder = folder;
+        this.board = board;
+    }
+
+    /**
+     * Deletes the segment files that only contain records older than the given time.
+     *
+     * @param folder the folder that contains the segment files.
+     * @param limit  the oldest time to keep, in milliseconds.
+     */
+    public static void deleteOlderThan(Path folder, long limit) throws IOException {
+        if (!Files.isDirectory(folder)) return;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder, "*" + EXTENSION)) {
+            for (Path file : files) {
+                long start = parseSegmentStart(file);
+                if ((start >= 0L) && ((start + SEGMENT_MILLIS) < limit)) Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * Starts recording.
+     */
+    public void start() throws IOException {
+        Files.createDirectories(folder);
+        board.addListener(this, PARAMETERS);
+    }
+
+    /**
+     * Stops recording and flushes the current segment to disk.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        board.removeListener(this);
+        closeSegment();
+    }
+
+    @Override
+    public void updateParam(Board.Parameters p) {
+        long now = System.currentTimeMillis();
+        switch (p) {
+            case CURRENT_POS -> {
+                Focuser focuser = board.focuser();
+                if (focuser != null) record(now, TelemetryChannel.FOCUSER_POS, 0, focuser.getPos());
+            }
+            case POWERBOX_AMBIENT_DATA -> {
+                PowerBox powerBox = board.powerBox();
+                if (powerBox == null) return;
+                double temperature = powerBox.getTemperature(), humidity = powerBox.getHumidity(),
+                        dewPoint = powerBox.getDewPoint();
+                if (temperature != PowerBox.ABSOLUTE_ZERO) record(now, TelemetryChannel.TEMPERATURE, 0, temperature);
+                if (humidity != PowerBox.INVALID_HUMIDITY) record(now, TelemetryChannel.HUMIDITY, 0, humidity);
+                if (dewPoint != PowerBox.ABSOLUTE_ZERO) record(now, TelemetryChannel.DEW_POINT, 0, dewPoint);
+            }
+            case POWERBOX_PINS -> {
+                PowerBox powerBox = board.powerBox();
+                if (powerBox == null) return;
+                for (int i = 0, n = powerBox.size(); i < n; i++) {
+                    var pin = powerBox.getIndex(i);
+                    record(now, TelemetryChannel.PIN, pin.getNumber(), pin.getValuePWM());
+                }
+            }
+            case POWERBOX_SUN_ELEV -> {
+                PowerBox powerBox = board.powerBox();
+                if (powerBox != null) record(now, TelemetryChannel.SUN_ELEV, 0, powerBox.getSunElev());
+            }
+        }
+    }
+
+    /**
+     * Appends a record. If the clock went back, for example when NTP corrects it on a board without RTC, the
+     * record gets the time of the previous one.
+     *
+     * @param time    the time of the record, in milliseconds.
+     * @param channel the recorded quantity.
+     * @param id      a sub-channel, like the pin number.
+     * @param value   the value.
+     */
+    public synchronized void record(long time, TelemetryChannel channel, int id, double value) {
+        if (closed) return;
+        if (time < lastTime) time = lastTime;
+        try {
+            if (time >= segmentEnd) {
+                openSegment(time);
+                // The segment may already have later records, written before a restart
+                if (time < lastTime) time = lastTime;
+            } else if (chunkPos == CHUNK_BYTES) {
+                mapChunk();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.err.println("Telemetry recording disabled.");
+            closed = true;
+            closeSegment();
+            return;
+        }
+        chunk.putLong(chunkPos + TIME_OFFSET, time);
+        chunk.putShort(chunkPos + CHANNEL_OFFSET, (short) channel.ordinal());
+        chunk.putShort(chunkPos + ID_OFFSET, (short) id);
+        chunk.putInt(chunkPos + ID_OFFSET + 2, 0);
+        chunk.putDouble(chunkPos + VALUE_OFFSET, value);
+        chunkPos += RECORD_SIZE;
+        header.putLong(COUNT_OFFSET, ++count);
+        lastTime = time;
+    }
+
+    private void openSegment(long time) throws IOException {
+        closeSegment();
+        long start = segmentStart(time);
+        channel = FileChannel.open(folder.resolve(segmentName(start)),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        if (header.getInt(0) == MAGIC) {
+            if ((header.getInt(4) != VERSION) || (header.getInt(8) != RECORD_SIZE))
+                throw new IOException("Unsupported telemetry segment: " + segmentName(start));
+            count = header.getLong(COUNT_OFFSET);
+            if (count > 0L) {
+                ByteBuffer last = ByteBuffer.allocate(Long.BYTES);
+                channel.read(last, HEADER_SIZE + ((count - 1L) * RECORD_SIZE) + TIME_OFFSET);
+                if (!last.hasRemaining()) lastTime = Math.max(lastTime, last.getLong(0));
+            }
+        } else {
+            header.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, RECORD_SIZE).putInt(12, 0)
+                    .putLong(16, start).putLong(COUNT_OFFSET, 0L);
+            count = 0L;
+        }
+        segmentEnd = start + SEGMENT_MILLIS;
+        mapChunk();
+    }
+
+    private void mapChunk() throws IOException {
+        long index = count / CHUNK_RECORDS;
+        chunk = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + (index * CHUNK_BYTES), CHUNK_BYTES);
+        chunkPos = (int) (count % CHUNK_RECORDS) * RECORD_SIZE;
+    }
+
+    private void closeSegment() {
+        try {
+            if (chunk != null) chunk.force();
+            if (header != null) header.force();
+            if (channel != null) channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        chunk = header = null;
+        channel = null;
+        segmentEnd = Long.MIN_VALUE;
+    }
+}
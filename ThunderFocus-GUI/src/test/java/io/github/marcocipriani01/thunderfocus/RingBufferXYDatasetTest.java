@@ -0,0 +1,53 @@
+package io.github.marcocipriani01.thunderfocus;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link RingBufferXYDataset}.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+class RingBufferXYDatasetTest {
+
+    private static RingBufferXYDataset filled(long retentionMs, int seconds) {
+        RingBufferXYDataset dataset = new RingBufferXYDataset(retentionMs, "T");
+        for (int i = 0; i < seconds; i++) {
+            dataset.add(0, i * 1000L, i);
+        }
+        return dataset;
+    }
+
+    @Test
+    void samplesOutsideTheRetentionAreEvicted() {
+        RingBufferXYDataset dataset = filled(10_000L, 100);
+        assertEquals(11, dataset.getItemCount(0));
+        assertEquals(89_000.0, dataset.getXValue(0, 0));
+        assertEquals(99.0, dataset.getYValue(0, 10));
+    }
+
+    @Test
+    void shorterRetentionDiscardsTheOldestSamples() {
+        RingBufferXYDataset dataset = filled(60_000L, 60);
+        dataset.setRetention(5_000L);
+        assertEquals(6, dataset.getItemCount(0));
+        assertEquals(54_000.0, dataset.getXValue(0, 0));
+        assertEquals(59.0, dataset.getYValue(0, 5));
+    }
+
+    @Test
+    void longerRetentionKeepsTheSamples() {
+        RingBufferXYDataset dataset = filled(5_000L, 10);
+        dataset.setRetention(60_000L);
+        assertEquals(6, dataset.getItemCount(0));
+        for (int i = 10; i < 60; i++) {
+            dataset.add(0, i * 1000L, i);
+        }
+        assertEquals(56, dataset.getItemCount(0));
+        assertEquals(4_000.0, dataset.getXValue(0, 0));
+        assertThrows(IllegalArgumentException.class, () -> dataset.setRetention(0L));
+    }
+}
@@ -0,0 +1,125 @@
+package io.github.marcocipriani01.thunderfocus.ascom;
+
+import io.github.marcocipriani01.thunderfocus.Main;
+import io.github.marcocipriani01.thunderfocus.board.Board;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Many loopback clients polling {@code Position} at the same time from an {@link ASCOMBridge} backed by a simulated
+ * board, like a set of ASCOM drivers and scripts would. Every request is timed and the percentiles are printed for
+ * each server mode. Too slow for the normal build: run it with {@code gradlew loadTest}.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+@Tag("load")
+class ASCOMBridgeLoadTest {
+
+    private static final int CLIENTS = 500;
+    private static final int REQUESTS = 200;
+    private static final long TIMEOUT_MS = 60000L;
+    /**
+     * Generous bound on the 99th percentile, to catch a server that serializes the clients.
+     */
+    private static final long MAX_P99_MS = 1000L;
+    private static final byte[] REQUEST = "Position\n".getBytes(StandardCharsets.US_ASCII);
+
+    @BeforeAll
+    static void connectBoard() throws Exception {
+        Board board = Main.board;
+        board.connect("sim:ambient=86400000,sun=86400000,seed=1");
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!board.isReady()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Simulated board not ready");
+            Thread.sleep(10L);
+        }
+    }
+
+    @AfterAll
+    static void disconnectBoard() {
+        Main.board.disconnect(false);
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)];
+    }
+
+    @ParameterizedTest
+    @EnumSource(SimpleServer.ServerMode.class)
+    void concurrentClients(SimpleServer.ServerMode mode) throws Exception {
+        String expected = String.valueOf(Main.board.state().focuser().pos());
+        ASCOMBridge bridge = new ASCOMBridge(0, mode, () -> {
+        });
+        bridge.start();
+        List<Socket> sockets = new ArrayList<>(CLIENTS);
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            int port = bridge.serverSocket.getLocalPort();
+            for (int i = 0; i < CLIENTS; i++) {
+                Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+                socket.setTcpNoDelay(true);
+                sockets.add(socket);
+            }
+            long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+            while (bridge.getClientsCount() < CLIENTS) {
+                assertTrue(System.currentTimeMillis() < deadline, "Clients not accepted");
+                Thread.sleep(10L);
+            }
+            List<Future<long[]>> results = new ArrayList<>(CLIENTS);
+            for (Socket socket : sockets) {
+                results.add(clients.submit(() -> {
+                    OutputStream out = socket.getOutputStream();
+                    BufferedReader in = new BufferedReader(
+                            new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+                    long[] latencies = new long[REQUESTS];
+                    for (int r = 0; r < REQUESTS; r++) {
+                        long start = System.nanoTime();
+                        out.write(REQUEST);
+                        out.flush();
+                        String reply = in.readLine();
+                        latencies[r] = System.nanoTime() - start;
+                        assertEquals(expected, reply);
+                    }
+                    return latencies;
+                }));
+            }
+            long[] all = new long[CLIENTS * REQUESTS];
+            int n = 0;
+            for (Future<long[]> f : results) {
+                long[] latencies = f.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                System.arraycopy(latencies, 0, all, n, latencies.length);
+                n += latencies.length;
+            }
+            Arrays.sort(all);
+            System.out.printf("%s: %d clients, %d requests, p50 %d us, p99 %d us, max %d us%n", mode, CLIENTS,
+                    all.length, percentile(all, 0.5) / 1000L, percentile(all, 0.99) / 1000L,
+                    all[all.length - 1] / 1000L);
+            assertTrue(percentile(all, 0.99) < (MAX_P99_MS * 1_000_000L), "p99 too high");
+        } finally {
+            for (Socket s : sockets) {
+                s.close();
+            }
+            bridge.stop();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package io.github.marcocipriani01.thunderfocus.ascom;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link SimpleServer} in all its modes.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+class SimpleServerTest {
+
+    private static final long TIMEOUT_MS = 10000L;
+    private RecordingServer server;
+
+    private static void waitFor(String what, BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) fail("Timeout waiting for " + what);
+            Thread.sleep(5L);
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if ((server != null) && server.isConnected()) server.stop();
+    }
+
+    private Socket connect(SimpleServer.ServerMode mode) throws Exception {
+        server = new RecordingServer(mode);
+        server.start();
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.serverSocket.getLocalPort());
+        waitFor("the client", () -> server.getClientsCount() == 1);
+        return socket;
+    }
+
+    @ParameterizedTest
+    @EnumSource(SimpleServer.ServerMode.class)
+    void linesAreReadLikeBufferedReader(SimpleServer.ServerMode mode) throws Exception {
+        try (Socket socket = connect(mode)) {
+            OutputStream out = socket.getOutputStream();
+            out.write(" Position \n\n\tIsMoving\r\nTemperature\r°".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            socket.shutdownOutput();
+            waitFor("the messages", () -> server.messages.size() == 5);
+            assertEquals(List.of(" Position ", "", "\tIsMoving", "Temperature", "°"), server.messages);
+        }
+    }
+
+    @Test
+    void slowClientsAreDisconnected() throws Exception {
+        try (Socket ignored = connect(SimpleServer.ServerMode.SELECTOR)) {
+            // The client never reads: once the socket buffers are full the replies pile up in the server
+            byte[] reply = new byte[1024];
+            Socket client = server.clients.keySet().iterator().next();
+            for (int i = 0; (i < 1000000) && (server.getClientsCount() != 0); i++) {
+                server.write(client, reply);
+            }
+            waitFor("the disconnection", () -> server.lost.size() == 1);
+            assertEquals(0, server.getClientsCount());
+        }
+    }
+
+    private static final class RecordingServer extends SimpleServer {
+
+        private final List<String> messages = new CopyOnWriteArrayList<>();
+        private final List<Socket> lost = new CopyOnWriteArrayList<>();
+
+        private RecordingServer(ServerMode mode) {
+            super(0, mode);
+        }
+
+        @Override
+        protected void onMessage(Socket from, String msg) {
+            messages.add(msg);
+        }
+
+        @Override
+        protected boolean acceptClient(InetAddress address) {
+            return true;
+        }
+
+        @Override
+        protected void onNewClient(Socket client) {
+        }
+
+        @Override
+        protected void onClientLost(Socket client) {
+            lost.add(client);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package io.github.marcocipriani01.thunderfocus.board;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Feeds valid and malformed frames to {@link Board#onSerialMessage(CharSequence)}, without any transport.
+ * A malformed frame must be counted as a parse error and leave the state of the board untouched.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+class BoardParserTest {
+
+    /**
+     * Focuser at 1000, powerbox with ambient sensors, no RTC, auto mode 0, PWM pin 4 at 0 and digital pin 5 on,
+     * flat panel with servo and the cover closed.
+     */
+    static final String CONFIG = "C6.1;F[1000,100,0,0,0];D[1,0,0,(4%0%1%1%1)(5%255%0%0)];P[0,0,1,0,180,50,1]";
+    private final List<Board.Parameters> params = new ArrayList<>();
+    private final List<int[]> pinChanges = new ArrayList<>();
+    private final List<Exception> criticalErrors = new ArrayList<>();
+    private Board board;
+
+    @BeforeEach
+    void setUp() {
+        board = new Board();
+        board.metrics().setEnabled(true);
+        board.addListener(new Board.Listener() {
+            @Override
+            public void updateParam(Board.Parameters p) {
+                params.add(p);
+            }
+
+            @Override
+            public void onPinsChanged(int[] changedPins) {
+                pinChanges.add(changedPins);
+            }
+
+            @Override
+            public void onCriticalError(Exception e) {
+                criticalErrors.add(e);
+            }
+        });
+    }
+
+    private void configure() {
+        board.onSerialMessage(CONFIG);
+        assertEquals(0L, board.metrics().getParseErrors());
+        params.clear();
+    }
+
+    private long parseErrors() {
+        return board.metrics().getParseErrors();
+    }
+
+    @Test
+    void config() {
+        board.onSerialMessage(CONFIG);
+        assertEquals(0L, parseErrors());
+        assertTrue(criticalErrors.isEmpty());
+        assertEquals(1000, board.focuser().getPos());
+        PowerBox powerBox = board.powerBox();
+        assertEquals(2, powerBox.size());
+        assertEquals(PowerBox.AutoModes.values()[0], powerBox.getAutoMode());
+        assertEquals(0, powerBox.get(4).getValuePWM());
+        assertEquals(255, powerBox.get(5).getValuePWM());
+        assertEquals(0, powerBox.indexOf(4));
+        assertEquals(1, powerBox.indexOf(5));
+        assertEquals(-1, powerBox.indexOf(3));
+        assertEquals(-1, powerBox.indexOf(99));
+        assertEquals(FlatPanel.CoverStatus.CLOSED, board.flat().getCoverStatus());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "C6.1;F[1x00,100,0,0,0]",
+            "C6.1;F[1000,100,0,0,0];D[1,0,99,(4%0%1%1%1)]",
+            "C6.1;F[1000,100,0,0,0];D[1,0,0,(4%0%1]",
+            "C6.1;P[0,0,1,0,180,50,7]",
+            "C6.1;F[99999999999,100,0,0,0]"
+    })
+    void malformedConfig(String frame) {
+        board.onSerialMessage(frame);
+        assertEquals(1L, parseErrors());
+        assertEquals(1, criticalErrors.size());
+        assertSame(BoardState.DISCONNECTED, board.state());
+    }
+
+    @Test
+    void position() {
+        configure();
+        board.onSerialMessage("S1200");
+        board.onSerialMessage("S-5");
+        assertEquals(0L, parseErrors());
+        assertEquals(-5, board.focuser().getPos());
+        assertEquals(List.of(Board.Parameters.CURRENT_POS, Board.Parameters.CURRENT_POS), params);
+        board.onSerialMessage("S-5");
+        assertEquals(2, params.size(), "Unchanged position notified");
+    }
+
+    @Test
+    void ambient() {
+        configure();
+        board.onSerialMessage("J12.3,78.4,-8.6");
+        assertEquals(0L, parseErrors());
+        PowerBox powerBox = board.powerBox();
+        assertEquals(12.3, powerBox.getTemperature(), 1e-9);
+        assertEquals(78.4, powerBox.getHumidity(), 1e-9);
+        assertEquals(-8.6, powerBox.getDewPoint(), 1e-9);
+        assertEquals(List.of(Board.Parameters.POWERBOX_AMBIENT_DATA), params);
+    }
+
+    @Test
+    void pins() {
+        configure();
+        board.onSerialMessage("Y1,(4%128)(5%255)");
+        assertEquals(0L, parseErrors());
+        PowerBox powerBox = board.powerBox();
+        assertEquals(PowerBox.AutoModes.values()[1], powerBox.getAutoMode());
+        assertEquals(128, powerBox.get(4).getValuePWM());
+        assertEquals(List.of(Board.Parameters.POWERBOX_AUTO_MODE), params);
+        assertEquals(1, pinChanges.size());
+        assertArrayEquals(new int[]{4}, pinChanges.get(0));
+        board.onSerialMessage("Y1,(4%128)(5%255)");
+        assertEquals(1, pinChanges.size(), "Unchanged pins notified");
+        assertEquals(1, params.size(), "Unchanged auto mode notified");
+    }
+
+    @Test
+    void unchangedPinsAllocateNothing() {
+        configure();
+        String frame = "Y0,(4%0)(5%255)";
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (int i = 0; i < 10_000; i++) {
+            board.onSerialMessage(frame);
+        }
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 10_000; i++) {
+            board.onSerialMessage(frame);
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        assertEquals(0L, parseErrors());
+        assertTrue(pinChanges.isEmpty());
+        // A few bytes per frame would be hundreds of kilobytes
+        assertTrue(allocated < 16 * 1024, "Allocated " + allocated + " bytes");
+    }
+
+    @Test
+    void sunElevation() {
+        configure();
+        board.onSerialMessage("T-12.34");
+        assertEquals(0L, parseErrors());
+        assertEquals(-12.34, board.powerBox().getSunElev(), 1e-9);
+        assertEquals(List.of(Board.Parameters.POWERBOX_SUN_ELEV), params);
+    }
+
+    @Test
+    void coverStatus() {
+        configure();
+        board.onSerialMessage("E2");
+        assertEquals(0L, parseErrors());
+        assertEquals(FlatPanel.CoverStatus.OPEN, board.flat().getCoverStatus());
+        assertEquals(List.of(Board.Parameters.FLAT_COVER_STATUS), params);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "S", "S-", "Sabc", "S1200abc", "S12 00", "S2147483648", "S99999999999999999999",
+            "J12.3,78.4", "J12.3;78.4;8.6", "J12.3,78.4,8.6x", "J,,",
+            "Y13,(4%128)", "Y-1,(4%128)", "Y1(4%128)", "Y1,(9%128)", "Y1,(4%128)(9%0)", "Y1,(4%128", "Y1,(4%x)",
+            "Y1,(4%128)(5%0)(4%1)", "Y1,(4%128)abc", "Y1,(4%99999999999)",
+            "T", "T12.3.4", "T-12.34x",
+            "E4", "E-1", "E9999999999", "E1x", "E"
+    })
+    void malformedFrames(String frame) {
+        configure();
+        PowerBox powerBox = board.powerBox();
+        int pos = board.focuser().getPos();
+        PowerBox.AutoModes autoMode = powerBox.getAutoMode();
+        double temperature = powerBox.getTemperature(), sunElev = powerBox.getSunElev();
+        FlatPanel.CoverStatus coverStatus = board.flat().getCoverStatus();
+        board.onSerialMessage(frame);
+        assertEquals(1L, parseErrors(), "Frame accepted");
+        assertEquals(pos, board.focuser().getPos());
+        assertEquals(autoMode, powerBox.getAutoMode());
+        assertEquals(0, powerBox.get(4).getValuePWM());
+        assertEquals(255, powerBox.get(5).getValuePWM());
+        assertEquals(temperature, powerBox.getTemperature());
+        assertEquals(sunElev, powerBox.getSunElev());
+        assertEquals(coverStatus, board.flat().getCoverStatus());
+        assertTrue(params.isEmpty());
+        assertTrue(pinChanges.isEmpty());
+    }
+
+    @Test
+    void unknownFrame() {
+        configure();
+        board.onSerialMessage("Q1");
+        assertEquals(0L, parseErrors());
+        assertEquals(1L, board.metrics().getUnknownFrames());
+    }
+
+    @Test
+    void framesBeforeTheConfigAreIgnored() {
+        board.onSerialMessage("S1200");
+        board.onSerialMessage("E9");
+        assertEquals(0L, parseErrors());
+        assertNull(board.focuser());
+    }
+}
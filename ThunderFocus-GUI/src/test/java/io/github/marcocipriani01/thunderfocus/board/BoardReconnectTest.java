@@ -0,0 +1,132 @@
+package io.github.marcocipriani01.thunderfocus.board;
+
+import io.github.marcocipriani01.thunderfocus.serial.PipeTransport;
+import io.github.marcocipriani01.thunderfocus.serial.SerialMessageListener;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Opens and closes a {@link Board} many times against a board that never answers and a simulated one, checking
+ * that no thread and no config request outlives the connection.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+class BoardReconnectTest {
+
+    private static final String SILENT = "reconnect-silent";
+    private static final String SIMULATED = "sim:ambient=86400000,sun=86400000,seed=1";
+    private static final int CYCLES = 400;
+    private static final long TIMEOUT_MS = 15000L;
+    private static final Set<String> BOARD_THREADS = Set.of("Board scheduler", "Serial writer", "Simulated board");
+    private final AtomicInteger requests = new AtomicInteger();
+    private final List<Exception> errors = new CopyOnWriteArrayList<>();
+    private PipeTransport.Device device;
+    private Board board;
+
+    private static Map<String, Long> boardThreads() {
+        return Thread.getAllStackTraces().keySet().stream().filter(t -> t.isAlive() && BOARD_THREADS.contains(t.getName()))
+                .collect(Collectors.groupingBy(Thread::getName, Collectors.counting()));
+    }
+
+    private static void await(BooleanSupplier condition, String message) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, message);
+            Thread.sleep(10L);
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        device = PipeTransport.createDevice(SILENT, new SerialMessageListener() {
+            @Override
+            public void onSerialMessage(CharSequence msg) {
+                if ("$C".contentEquals(msg)) requests.incrementAndGet();
+            }
+
+            @Override
+            public void onSerialError(Exception e) {
+
+            }
+        });
+        board = new Board();
+        board.addListener(new Board.Listener() {
+            @Override
+            public void onCriticalError(Exception e) {
+                errors.add(e);
+            }
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (board.isConnected()) board.disconnect(false);
+        device.close();
+    }
+
+    private void assertNothingScheduled() {
+        assertFalse(board.isConfigRequestPending(), "Config request survived disconnect()");
+        assertTrue(((ScheduledThreadPoolExecutor) board.scheduler()).getQueue().isEmpty(),
+                "Tasks left in the board scheduler");
+    }
+
+    @Test
+    void connectDisconnectCycles() throws Exception {
+        // Starts the board scheduler, which lives as long as the board
+        board.connect(PipeTransport.SCHEME + SILENT);
+        board.disconnect(false);
+        Map<String, Long> before = boardThreads();
+        int activeBefore = Thread.activeCount();
+        for (int i = 0; i < CYCLES; i++) {
+            boolean simulated = (i % 4) == 3;
+            board.connect(simulated ? SIMULATED : (PipeTransport.SCHEME + SILENT));
+            assertTrue(board.isConnected());
+            if ((i % 100) == 99) {
+                await(board::isReady, "Simulated board not ready");
+            } else if ((i % 50) == 0) {
+                // Past the first config request, so that the next one is scheduled when disconnecting
+                Thread.sleep(600L);
+            } else {
+                Thread.sleep(i % 3);
+            }
+            board.disconnect(false);
+            assertFalse(board.isConnected());
+            assertNothingScheduled();
+        }
+        assertTrue(requests.get() > 0, "No config request sent");
+        assertTrue(errors.isEmpty(), errors::toString);
+        // The writer threads are joined with a timeout, give the last ones time to exit
+        await(() -> boardThreads().equals(before), "Board threads leaked: " + boardThreads() + ", were " + before);
+        await(() -> Thread.activeCount() <= activeBefore,
+                "Threads leaked: " + Thread.activeCount() + ", were " + activeBefore);
+    }
+
+    @Test
+    void configTimeout() throws Exception {
+        board.connect(PipeTransport.SCHEME + SILENT);
+        await(() -> !board.isConnected(), "Silent board not disconnected");
+        assertEquals(1, errors.size());
+        assertInstanceOf(IllegalStateException.class, errors.get(0));
+        assertNothingScheduled();
+        // Every request with the doubling delay up to the timeout: 500, 1000, 2000, 2000, 2000 ms
+        assertTrue(requests.get() >= 4, "Config requests: " + requests.get());
+        // The board can be opened again after giving up
+        board.connect(PipeTransport.SCHEME + SILENT);
+        board.disconnect(false);
+        assertNothingScheduled();
+        await(() -> !boardThreads().containsKey("Serial writer"), "Serial writer not stopped");
+    }
+}
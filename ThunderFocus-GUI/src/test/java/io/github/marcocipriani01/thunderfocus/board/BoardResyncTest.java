@@ -0,0 +1,147 @@
+package io.github.marcocipriani01.thunderfocus.board;
+
+import io.github.marcocipriani01.thunderfocus.Main;
+import io.github.marcocipriani01.thunderfocus.serial.PipeTransport;
+import io.github.marcocipriani01.thunderfocus.serial.SerialMessageListener;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Drops the link of a configured {@link Board} and reopens it with a board that first sends a malformed config:
+ * the objects seen by the other threads must never be {@code null} or half-built.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+class BoardResyncTest {
+
+    private static final String PIPE = "resync-board";
+    /**
+     * Like {@link BoardParserTest#CONFIG}, with pin 4 not in automatic mode.
+     */
+    private static final String CONFIG = "C6.1;F[1000,100,0,0,0];D[1,0,0,(4%0%1%1%0)(5%255%0%0)];P[0,0,1,0,180,50,1]";
+    private static final String MOVED_CONFIG = CONFIG.replace("F[1000", "F[1200");
+    /**
+     * Valid up to the cover status of the flat panel, after the focuser and the powerbox.
+     */
+    private static final String BAD_CONFIG = CONFIG.replace(",50,1]", ",50,9]");
+    private static final long TIMEOUT_MS = 10000L;
+    private final List<String> received = new CopyOnWriteArrayList<>();
+    private final List<String> problems = new CopyOnWriteArrayList<>();
+    private final List<Exception> errors = new CopyOnWriteArrayList<>();
+    private final AtomicReference<Board.ConnectionState> connectionState = new AtomicReference<>();
+    private final ArduinoPin storedPin = new ArduinoPin(4, "Dew heater", 0, true, false, true);
+    private final Board board = new Board();
+    private PipeTransport.Device device;
+
+    private static void await(BooleanSupplier condition, String message) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, message);
+            Thread.sleep(5L);
+        }
+    }
+
+    private PipeTransport.Device createDevice(String... answers) {
+        AtomicInteger requests = new AtomicInteger();
+        PipeTransport.Device[] d = new PipeTransport.Device[1];
+        d[0] = PipeTransport.createDevice(PIPE, new SerialMessageListener() {
+            @Override
+            public void onSerialMessage(CharSequence msg) {
+                received.add(msg.toString());
+                if ("$C".contentEquals(msg))
+                    d[0].println(answers[Math.min(requests.getAndIncrement(), answers.length - 1)]);
+            }
+
+            @Override
+            public void onSerialError(Exception e) {
+
+            }
+        });
+        return d[0];
+    }
+
+    private void checkObjects(String event) {
+        if ((board.focuser() == null) || (board.powerBox() == null) || (board.flat() == null))
+            problems.add("Missing object on " + event);
+    }
+
+    @AfterEach
+    void tearDown() {
+        board.disconnect(false);
+        if (device != null) device.close();
+        Main.settings.powerBoxPins.remove(storedPin);
+    }
+
+    @Test
+    void malformedConfigWhileReconnecting() throws Exception {
+        Main.settings.powerBoxPins.add(storedPin);
+        board.metrics().setEnabled(true);
+        board.addListener(new Board.Listener() {
+            @Override
+            public void updateConnectionState(Board.ConnectionState state) {
+                connectionState.set(state);
+            }
+
+            @Override
+            public void updateParam(Board.Parameters p) {
+                checkObjects(p.name());
+            }
+
+            @Override
+            public void onPinsChanged(int[] changedPins) {
+                checkObjects("pins");
+            }
+
+            @Override
+            public void onCriticalError(Exception e) {
+                errors.add(e);
+            }
+        });
+        device = createDevice(CONFIG);
+        board.connect(PipeTransport.SCHEME + PIPE);
+        await(board::isReady, "Board not ready");
+        // The pin that must be on while the app is open is switched on once the config is applied
+        await(() -> received.contains("$X4%255%"), "Pin not switched on: " + received);
+        assertEquals(255, board.powerBox().get(4).getValuePWM());
+        Focuser focuser = board.focuser();
+        PowerBox powerBox = board.powerBox();
+        FlatPanel flat = board.flat();
+
+        AtomicBoolean stop = new AtomicBoolean();
+        Thread reader = new Thread(() -> {
+            while (!stop.get()) {
+                checkObjects("read");
+                Thread.onSpinWait();
+            }
+        });
+        reader.start();
+        try {
+            device.close();
+            await(board::isReconnecting, "Not reconnecting");
+            received.clear();
+            device = createDevice(BAD_CONFIG, MOVED_CONFIG);
+            await(() -> connectionState.get() == Board.ConnectionState.RECONNECTED, "Not reconnected");
+        } finally {
+            stop.set(true);
+            reader.join();
+        }
+        assertTrue(problems.isEmpty(), problems::toString);
+        assertTrue(errors.isEmpty(), errors::toString);
+        assertEquals(1L, board.metrics().getParseErrors());
+        assertSame(focuser, board.focuser());
+        assertSame(powerBox, board.powerBox());
+        assertSame(flat, board.flat());
+        assertEquals(1200, focuser.getPos());
+        await(() -> received.contains("$X4%255%"), "Pin not switched on again: " + received);
+    }
+}
@@ -0,0 +1,114 @@
+package io.github.marcocipriani01.thunderfocus.board;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Smoke test of a {@link Board} connected to a {@link io.github.marcocipriani01.thunderfocus.serial.SimulatedBoard}:
+ * handshake, a focuser move and a power box update sent by the board.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+class BoardSimulationTest {
+
+    private static final String ADDRESS = "sim:ambient=86400000,sun=86400000,seed=1";
+    private static final long TIMEOUT_MS = 10000L;
+    private final List<Board.ConnectionState> states = new CopyOnWriteArrayList<>();
+    private final List<Exception> errors = new CopyOnWriteArrayList<>();
+    private final CountDownLatch arrived = new CountDownLatch(1);
+    private final CountDownLatch pinOff = new CountDownLatch(1);
+    private Board board;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        board = new Board();
+        board.metrics().setEnabled(true);
+        board.addListener(new Board.Listener() {
+            @Override
+            public void updateConnectionState(Board.ConnectionState connectionState) {
+                states.add(connectionState);
+            }
+
+            @Override
+            public void onFocuserReachedPos() {
+                arrived.countDown();
+            }
+
+            @Override
+            public void onPinsChanged(int[] changedPins) {
+                for (int pin : changedPins) {
+                    if ((pin == 5) && (board.powerBox().get(5).getValuePWM() == 0)) pinOff.countDown();
+                }
+            }
+
+            @Override
+            public void onCriticalError(Exception e) {
+                errors.add(e);
+            }
+        });
+        board.connect(ADDRESS);
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!board.isReady()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Simulated board not ready");
+            Thread.sleep(10L);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (board.isConnected()) board.disconnect(false);
+        assertFalse(board.isConnected());
+        assertTrue(errors.isEmpty(), errors::toString);
+        assertEquals(0L, board.metrics().getParseErrors());
+        assertEquals(0L, board.metrics().getUnknownFrames());
+    }
+
+    @Test
+    void handshake() {
+        assertTrue(states.contains(Board.ConnectionState.CONNECTED_READY));
+        assertEquals("6.1", board.getBoardVersion());
+        assertEquals(ADDRESS, board.getAddress());
+        assertEquals(0, board.focuser().getPos());
+        PowerBox powerBox = board.powerBox();
+        assertEquals(4, powerBox.size());
+        assertTrue(powerBox.hasRTC());
+        assertTrue(board.flat().hasServo());
+        assertEquals(FlatPanel.CoverStatus.CLOSED, board.flat().getCoverStatus());
+        assertTrue(board.state().ready());
+    }
+
+    @Test
+    void moveUntilArrived() throws Exception {
+        board.run(Board.Commands.FOCUSER_ABS_MOVE, null, 500).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertEquals(500, board.focuser().getTargetPos());
+        assertTrue(arrived.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), "A frame not received");
+        // Like the firmware, the final position may be sent just after the A frame
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (board.focuser().getPos() != 500) {
+            assertTrue(System.currentTimeMillis() < deadline, "Final position not received");
+            Thread.sleep(10L);
+        }
+        assertEquals(500, board.state().focuser().pos());
+    }
+
+    @Test
+    void pinsUpdatedByTheBoard() throws Exception {
+        board.run(Board.Commands.POWER_BOX_SET_PIN, null, 5, 255).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertEquals(255, board.powerBox().get(5).getValuePWM());
+        board.run(Board.Commands.POWER_BOX_SET_PIN_AUTO, null, 5, 1).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        // Turning the automatic mode off switches the pin off: the board reports it with a Y frame
+        board.run(Board.Commands.POWER_BOX_SET_PIN_AUTO, null, 5, 0).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertTrue(pinOff.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), "Y frame not received");
+        assertFalse(board.powerBox().get(5).isAutoModeEn());
+        assertEquals(PowerBox.AutoModes.UNAVAILABLE, board.powerBox().getAutoMode());
+    }
+}
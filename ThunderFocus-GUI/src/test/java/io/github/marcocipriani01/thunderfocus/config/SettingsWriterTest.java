@@ -0,0 +1,80 @@
+package io.github.marcocipriani01.thunderfocus.config;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that {@link SettingsWriter} keeps saving in the background after a failed write.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+class SettingsWriterTest {
+
+    private static final long TIMEOUT_MS = 10000L;
+    private static final AtomicInteger failures = new AtomicInteger();
+
+    private static void await(Path file) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!Files.exists(file)) {
+            assertTrue(System.currentTimeMillis() < deadline, "Settings not written");
+            Thread.sleep(10L);
+        }
+    }
+
+    @Test
+    void retriesAfterRuntimeException(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("settings.json");
+        FailingSettings settings = new FailingSettings();
+        SettingsWriter writer = new SettingsWriter(settings, file);
+        failures.set(2);
+        writer.schedule();
+        await(file);
+        assertEquals(0, failures.get());
+        assertTrue(Files.readString(file).contains("\"failing\":\"ok\""));
+        // Still scheduling after the failures
+        settings.relativeStepSize = 42;
+        Files.delete(file);
+        writer.schedule();
+        await(file);
+        assertTrue(Files.readString(file).contains("42"));
+    }
+
+    /**
+     * Fails the next {@link #failures} serializations.
+     */
+    private static final class FailingAdapter extends TypeAdapter<String> {
+
+        @Override
+        public void write(JsonWriter out, String value) throws IOException {
+            if (failures.getAndUpdate(n -> Math.max(0, n - 1)) > 0)
+                throw new IllegalStateException("Serialization failure");
+            out.value(value);
+        }
+
+        @Override
+        public String read(JsonReader in) throws IOException {
+            return in.nextString();
+        }
+    }
+
+    private static final class FailingSettings extends Settings {
+
+        @SuppressWarnings("unused")
+        @Expose
+        @JsonAdapter(FailingAdapter.class)
+        private final String failing = "ok";
+    }
+}
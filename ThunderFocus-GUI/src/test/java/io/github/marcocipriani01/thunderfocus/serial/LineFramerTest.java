@@ -0,0 +1,129 @@
+package io.github.marcocipriani01.thunderfocus.serial;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests for {@link LineFramer}.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+class LineFramerTest {
+
+    private final List<String> lines = new ArrayList<>();
+    private LineFramer framer;
+
+    @BeforeEach
+    void setUp() {
+        lines.clear();
+        framer = new LineFramer(8, line -> lines.add(line.toString()));
+    }
+
+    private void feed(String s) {
+        byte[] data = s.getBytes(StandardCharsets.US_ASCII);
+        framer.feed(data, 0, data.length);
+    }
+
+    @Test
+    void linesSplitAcrossFeeds() {
+        feed("S12");
+        feed("00\nA");
+        assertEquals(List.of("S1200"), lines);
+        feed("\n");
+        assertEquals(List.of("S1200", "A"), lines);
+    }
+
+    @Test
+    void oneByteAtATime() {
+        for (byte b : "S1\r\nA\r\nH\n".getBytes(StandardCharsets.US_ASCII)) {
+            framer.feed(new byte[]{b}, 0, 1);
+        }
+        assertEquals(List.of("S1", "A", "H"), lines);
+    }
+
+    @Test
+    void feedHonorsOffsetAndCount() {
+        byte[] data = "xxS5\nyy".getBytes(StandardCharsets.US_ASCII);
+        framer.feed(data, 2, 3);
+        assertEquals(List.of("S5"), lines);
+    }
+
+    @Test
+    void carriageReturnsAreDropped() {
+        feed("S1\r\nS2\rX\n\r\n");
+        assertEquals(List.of("S1", "S2X"), lines);
+    }
+
+    @Test
+    void linesAreTrimmedAndBlankLinesSkipped() {
+        feed("  A \n\n \t \nH\t\n");
+        assertEquals(List.of("A", "H"), lines);
+    }
+
+    @Test
+    void overlongLinesAreDiscardedUntilTheNextNewline() {
+        feed("12345678\n");
+        feed("123456789");
+        feed("abcdef\nS1\n");
+        assertEquals(List.of("12345678", "S1"), lines);
+    }
+
+    @Test
+    void overlongLineSplitAcrossFeedsIsDiscarded() {
+        for (int i = 0; i < 10; i++) {
+            feed("0123456");
+        }
+        feed("\nA\n");
+        assertEquals(List.of("A"), lines);
+    }
+
+    @Test
+    void resetDiscardsThePartialLine() {
+        feed("S12");
+        framer.reset();
+        feed("A\n");
+        assertEquals(List.of("A"), lines);
+    }
+
+    @Test
+    void resetEndsDiscarding() {
+        feed("0123456789");
+        framer.reset();
+        feed("H\n");
+        assertEquals(List.of("H"), lines);
+    }
+
+    @Test
+    void withoutTrimmingLinesAreSplitLikeReadLine() {
+        LineFramer raw = new LineFramer(8, false, line -> lines.add(line.toString()));
+        byte[] data = " a \n\nb\rc\r\nd\r".getBytes(StandardCharsets.US_ASCII);
+        raw.feed(data, 0, data.length);
+        assertEquals(List.of(" a ", "", "b", "c", "d"), lines);
+        // The "\n" of a "\r\n" split across two feeds isn't an empty line
+        raw.feed(new byte[]{'\n', 'e', '\n'}, 0, 3);
+        assertEquals(List.of(" a ", "", "b", "c", "d", "e"), lines);
+    }
+
+    @Test
+    void withoutTrimmingLinesAreDecodedFromUtf8() {
+        LineFramer raw = new LineFramer(16, false, line -> lines.add(line.toString()));
+        byte[] data = "Pin \u00b0C\n".getBytes(StandardCharsets.UTF_8);
+        raw.feed(data, 0, data.length);
+        assertEquals(List.of("Pin \u00b0C"), lines);
+    }
+
+    @Test
+    void finishDispatchesTheLastLine() {
+        feed("A\nS12");
+        framer.finish();
+        framer.finish();
+        assertEquals(List.of("A", "S12"), lines);
+    }
+}
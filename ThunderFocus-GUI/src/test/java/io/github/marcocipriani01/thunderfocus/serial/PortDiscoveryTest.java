@@ -0,0 +1,105 @@
+package io.github.marcocipriani01.thunderfocus.serial;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Probes in-memory boards with {@link PortDiscovery}: which results are remembered and how a probe is released.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+class PortDiscoveryTest {
+
+    private final List<PipeTransport.Device> devices = new ArrayList<>();
+    private final PortDiscovery discovery = new PortDiscovery();
+
+    private PipeTransport.Device createDevice(String name, String answer) {
+        PipeTransport.Device[] device = new PipeTransport.Device[1];
+        device[0] = PipeTransport.createDevice(name, new SerialMessageListener() {
+            @Override
+            public void onSerialMessage(CharSequence msg) {
+                if ((answer != null) && "$C".contentEquals(msg)) device[0].println(answer);
+            }
+
+            @Override
+            public void onSerialError(Exception e) {
+
+            }
+        });
+        devices.add(device[0]);
+        return device[0];
+    }
+
+    @AfterEach
+    void tearDown() {
+        devices.forEach(PipeTransport.Device::close);
+    }
+
+    @Test
+    void parseVersion() {
+        assertEquals("6.1", PortDiscovery.parseVersion("C6.1;F[1000,100,0,0,0]"));
+        assertEquals("5", PortDiscovery.parseVersion("C5;"));
+        assertNull(PortDiscovery.parseVersion("C6.1"));
+        assertNull(PortDiscovery.parseVersion("S1200"));
+    }
+
+    @Test
+    void boardFound() {
+        createDevice("discovery-board", "C6.1;F[1000,100,0,0,0]");
+        String address = PipeTransport.SCHEME + "discovery-board";
+        assertEquals("6.1", discovery.probe(address));
+        assertTrue(discovery.isCached(address));
+        assertEquals("6.1", discovery.getBoardVersion(address));
+    }
+
+    @Test
+    void simulatedBoardFound() {
+        String address = "sim:ambient=86400000,sun=86400000,seed=1";
+        assertEquals("6.1", discovery.probe(address));
+        assertTrue(discovery.isCached(address));
+    }
+
+    @Test
+    void failedOpenNotCached() throws Exception {
+        // Missing
+        String address = PipeTransport.SCHEME + "discovery-missing";
+        assertNull(discovery.probe(address));
+        assertFalse(discovery.isCached(address));
+        // Busy
+        createDevice("discovery-busy", "C6.1;");
+        address = PipeTransport.SCHEME + "discovery-busy";
+        PipeTransport owner = new PipeTransport();
+        owner.connect(address);
+        assertNull(discovery.probe(address));
+        assertFalse(discovery.isCached(address));
+        // Probed again once free
+        owner.disconnect();
+        assertEquals("6.1", discovery.probe(address));
+        assertTrue(discovery.isCached(address));
+    }
+
+    @Test
+    void releaseWhileProbing() throws Exception {
+        PipeTransport.Device device = createDevice("discovery-silent", null);
+        String address = PipeTransport.SCHEME + "discovery-silent";
+        long start = System.currentTimeMillis();
+        CompletableFuture<String> result = CompletableFuture.supplyAsync(() -> discovery.probe(address));
+        while (!device.isConnected()) {
+            assertTrue(System.currentTimeMillis() - start < PortDiscovery.PROBE_TIMEOUT_MS, "Port not opened");
+            Thread.sleep(5L);
+        }
+        discovery.release(address);
+        assertFalse(device.isConnected());
+        assertNull(result.get(PortDiscovery.PROBE_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertTrue(System.currentTimeMillis() - start < PortDiscovery.PROBE_TIMEOUT_MS, "Probe not stopped");
+        assertFalse(discovery.isCached(address));
+    }
+}
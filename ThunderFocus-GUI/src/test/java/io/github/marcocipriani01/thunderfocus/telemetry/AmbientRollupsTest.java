@@ -0,0 +1,67 @@
+package io.github.marcocipriani01.thunderfocus.telemetry;
+
+import io.github.marcocipriani01.thunderfocus.board.Board;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link AmbientRollups}.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+class AmbientRollupsTest {
+
+    private static final long QUARTER = AmbientRollups.Resolution.QUARTER_HOUR.getWidth();
+    private static final long TIMEOUT_MS = 10000L;
+
+    private static List<Double> means(AmbientRollups rollups, long from, long to) {
+        List<Double> means = new ArrayList<>();
+        rollups.query(TelemetryChannel.TEMPERATURE, AmbientRollups.Resolution.QUARTER_HOUR, from, to,
+                (start, width, min, max, mean, last) -> means.add(mean));
+        return means;
+    }
+
+    @Test
+    void savedWhenAQuarterHourBucketIsComplete(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("rollups.bin");
+        AmbientRollups rollups = new AmbientRollups(new Board());
+        rollups.setAutoSave(file);
+        long t0 = ((System.currentTimeMillis() / QUARTER) - 4L) * QUARTER;
+        rollups.add(TelemetryChannel.TEMPERATURE, t0 + 1000L, 10.0);
+        rollups.add(TelemetryChannel.TEMPERATURE, t0 + 2000L, 12.0);
+        Thread.sleep(200L);
+        assertFalse(Files.exists(file), "Saved before the end of the bucket");
+        rollups.add(TelemetryChannel.TEMPERATURE, t0 + QUARTER, 20.0);
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!Files.exists(file)) {
+            assertTrue(System.currentTimeMillis() < deadline, "Not saved");
+            Thread.sleep(10L);
+        }
+        AmbientRollups loaded = new AmbientRollups(new Board());
+        loaded.load(file);
+        assertEquals(means(rollups, t0, t0 + 2 * QUARTER), means(loaded, t0, t0 + 2 * QUARTER));
+        assertEquals(11.0, means(loaded, t0, t0 + QUARTER - 1L).get(0), 1e-9);
+    }
+
+    @Test
+    void saveAndLoad(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("rollups.bin");
+        AmbientRollups rollups = new AmbientRollups(new Board());
+        long t0 = ((System.currentTimeMillis() / QUARTER) - 2L) * QUARTER;
+        rollups.add(TelemetryChannel.TEMPERATURE, t0, -3.5);
+        rollups.save(file);
+        assertFalse(Files.exists(dir.resolve("rollups.bin.tmp")));
+        AmbientRollups loaded = new AmbientRollups(new Board());
+        loaded.load(file);
+        assertEquals(List.of(-3.5), means(loaded, t0, t0 + QUARTER - 1L));
+        loaded.load(dir.resolve("missing.bin"));
+    }
+}
@@ -0,0 +1,78 @@
+package io.github.marcocipriani01.thunderfocus.telemetry;
+
+import io.github.marcocipriani01.thunderfocus.board.Board;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link TelemetryRecorder}, read back with {@link TelemetryReader}.
+ *
+ * @author marcocipriani01
+ * @version 1.0
+ */
+class TelemetryRecorderTest {
+
+    private static final long T0 = (1_700_000_000_000L / TelemetryFormat.SEGMENT_MILLIS) * TelemetryFormat.SEGMENT_MILLIS;
+
+    private static List<long[]> readAll(Path folder) throws IOException {
+        List<long[]> records = new ArrayList<>();
+        new TelemetryReader(folder).read(T0 - 2 * TelemetryFormat.SEGMENT_MILLIS, T0 + 2 * TelemetryFormat.SEGMENT_MILLIS,
+                (time, channel, id, value) -> records.add(new long[]{time, (long) value}));
+        return records;
+    }
+
+    private static TelemetryRecorder start(Path folder) throws IOException {
+        TelemetryRecorder recorder = new TelemetryRecorder(folder, new Board());
+        recorder.start();
+        return recorder;
+    }
+
+    private static void assertSorted(List<long[]> records) {
+        for (int i = 1; i < records.size(); i++) {
+            assertTrue(records.get(i)[0] >= records.get(i - 1)[0], "Record " + i + " out of order");
+        }
+    }
+
+    @Test
+    void clockGoingBack(@TempDir Path folder) throws Exception {
+        try (TelemetryRecorder recorder = start(folder)) {
+            recorder.record(T0 + 10_000L, TelemetryChannel.TEMPERATURE, 0, 1.0);
+            recorder.record(T0 + 20_000L, TelemetryChannel.TEMPERATURE, 0, 2.0);
+            // Back to the previous hour, then a bit later but still in the past
+            recorder.record(T0 - 60_000L, TelemetryChannel.TEMPERATURE, 0, 3.0);
+            recorder.record(T0 + 15_000L, TelemetryChannel.TEMPERATURE, 0, 4.0);
+            recorder.record(T0 + 30_000L, TelemetryChannel.TEMPERATURE, 0, 5.0);
+        }
+        try (var files = Files.list(folder)) {
+            assertEquals(1L, files.count(), "Segment opened in the past");
+        }
+        List<long[]> records = readAll(folder);
+        assertEquals(5, records.size());
+        assertSorted(records);
+        assertArrayEquals(new long[]{T0 + 20_000L, 3L}, records.get(2));
+        assertArrayEquals(new long[]{T0 + 20_000L, 4L}, records.get(3));
+        assertArrayEquals(new long[]{T0 + 30_000L, 5L}, records.get(4));
+    }
+
+    @Test
+    void clockBehindAfterRestart(@TempDir Path folder) throws Exception {
+        try (TelemetryRecorder recorder = start(folder)) {
+            recorder.record(T0 + 50_000L, TelemetryChannel.HUMIDITY, 0, 1.0);
+        }
+        try (TelemetryRecorder recorder = start(folder)) {
+            recorder.record(T0 + 40_000L, TelemetryChannel.HUMIDITY, 0, 2.0);
+        }
+        List<long[]> records = readAll(folder);
+        assertEquals(2, records.size());
+        assertSorted(records);
+        assertArrayEquals(new long[]{T0 + 50_000L, 2L}, records.get(1));
+    }
+}